@@ -0,0 +1,238 @@
+package langdetect;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class runs micro-benchmarks in the current thread. Each benchmark is
+ * warmed up for a number of iterations, and then measured for a number of
+ * iterations of fixed duration. For every benchmark, the throughput in
+ * operations per second (mean and standard deviation over the measured
+ * iterations) and the number of bytes allocated per operation are reported.
+ * For benchmarks processing input of known size, the throughput is also
+ * reported in megabytes of input per second.
+ * <p>
+ * Allocations are measured with the per-thread allocation counter of the
+ * HotSpot VM. On other VMs, the allocation rate is reported as unavailable.
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Number of warm-up iterations
+	 */
+	private int warmupIterations = 3;
+	/**
+	 * Number of measured iterations
+	 */
+	private int iterations = 5;
+	/**
+	 * Duration of an iteration in milliseconds
+	 */
+	private long iterationTime = 1000;
+	/**
+	 * Stream receiving the report
+	 */
+	private PrintStream out;
+	/**
+	 * Thread bean providing allocation counters, null if not supported
+	 */
+	private com.sun.management.ThreadMXBean allocations;
+	/**
+	 * Sink for benchmark results, prevents dead-code elimination
+	 */
+	private volatile long sink;
+
+	/**
+	 * Creates a runner reporting to the given stream.
+	 * @param out
+	 *        Stream receiving the report
+	 */
+	public BenchmarkRunner(PrintStream out) {
+		this.out = out;
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			this.allocations = (com.sun.management.ThreadMXBean) bean;
+			if (this.allocations.isThreadAllocatedMemorySupported())
+				this.allocations.setThreadAllocatedMemoryEnabled(true);
+			else
+				this.allocations = null;
+		}
+	}
+
+	/**
+	 * Sets the number of iterations and their duration.
+	 * @param warmupIterations
+	 *        Number of warm-up iterations
+	 * @param iterations
+	 *        Number of measured iterations
+	 * @param iterationTime
+	 *        Duration of an iteration in milliseconds
+	 */
+	public void setIterations(int warmupIterations, int iterations, long iterationTime) {
+		if (warmupIterations < 0 || iterations < 1 || iterationTime < 1)
+			throw new IllegalArgumentException("Invalid number or duration of iterations");
+		this.warmupIterations = warmupIterations;
+		this.iterations = iterations;
+		this.iterationTime = iterationTime;
+	}
+
+	/**
+	 * Runs all benchmarks whose name contains the filter and reports the
+	 * results.
+	 * @param benchmarks
+	 *        Benchmarks
+	 * @param filter
+	 *        Part of the name, null to run all benchmarks
+	 * @throws Exception
+	 *         if a benchmark fails
+	 */
+	public void run(List<Benchmark> benchmarks, String filter) throws Exception {
+
+		this.out.println(String.format("%-28s %14s %12s %14s %10s", "Benchmark", "ops/s", "error", "B/op", "MB/s"));
+		for (Benchmark benchmark : benchmarks) {
+			if (filter == null || benchmark.getName().contains(filter)) {
+				this.run(benchmark);
+			}
+		}
+	}
+
+	/**
+	 * Runs a single benchmark and reports the result.
+	 */
+	private void run(Benchmark benchmark) throws Exception {
+
+		benchmark.setUp();
+		for (int i = 0; i < this.warmupIterations; i++) {
+			this.iterate(benchmark);
+		}
+
+		List<double[]> results = new ArrayList<double[]>();
+		for (int i = 0; i < this.iterations; i++) {
+			results.add(this.iterate(benchmark));
+		}
+		benchmark.tearDown();
+
+		// throughput: mean and standard deviation over the iterations
+		double mean = 0;
+		double bytes = 0;
+		for (double[] result : results) {
+			mean += result[0] / results.size();
+			bytes += result[1] / results.size();
+		}
+		double variance = 0;
+		for (double[] result : results) {
+			variance += (result[0] - mean) * (result[0] - mean);
+		}
+		double error = results.size() > 1 ? Math.sqrt(variance / (results.size() - 1)) : 0;
+
+		String allocated = this.allocations != null ? String.format("%14.1f", bytes) : String.format("%14s", "n/a");
+		long input = benchmark.getInputBytes();
+		String rate = input > 0 ? String.format("%10.1f", mean * input / (1 << 20)) : String.format("%10s", "-");
+		this.out.println(String.format("%-28s %14.1f %12.1f", benchmark.getName(), mean, error) + " " + allocated
+				+ " " + rate);
+	}
+
+	/**
+	 * Runs one iteration of a benchmark.
+	 * @return Operations per second and allocated bytes per operation
+	 */
+	private double[] iterate(Benchmark benchmark) throws Exception {
+
+		long threadId = Thread.currentThread().getId();
+		long allocatedBefore = this.allocations != null ? this.allocations.getThreadAllocatedBytes(threadId) : 0;
+		long start = System.nanoTime();
+		long deadline = start + this.iterationTime * 1000000;
+		long ops = 0;
+		long result = 0;
+		long now;
+
+		// check the time only every few operations for fast benchmarks
+		int batch = 1;
+		do {
+			for (int i = 0; i < batch; i++) {
+				result += benchmark.run();
+			}
+			ops += batch;
+			now = System.nanoTime();
+			if (batch < 1024 && now - start < this.iterationTime * 1000)
+				batch <<= 1;
+		} while (now < deadline);
+
+		long allocated = this.allocations != null ? this.allocations.getThreadAllocatedBytes(threadId) - allocatedBefore : 0;
+		this.sink += result;
+		return new double[] { ops * 1e9 / (now - start), (double) allocated / ops };
+	}
+
+	/**
+	 * This class is the base of a benchmark. The operation is run repeatedly
+	 * and should return a value depending on its result, so that it cannot be
+	 * optimized away.
+	 * 
+	 * @author Tobias Falke
+	 * 
+	 */
+	public static abstract class Benchmark {
+
+		/**
+		 * Name of the benchmark
+		 */
+		private String name;
+
+		/**
+		 * Creates a benchmark.
+		 * @param name
+		 *        Name of the benchmark
+		 */
+		public Benchmark(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Returns the name of the benchmark.
+		 * @return Name
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Returns the number of input bytes processed by one operation, if the
+		 * throughput should also be reported in megabytes per second.
+		 * @return Number of bytes, 0 if not applicable
+		 */
+		public long getInputBytes() {
+			return 0;
+		}
+
+		/**
+		 * Prepares the state of the benchmark, before it is warmed up.
+		 * @throws Exception
+		 *         if the state cannot be prepared
+		 */
+		public void setUp() throws Exception {
+		}
+
+		/**
+		 * Releases the state of the benchmark, after the last iteration.
+		 * @throws Exception
+		 *         if the state cannot be released
+		 */
+		public void tearDown() throws Exception {
+		}
+
+		/**
+		 * Runs the operation once.
+		 * @return Value depending on the result of the operation
+		 * @throws Exception
+		 *         if the operation fails
+		 */
+		public abstract long run() throws Exception;
+	}
+
+}
@@ -0,0 +1,465 @@
+package langdetect;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import langdetect.BenchmarkRunner.Benchmark;
+
+/**
+ * This class contains the benchmarks of the hot paths of the language
+ * detector: tokenization of short and long texts, adding n-grams to profiles
+ * and finalizing them, reading training files, out-of-place measures and
+ * end-to-end detection against the profiles of the training texts. Each
+ * benchmark exists for the object and the packed backend, respectively for the
+ * scanner-based and the streaming tokenizer, so that both can be compared.
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class Benchmarks {
+
+	/**
+	 * Folder containing training texts for languages
+	 */
+	private static final String trainingFolder = "data/training";
+	/**
+	 * Short input, a typical query
+	 */
+	private static final String shortText = "This is a sentence in english";
+
+	/**
+	 * Texts of the training files
+	 */
+	private List<String> texts = new ArrayList<String>();
+	/**
+	 * Text used as long input
+	 */
+	private String longText;
+	/**
+	 * n-grams of the long input, in order of occurrence
+	 */
+	private String[] grams;
+	/**
+	 * Number of copies of each language used for scoring
+	 */
+	private int copies = 1;
+
+	/**
+	 * Runs the benchmarks.
+	 * @param args
+	 *        optionally, -warmup, -iterations and -time (milliseconds per
+	 *        iteration) followed by a number, -data followed by the folder
+	 *        with training texts, -copies followed by the number of copies of
+	 *        each language to score against and a part of the benchmark names
+	 *        to run only matching benchmarks
+	 */
+	public static void main(String[] args) {
+
+		String folder = Benchmarks.trainingFolder;
+		String filter = null;
+		int warmup = 3;
+		int iterations = 5;
+		long time = 1000;
+		int copies = 1;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-warmup") && i + 1 < args.length) {
+				warmup = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-iterations") && i + 1 < args.length) {
+				iterations = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-time") && i + 1 < args.length) {
+				time = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-copies") && i + 1 < args.length) {
+				copies = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-data") && i + 1 < args.length) {
+				folder = args[++i];
+			} else {
+				filter = args[i];
+			}
+		}
+
+		try {
+			Benchmarks benchmarks = new Benchmarks(new File(folder));
+			benchmarks.copies = copies;
+			BenchmarkRunner runner = new BenchmarkRunner(System.out);
+			runner.setIterations(warmup, iterations, time);
+			runner.run(benchmarks.getBenchmarks(), filter);
+		} catch (Exception e) {
+			System.out.println("Error: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates the benchmarks for the training texts in the given folder.
+	 * @param folder
+	 *        Folder with training texts, encoded in UTF-8
+	 * @throws IOException
+	 *         if the training texts cannot be read
+	 */
+	public Benchmarks(File folder) throws IOException {
+
+		File[] files = folder.listFiles();
+		if (files == null)
+			throw new IOException("Invalid path to training data");
+		Arrays.sort(files);
+		Charset utf8 = Charset.forName("UTF-8");
+		for (File file : files) {
+			if (file.isFile()) {
+				this.texts.add(new String(Files.readAllBytes(file.toPath()), utf8));
+			}
+		}
+		if (this.texts.isEmpty())
+			throw new IOException("No training data found in specified path");
+
+		this.longText = this.texts.get(0);
+		this.grams = nGrams(this.longText, 1, 5);
+	}
+
+	/**
+	 * Returns all benchmarks.
+	 * @return Benchmarks
+	 */
+	public List<Benchmark> getBenchmarks() {
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new TokenizeBenchmark("tokenize.short.scanner", shortText, false));
+		benchmarks.add(new TokenizeBenchmark("tokenize.short.streaming", shortText, true));
+		benchmarks.add(new TokenizeBenchmark("tokenize.long.scanner", this.longText, false));
+		benchmarks.add(new TokenizeBenchmark("tokenize.long.streaming", this.longText, true));
+		benchmarks.add(new AddNGramBenchmark("addNGram.object", false, false));
+		benchmarks.add(new AddNGramBenchmark("addNGram.packed", true, false));
+		benchmarks.add(new AddNGramBenchmark("addNGram+finalize.object", false, true));
+		benchmarks.add(new AddNGramBenchmark("addNGram+finalize.packed", true, true));
+		benchmarks.add(new IngestBenchmark("ingest.scanner", false, false));
+		benchmarks.add(new IngestBenchmark("ingest.channel", true, false));
+		benchmarks.add(new IngestBenchmark("ingest.channel.packed", true, true));
+		benchmarks.add(new OutOfPlaceBenchmark("outOfPlace.object", false));
+		benchmarks.add(new OutOfPlaceBenchmark("outOfPlace.packed", true));
+		benchmarks.add(new ScoreBenchmark("score.pairwise", 0));
+		benchmarks.add(new ScoreBenchmark("score.dictionary", 3));
+		benchmarks.add(new ScoreBenchmark("score.postings", 1));
+		benchmarks.add(new ScoreBenchmark("score.dense", 2));
+		benchmarks.add(new ScoreBenchmark("score.mapped", 5));
+		benchmarks.add(new ScoreBenchmark("score.cluster", 4));
+		benchmarks.add(new DetectBenchmark("detect.short", shortText));
+		benchmarks.add(new DetectBenchmark("detect.long", this.longText));
+		benchmarks.add(new ScatterBenchmark("detect.scatter.short", shortText));
+		benchmarks.add(new ScatterBenchmark("detect.scatter.long", this.longText));
+		return benchmarks;
+	}
+
+	/**
+	 * Splits a text into padded, lower-cased n-grams like the tokenizer.
+	 */
+	private static String[] nGrams(String text, int minLen, int maxLen) {
+
+		List<String> grams = new ArrayList<String>();
+		for (String token : text.split("[^\\p{L}]+")) {
+			if (token.isEmpty())
+				continue;
+			String padded = "_" + token.toLowerCase() + "_";
+			for (int len = minLen; len <= maxLen; len++) {
+				for (int i = 0; i + len <= padded.length(); i++) {
+					String gram = padded.substring(i, i + len);
+					if (!gram.equals("_")) {
+						grams.add(gram);
+					}
+				}
+			}
+		}
+		return grams.toArray(new String[grams.size()]);
+	}
+
+	/**
+	 * Computes a finalized profile of a text.
+	 */
+	private static Profile profile(String name, String text, boolean packed) {
+		Profile profile = new Profile(name, packed);
+		new Tokenizer(1, 5, true).computeProfile(profile, text);
+		return profile;
+	}
+
+	/**
+	 * Computes the profile of a text with a new profile per operation.
+	 */
+	private class TokenizeBenchmark extends Benchmark {
+
+		private String text;
+		private boolean streaming;
+		private Tokenizer tok;
+
+		public TokenizeBenchmark(String name, String text, boolean streaming) {
+			super(name);
+			this.text = text;
+			this.streaming = streaming;
+		}
+
+		@Override
+		public void setUp() {
+			this.tok = new Tokenizer(1, 5, this.streaming);
+		}
+
+		@Override
+		public long run() {
+			// the streaming tokenizer is used with the packed backend
+			Profile profile = new Profile("", this.streaming);
+			this.tok.computeProfile(profile, this.text);
+			return profile.getNumberOfNGrams();
+		}
+	}
+
+	/**
+	 * Adds the n-grams of the long text to a new profile and optionally
+	 * finalizes it. The cost of finalization is the difference to the
+	 * benchmark without it.
+	 */
+	private class AddNGramBenchmark extends Benchmark {
+
+		private boolean packed;
+		private boolean finalize;
+
+		public AddNGramBenchmark(String name, boolean packed, boolean finalize) {
+			super(name);
+			this.packed = packed;
+			this.finalize = finalize;
+		}
+
+		@Override
+		public long run() {
+			Profile profile = new Profile("", this.packed);
+			for (String gram : Benchmarks.this.grams) {
+				profile.addNGram(gram);
+			}
+			if (this.finalize) {
+				profile.setFinalized();
+			}
+			return profile.getNumberOfNGrams();
+		}
+	}
+
+	/**
+	 * Computes the profile of a file with all training texts, read with a
+	 * scanner in the platform's default charset or through a channel in UTF-8.
+	 */
+	private class IngestBenchmark extends Benchmark {
+
+		private boolean channel;
+		private boolean packed;
+		private Tokenizer tok;
+		private File file;
+		private Charset utf8 = Charset.forName("UTF-8");
+
+		public IngestBenchmark(String name, boolean channel, boolean packed) {
+			super(name);
+			this.channel = channel;
+			this.packed = packed;
+		}
+
+		@Override
+		public void setUp() throws IOException {
+			this.tok = new Tokenizer(1, 5, false);
+			this.file = File.createTempFile("ingest", ".txt");
+			this.file.deleteOnExit();
+			StringBuilder text = new StringBuilder();
+			for (String t : Benchmarks.this.texts) {
+				text.append(t).append('\n');
+			}
+			Files.write(this.file.toPath(), text.toString().getBytes(this.utf8));
+		}
+
+		@Override
+		public long getInputBytes() {
+			return this.file.length();
+		}
+
+		@Override
+		public long run() throws IOException {
+			Profile profile = new Profile("", this.packed);
+			if (this.channel)
+				this.tok.computeProfile(profile, this.file, this.utf8);
+			else
+				this.tok.computeProfile(profile, this.file);
+			return profile.getNumberOfNGrams();
+		}
+	}
+
+	/**
+	 * Computes the out-of-place measure of the short text to the profile of
+	 * the long text.
+	 */
+	private class OutOfPlaceBenchmark extends Benchmark {
+
+		private boolean packed;
+		private Profile query;
+		private Profile language;
+
+		public OutOfPlaceBenchmark(String name, boolean packed) {
+			super(name);
+			this.packed = packed;
+		}
+
+		@Override
+		public void setUp() {
+			this.query = profile("", shortText, this.packed);
+			this.language = profile("lang", Benchmarks.this.longText, this.packed);
+		}
+
+		@Override
+		public long run() {
+			return this.query.getOutOfPlaceMeasure(this.language);
+		}
+	}
+
+	/**
+	 * Computes the out-of-place measures of the profile of the long text to
+	 * the profiles of all training texts, one by one by hashing or by the ids
+	 * of the index's dictionary, with the postings of the index or with its
+	 * dense position matrix, or only of the best three languages, searching a
+	 * tree of language clusters with a beam width of 1. The postings are also
+	 * scored from the index of a compiled profile file.
+	 */
+	private class ScoreBenchmark extends Benchmark {
+
+		private int mode;
+		private Profile query;
+		private List<Profile> profiles;
+		private ProfileIndex index;
+		private int[] dist;
+		private int[] ids;
+		private ClusterScorer scorer;
+		private Profile[] best = new Profile[3];
+
+		public ScoreBenchmark(String name, int mode) {
+			super(name);
+			this.mode = mode;
+		}
+
+		@Override
+		public void setUp() throws IOException {
+			this.query = profile("", Benchmarks.this.longText, true);
+			// copies of the languages simulate larger sets of languages
+			this.profiles = new ArrayList<Profile>();
+			for (int i = 0; i < Benchmarks.this.copies; i++) {
+				for (String text : Benchmarks.this.texts) {
+					this.profiles.add(profile("lang" + this.profiles.size(), text, true));
+				}
+			}
+			if (this.mode == 5) {
+				File file = File.createTempFile("profiles", ".ldp");
+				file.deleteOnExit();
+				ProfileFile.write(this.profiles, file);
+				this.profiles = ProfileFile.read(file);
+			}
+			this.index = new ProfileIndex(this.profiles, this.mode == 2);
+			this.dist = new int[this.profiles.size()];
+			this.ids = new int[this.query.getNumberOfNGrams()];
+			if (this.mode == 4) {
+				this.scorer = new ClusterScorer(this.profiles, this.best.length);
+				this.scorer.setBeamWidth(1);
+			}
+		}
+
+		@Override
+		public long run() {
+			if (this.mode == 0) {
+				for (int langId = 0; langId < this.dist.length; langId++) {
+					this.dist[langId] = this.query.getOutOfPlaceMeasure(this.profiles.get(langId));
+				}
+			} else if (this.mode == 4) {
+				this.scorer.score(this.query, this.best, this.dist);
+			} else if (this.mode == 3) {
+				int size = this.index.getDictionary().resolve(this.query, this.ids);
+				for (int langId = 0; langId < this.dist.length; langId++) {
+					this.dist[langId] = this.index.getOutOfPlaceMeasure(this.ids, size, langId, Integer.MAX_VALUE);
+				}
+			} else {
+				int size = this.index.getDictionary().resolve(this.query, this.ids);
+				this.index.getOutOfPlaceMeasures(this.ids, size, this.dist);
+			}
+			return this.dist[0];
+		}
+	}
+
+	/**
+	 * Detects the language of a text against the profiles of all training
+	 * texts.
+	 */
+	private class DetectBenchmark extends Benchmark {
+
+		private String text;
+		private Detector detector;
+
+		public DetectBenchmark(String name, String text) {
+			super(name);
+			this.text = text;
+		}
+
+		@Override
+		public void setUp() {
+			List<Profile> profiles = new ArrayList<Profile>();
+			for (String text : Benchmarks.this.texts) {
+				profiles.add(profile("lang" + profiles.size(), text, true));
+			}
+			this.detector = new Detector(profiles);
+		}
+
+		@Override
+		public long run() {
+			return this.detector.detect(this.text).getOutOfPlaceMeasure();
+		}
+	}
+
+	/**
+	 * Detects the language of a text with two partition workers on localhost,
+	 * each holding half of the profiles of the training texts, including the
+	 * round trip over the sockets.
+	 */
+	private class ScatterBenchmark extends Benchmark {
+
+		private String text;
+		private List<PartitionWorker> workers = new ArrayList<PartitionWorker>();
+		private ScatterGatherDetector coordinator;
+
+		public ScatterBenchmark(String name, String text) {
+			super(name);
+			this.text = text;
+		}
+
+		@Override
+		public void setUp() throws IOException {
+			List<Profile> profiles = new ArrayList<Profile>();
+			for (String text : Benchmarks.this.texts) {
+				profiles.add(profile("lang" + profiles.size(), text, true));
+			}
+			List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+			int half = profiles.size() / 2;
+			for (List<Profile> partition : Arrays.asList(profiles.subList(0, half),
+					profiles.subList(half, profiles.size()))) {
+				PartitionWorker worker = new PartitionWorker(partition, Profile.maxOoP, 0);
+				worker.start();
+				this.workers.add(worker);
+				addresses.add(new InetSocketAddress("localhost", worker.getPort()));
+			}
+			this.coordinator = new ScatterGatherDetector(addresses, 1, 5, Profile.cutOffPos);
+		}
+
+		@Override
+		public void tearDown() {
+			this.coordinator.close();
+			for (PartitionWorker worker : this.workers) {
+				worker.stop();
+			}
+		}
+
+		@Override
+		public long run() throws IOException {
+			return this.coordinator.detect(this.text).getOutOfPlaceMeasure();
+		}
+	}
+
+}
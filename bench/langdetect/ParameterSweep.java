@@ -0,0 +1,310 @@
+package langdetect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class compares detector settings by cross-validation on the training
+ * texts. The words of every training text are split into a number of
+ * contiguous folds. For each fold, profiles are trained on the other folds,
+ * and the held-out fold is cut into short queries of a few words, whose
+ * language is detected. For every combination of cut-off and n-gram range,
+ * the accuracy over all folds is reported next to the detection throughput
+ * and the heap retained by the profiles and the detector, so that the
+ * cheapest setting meeting an accuracy target can be chosen.
+ * <p>
+ * The cut-off is used both for the profiles and as the out-of-place measure
+ * of missing n-grams, as with the default settings. Memory is measured as the
+ * difference of the used heap after garbage collection and is therefore only
+ * an estimate.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class ParameterSweep {
+
+	/**
+	 * Folder containing training texts for languages
+	 */
+	private static final String trainingFolder = "data/training";
+	/**
+	 * Number of timed rounds over the queries of a fold, after one warm-up
+	 * round
+	 */
+	private static final int timedRounds = 5;
+
+	/**
+	 * Language names, derived from the file names
+	 */
+	private List<String> names = new ArrayList<String>();
+	/**
+	 * Words of the training text of each language
+	 */
+	private List<String[]> words = new ArrayList<String[]>();
+	/**
+	 * Number of folds
+	 */
+	private int folds = 5;
+	/**
+	 * Number of words per query
+	 */
+	private int queryWords = 5;
+	/**
+	 * Sink for detection results, prevents dead-code elimination
+	 */
+	private volatile int sink;
+
+	/**
+	 * Runs the sweep.
+	 * @param args
+	 *        optionally, -data followed by the folder with training texts,
+	 *        -folds and -words (per query) followed by a number, -cutoffs
+	 *        followed by a comma-separated list of cut-offs, -ngrams followed
+	 *        by a comma-separated list of ranges such as 1-5 and -target
+	 *        followed by the required accuracy in percent
+	 */
+	public static void main(String[] args) {
+
+		String folder = ParameterSweep.trainingFolder;
+		int folds = 5;
+		int queryWords = 5;
+		String cutOffs = "50,100,200,300,500";
+		String ranges = "1-3,1-4,1-5,2-4,2-5";
+		double target = 95;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-data") && i + 1 < args.length) {
+				folder = args[++i];
+			} else if (args[i].equals("-folds") && i + 1 < args.length) {
+				folds = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-words") && i + 1 < args.length) {
+				queryWords = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-cutoffs") && i + 1 < args.length) {
+				cutOffs = args[++i];
+			} else if (args[i].equals("-ngrams") && i + 1 < args.length) {
+				ranges = args[++i];
+			} else if (args[i].equals("-target") && i + 1 < args.length) {
+				target = Double.parseDouble(args[++i]);
+			}
+		}
+
+		try {
+			ParameterSweep sweep = new ParameterSweep(new File(folder));
+			sweep.folds = folds;
+			sweep.queryWords = queryWords;
+			sweep.run(cutOffs.split(","), ranges.split(","), target, System.out);
+		} catch (Exception e) {
+			System.out.println("Error: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates a sweep over the training texts in the given folder.
+	 * @param folder
+	 *        Folder with training texts, encoded in UTF-8
+	 * @throws IOException
+	 *         if the training texts cannot be read
+	 */
+	public ParameterSweep(File folder) throws IOException {
+
+		File[] files = folder.listFiles();
+		if (files == null)
+			throw new IOException("Invalid path to training data");
+		Arrays.sort(files);
+		Charset utf8 = Charset.forName("UTF-8");
+		for (File file : files) {
+			if (file.isFile()) {
+				String text = new String(Files.readAllBytes(file.toPath()), utf8);
+				this.names.add(file.getName().substring(0, 2));
+				this.words.add(text.trim().split("\\s+"));
+			}
+		}
+		if (this.names.isEmpty())
+			throw new IOException("No training data found in specified path");
+	}
+
+	/**
+	 * Evaluates all combinations of cut-offs and n-gram ranges and prints one
+	 * line per combination.
+	 * @param cutOffs
+	 *        Cut-offs
+	 * @param ranges
+	 *        n-gram ranges such as "1-5"
+	 * @param target
+	 *        Required accuracy in percent, used to mark the cheapest setting
+	 * @param out
+	 *        Stream receiving the report
+	 */
+	public void run(String[] cutOffs, String[] ranges, double target, PrintStream out) {
+
+		out.println(String.format("%d languages, %d folds, %d words per query", this.names.size(), this.folds,
+				this.queryWords));
+		out.println(String.format("%-8s %-7s %10s %12s %12s %10s", "cutoff", "ngrams", "accuracy", "queries/s",
+				"us/query", "heap KB"));
+
+		String cheapest = null;
+		double cheapestRate = 0;
+		for (String range : ranges) {
+			String[] lengths = range.trim().split("-");
+			int minLen = Integer.parseInt(lengths[0]);
+			int maxLen = Integer.parseInt(lengths[lengths.length - 1]);
+			for (String value : cutOffs) {
+				int cutOff = Integer.parseInt(value.trim());
+				Result result = this.evaluate(minLen, maxLen, cutOff);
+				double rate = result.queries / (result.nanos / 1e9);
+				String setting = String.format("%-8d %-7s", cutOff, minLen + "-" + maxLen);
+				out.println(String.format("%s %9.2f%% %12.0f %12.2f %10d", setting, result.getAccuracy(), rate,
+						result.getNanosPerQuery() / 1e3, result.getHeapBytes() / 1024));
+				if (result.getAccuracy() >= target && rate > cheapestRate) {
+					cheapest = setting.replaceAll("\\s+", " ").trim();
+					cheapestRate = rate;
+				}
+			}
+		}
+		if (cheapest != null)
+			out.println("Fastest setting with at least " + target + "% accuracy: cutoff/ngrams " + cheapest);
+		else
+			out.println("No setting reaches " + target + "% accuracy");
+	}
+
+	/**
+	 * Cross-validates one setting.
+	 * @param minLen
+	 *        Minimum length of n-grams
+	 * @param maxLen
+	 *        Maximum length of n-grams
+	 * @param cutOff
+	 *        Number of n-grams per profile and out-of-place measure of missing
+	 *        n-grams
+	 * @return Accuracy, detection time and retained heap, averaged over the
+	 *         folds
+	 */
+	public Result evaluate(int minLen, int maxLen, int cutOff) {
+
+		Result result = new Result();
+		for (int fold = 0; fold < this.folds; fold++) {
+
+			// train on all other folds
+			long heapBefore = usedHeap();
+			List<Profile> profiles = new ArrayList<Profile>();
+			Tokenizer tok = new Tokenizer(minLen, maxLen, true);
+			for (int lang = 0; lang < this.names.size(); lang++) {
+				Profile profile = new Profile(this.names.get(lang), true);
+				profile.setCutOff(cutOff);
+				String[] words = this.words.get(lang);
+				StringBuilder text = new StringBuilder();
+				append(text, words, 0, this.start(words, fold));
+				append(text, words, this.start(words, fold + 1), words.length);
+				tok.computeProfile(profile, text);
+				profiles.add(profile);
+			}
+			Detector detector = new Detector(profiles, minLen, maxLen, cutOff, cutOff, null);
+			result.heapBytes += (usedHeap() - heapBefore) / this.folds;
+
+			// detect the queries of the held-out fold
+			List<String> queries = new ArrayList<String>();
+			List<String> expected = new ArrayList<String>();
+			for (int lang = 0; lang < this.names.size(); lang++) {
+				String[] words = this.words.get(lang);
+				int end = this.start(words, fold + 1);
+				for (int i = this.start(words, fold); i + this.queryWords <= end; i += this.queryWords) {
+					StringBuilder query = new StringBuilder();
+					append(query, words, i, i + this.queryWords);
+					queries.add(query.toString());
+					expected.add(this.names.get(lang));
+				}
+			}
+			// first round warms up the detector and is not timed
+			for (int round = 0; round <= timedRounds; round++) {
+				long start = System.nanoTime();
+				int correct = 0;
+				for (int i = 0; i < queries.size(); i++) {
+					try {
+						if (detector.detect(queries.get(i)).getName().equals(expected.get(i)))
+							correct++;
+					} catch (IllegalStateException e) {
+						// no n-grams in the query, counts as wrong
+					}
+				}
+				if (round > 0) {
+					result.nanos += System.nanoTime() - start;
+					result.queries += queries.size();
+					result.correct += correct;
+				}
+				this.sink += correct;
+			}
+			// keep the detector reachable until the heap is measured
+			this.sink += detector.getNumberOfLanguages();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the index of the first word of a fold.
+	 */
+	private int start(String[] words, int fold) {
+		return (int) ((long) words.length * fold / this.folds);
+	}
+
+	/**
+	 * Appends a range of words separated by spaces.
+	 */
+	private static void append(StringBuilder text, String[] words, int from, int to) {
+		for (int i = from; i < to; i++) {
+			text.append(words[i]).append(' ');
+		}
+	}
+
+	/**
+	 * Returns the used heap after garbage collection.
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Result of the cross-validation of one setting.
+	 */
+	public static class Result {
+
+		private long queries;
+		private long correct;
+		private long nanos;
+		private long heapBytes;
+
+		/**
+		 * Returns the percentage of correctly detected queries.
+		 * @return Accuracy in percent
+		 */
+		public double getAccuracy() {
+			return this.queries == 0 ? 0 : 100.0 * this.correct / this.queries;
+		}
+
+		/**
+		 * Returns the mean detection time of a query.
+		 * @return Nanoseconds
+		 */
+		public double getNanosPerQuery() {
+			return this.queries == 0 ? 0 : (double) this.nanos / this.queries;
+		}
+
+		/**
+		 * Returns the heap retained by the profiles and the detector, averaged
+		 * over the folds.
+		 * @return Bytes
+		 */
+		public long getHeapBytes() {
+			return this.heapBytes;
+		}
+	}
+
+}
@@ -0,0 +1,195 @@
+package langdetect;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class detects the languages of many newline-delimited records with a
+ * pool of worker threads. Records are read in batches, each batch is detected
+ * by one worker, and the results are written in input order. Only a limited
+ * number of batches is in progress at any time, so memory stays bounded for
+ * arbitrarily long inputs.
+ * <p>
+ * For each record, one line is written with the best languages and their
+ * out-of-place measures, separated by tabs (e.g. "en\t16080\tes\t17958"). For
+ * records without any n-grams, the line contains only "-".
+ *
+ * @author Tobias Falke
+ *
+ */
+public class BatchDetector {
+
+	/**
+	 * Detector shared by all workers
+	 */
+	private Detector detector;
+	/**
+	 * Number of worker threads
+	 */
+	private int threads;
+	/**
+	 * Number of best languages per record
+	 */
+	private int k;
+	/**
+	 * Number of records per batch
+	 */
+	private int batchSize = 1000;
+	/**
+	 * Cache of results for repeated records, null to detect every record
+	 */
+	private DetectionCache cache;
+
+	/**
+	 * Creates a batch detector.
+	 * @param detector
+	 *        Detector for the language profiles
+	 * @param threads
+	 *        Number of worker threads
+	 * @param k
+	 *        Number of best languages written per record
+	 * @throws IllegalArgumentException
+	 *         if threads or k are not positive
+	 */
+	public BatchDetector(Detector detector, int threads, int k) throws IllegalArgumentException {
+		if (threads < 1 || k < 1)
+			throw new IllegalArgumentException("Threads and k must be positive");
+		this.detector = detector;
+		this.threads = threads;
+		this.k = k;
+	}
+
+	/**
+	 * Sets the number of records that are detected together by one worker.
+	 * @param batchSize
+	 *        Number of records
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets a cache that is consulted before detecting a record.
+	 * @param cache
+	 *        Cache for the same detector, null to detect every record
+	 */
+	public void setCache(DetectionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Detects the languages of all records of the input and writes the results
+	 * in input order. The writer is flushed, but not closed.
+	 * @param in
+	 *        Input with one record per line
+	 * @param out
+	 *        Output receiving one line per record
+	 * @return Number of records
+	 * @throws IOException
+	 *         if reading or writing fails
+	 */
+	public long run(BufferedReader in, Writer out) throws IOException {
+
+		ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+		LinkedList<Future<String>> pending = new LinkedList<Future<String>>();
+		long records = 0;
+		try {
+			List<String> batch = new ArrayList<String>(this.batchSize);
+			String line;
+			while ((line = in.readLine()) != null) {
+				batch.add(line);
+				records++;
+				if (batch.size() == this.batchSize) {
+					pending.add(pool.submit(new BatchTask(batch)));
+					batch = new ArrayList<String>(this.batchSize);
+					// keep each worker busy, but do not read ahead further
+					while (pending.size() > 2 * this.threads) {
+						out.write(result(pending.removeFirst()));
+					}
+				}
+			}
+			if (!batch.isEmpty()) {
+				pending.add(pool.submit(new BatchTask(batch)));
+			}
+			while (!pending.isEmpty()) {
+				out.write(result(pending.removeFirst()));
+			}
+			out.flush();
+		} finally {
+			pool.shutdownNow();
+		}
+		return records;
+	}
+
+	/**
+	 * Waits for the result of a batch.
+	 */
+	private static String result(Future<String> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted");
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Detects the records of a batch and formats the results.
+	 */
+	private String detect(List<String> batch) {
+
+		StringBuilder result = new StringBuilder(batch.size() * 32);
+		for (String record : batch) {
+			List<DetectionResult> best;
+			try {
+				if (this.cache != null)
+					best = this.cache.detectTopK(record, this.k);
+				else
+					best = this.detector.detectTopK(record, this.k);
+			} catch (IllegalStateException e) {
+				// if the record does not contain any n-grams
+				result.append("-\n");
+				continue;
+			}
+			for (int i = 0; i < best.size(); i++) {
+				if (i > 0)
+					result.append('\t');
+				result.append(best.get(i).getName());
+				result.append('\t').append(best.get(i).getOutOfPlaceMeasure());
+			}
+			result.append('\n');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Task detecting one batch on a worker thread.
+	 */
+	private class BatchTask implements Callable<String> {
+
+		private List<String> batch;
+
+		public BatchTask(List<String> batch) {
+			this.batch = batch;
+		}
+
+		@Override
+		public String call() {
+			return BatchDetector.this.detect(this.batch);
+		}
+	}
+
+}
@@ -0,0 +1,177 @@
+package langdetect;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * This class reads text files through a {@link FileChannel} and passes the
+ * decoded characters straight to an {@link NGramCollector}, without creating
+ * lines, tokens or strings. Bytes are read into a large direct buffer and
+ * decoded with an explicit charset into a character buffer, both of which are
+ * reused for all files, just like the decoder. Malformed and unmappable input
+ * is replaced, so that the text continues after it.
+ * <p>
+ * A decoder is not thread-safe, every thread needs its own.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class ChannelDecoder {
+
+	// default size of the byte buffer
+	private static final int defaultBufferSize = 1 << 20;
+
+	/**
+	 * Encoding of the files
+	 */
+	private Charset charset;
+	/**
+	 * Decoder for the charset, reset for every file
+	 */
+	private CharsetDecoder decoder;
+	/**
+	 * Buffer for the bytes read from the channel
+	 */
+	private ByteBuffer bytes;
+	/**
+	 * Buffer for the decoded characters
+	 */
+	private CharBuffer chars;
+
+	/**
+	 * Creates a decoder for the given charset with a buffer of 1 MB.
+	 * @param charset
+	 *        Encoding of the files
+	 */
+	public ChannelDecoder(Charset charset) {
+		this(charset, defaultBufferSize);
+	}
+
+	/**
+	 * Creates a decoder for the given charset.
+	 * @param charset
+	 *        Encoding of the files
+	 * @param bufferSize
+	 *        Number of bytes read at once
+	 */
+	public ChannelDecoder(Charset charset, int bufferSize) {
+		if (bufferSize < 16)
+			throw new IllegalArgumentException("Buffer size must be at least 16");
+		this.charset = charset;
+		this.decoder = charset.newDecoder();
+		this.decoder.onMalformedInput(CodingErrorAction.REPLACE);
+		this.decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.bytes = ByteBuffer.allocateDirect(bufferSize);
+		this.chars = CharBuffer.allocate((int) Math.ceil(bufferSize * this.decoder.maxCharsPerByte()));
+	}
+
+	/**
+	 * Returns the encoding of the files.
+	 * @return Charset
+	 */
+	public Charset getCharset() {
+		return this.charset;
+	}
+
+	/**
+	 * Reads a complete file and adds its characters to the collector. The
+	 * collector is not flushed.
+	 * @param file
+	 *        Text file
+	 * @param collector
+	 *        Collector receiving the characters
+	 * @return Number of bytes read
+	 * @throws IOException
+	 *         if the file cannot be read
+	 */
+	public long decode(File file, NGramCollector collector) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			return this.decode(channel, 0, channel.size(), collector);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a byte range of a channel and adds its characters to the
+	 * collector. The range is read with absolute positions, so the position
+	 * of the channel is not changed and several ranges can be read from the
+	 * same channel concurrently by different decoders. The collector is not
+	 * flushed.
+	 * @param channel
+	 *        File channel
+	 * @param start
+	 *        Position of the first byte
+	 * @param end
+	 *        Position after the last byte
+	 * @param collector
+	 *        Collector receiving the characters
+	 * @return Number of bytes read
+	 * @throws IOException
+	 *         if the channel cannot be read
+	 */
+	public long decode(FileChannel channel, long start, long end, NGramCollector collector) throws IOException {
+
+		this.decoder.reset();
+		this.bytes.clear();
+		long pos = start;
+		boolean endOfInput = false;
+		while (!endOfInput) {
+
+			// fill the buffer behind the bytes left over from the last round
+			if (this.bytes.remaining() > end - pos) {
+				this.bytes.limit(this.bytes.position() + (int) (end - pos));
+			}
+			int read = this.bytes.hasRemaining() ? channel.read(this.bytes, pos) : 0;
+			if (read > 0)
+				pos += read;
+			endOfInput = read < 0 || pos >= end;
+			this.bytes.flip();
+
+			this.decode(endOfInput, collector);
+			this.bytes.compact();
+		}
+
+		// characters held back by the decoder
+		CoderResult result;
+		do {
+			result = this.decoder.flush(this.chars);
+			this.drain(collector);
+		} while (result.isOverflow());
+		return pos - start;
+	}
+
+	/**
+	 * Decodes the bytes of the buffer and adds the characters to the
+	 * collector.
+	 */
+	private void decode(boolean endOfInput, NGramCollector collector) {
+		CoderResult result;
+		do {
+			result = this.decoder.decode(this.bytes, this.chars, endOfInput);
+			this.drain(collector);
+		} while (result.isOverflow());
+	}
+
+	/**
+	 * Adds the decoded characters to the collector and empties the buffer.
+	 */
+	private void drain(NGramCollector collector) {
+		this.chars.flip();
+		if (this.chars.hasRemaining()) {
+			collector.add(this.chars.array(), this.chars.arrayOffset(), this.chars.remaining());
+		}
+		this.chars.clear();
+	}
+
+}
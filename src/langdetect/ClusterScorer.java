@@ -0,0 +1,508 @@
+package langdetect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class finds the k language profiles closest to a query profile without
+ * comparing it to every language. When the scorer is created, the profiles are
+ * clustered into a tree: the languages are split into at most a given number
+ * of groups of similar profiles (k-medoids with the symmetric out-of-place
+ * measure of {@link Profile#getOutOfPlaceMeasure(Profile, int, int)} as
+ * distance, with the same measure of missing n-grams as the search), and
+ * every group with more than one language is split again. For each group, a
+ * centroid profile ranks the n-grams of its languages by the sum of their
+ * ranks (the best n-gram of a language contributes most), so closely related
+ * languages such as the Romance or Germanic ones share a centroid.
+ * <p>
+ * A query is compared to the centroids of the top level first, and only the
+ * best groups, up to the beam width, are descended into. Languages that are
+ * reached on the way are scored exactly, and the best k of them are returned.
+ * With a beam width of at least the branching factor, every language is
+ * reached and the result is the same as with exhaustive search. Optionally,
+ * every query is also scored exhaustively, to report the recall of the tree
+ * search: the share of queries for which it finds the same best language.
+ * <p>
+ * All centroids and languages are kept in one {@link ProfileIndex}, so the
+ * query is resolved to n-gram ids only once. A scorer is not thread-safe.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class ClusterScorer {
+
+	/**
+	 * Number of languages
+	 */
+	private int languages;
+	/**
+	 * Index of the languages (ids from 0) and the centroids (ids after the
+	 * languages)
+	 */
+	private ProfileIndex index;
+	/**
+	 * Root of the tree, whose children form the top level
+	 */
+	private Node root;
+	/**
+	 * Number of best profiles to find
+	 */
+	private int k;
+	/**
+	 * Number of groups descended into on each level
+	 */
+	private int beamWidth = 2;
+	/**
+	 * Whether every query is also scored exhaustively
+	 */
+	private boolean verify;
+	/**
+	 * n-gram ids of the current query
+	 */
+	private int[] ids = new int[Profile.cutOffPos];
+	/**
+	 * Out-of-place measure per language, Integer.MAX_VALUE if not scored
+	 */
+	private int[] distances;
+	/**
+	 * Best language ids of the current query
+	 */
+	private int[] best;
+	/**
+	 * Groups descended into on the current level
+	 */
+	private List<Node> groups = new ArrayList<Node>();
+	/**
+	 * Nodes of the current level and their out-of-place measures
+	 */
+	private List<Node> level = new ArrayList<Node>();
+	private int[] levelDistances;
+	/**
+	 * Number of scored queries
+	 */
+	private long queries;
+	/**
+	 * Number of calculated out-of-place measures
+	 */
+	private long comparisons;
+	/**
+	 * Number of verified queries and how many of them found the best language
+	 */
+	private long verified;
+	private long hits;
+
+	/**
+	 * Creates a scorer for the given language profiles with groups of up to
+	 * four languages.
+	 * @param profiles
+	 *        Finalized language profiles
+	 * @param k
+	 *        Number of best profiles to find
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 * @throws IllegalArgumentException
+	 *         if k is not positive
+	 */
+	public ClusterScorer(Collection<Profile> profiles, int k) throws IllegalStateException,
+			IllegalArgumentException {
+		this(profiles, k, 4, Profile.maxOoP);
+	}
+
+	/**
+	 * Creates a scorer for the given language profiles.
+	 * @param profiles
+	 *        Finalized language profiles
+	 * @param k
+	 *        Number of best profiles to find
+	 * @param branching
+	 *        Maximum number of groups a group is split into, at least 2
+	 * @param maxOoP
+	 *        Out-of-place measure of n-grams missing in a profile
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 * @throws IllegalArgumentException
+	 *         if k is not positive, branching is less than 2 or maxOoP is
+	 *         invalid
+	 */
+	public ClusterScorer(Collection<Profile> profiles, int k, int branching, int maxOoP)
+			throws IllegalStateException, IllegalArgumentException {
+
+		if (k < 1)
+			throw new IllegalArgumentException("k must be positive");
+		if (branching < 2)
+			throw new IllegalArgumentException("Branching must be at least 2");
+		this.k = k;
+		List<Profile> leaves = new ArrayList<Profile>(profiles);
+		this.languages = leaves.size();
+		if (this.languages == 0)
+			throw new IllegalArgumentException("No profiles given");
+
+		// symmetric distances between all languages
+		int[][] dist = new int[this.languages][this.languages];
+		for (int i = 0; i < this.languages; i++) {
+			for (int j = i + 1; j < this.languages; j++) {
+				int d = leaves.get(i).getOutOfPlaceMeasure(leaves.get(j), Integer.MAX_VALUE, maxOoP)
+						+ leaves.get(j).getOutOfPlaceMeasure(leaves.get(i), Integer.MAX_VALUE, maxOoP);
+				dist[i][j] = d;
+				dist[j][i] = d;
+			}
+		}
+
+		// build the tree, centroids are appended to the profiles
+		List<Profile> nodes = new ArrayList<Profile>(leaves);
+		int[] members = new int[this.languages];
+		for (int i = 0; i < this.languages; i++) {
+			members[i] = i;
+		}
+		this.root = cluster(members, dist, branching, leaves, nodes, false);
+		this.index = new ProfileIndex(nodes, false, maxOoP);
+		this.distances = new int[this.languages];
+		this.best = new int[k];
+		// a level has less groups than there are languages
+		this.levelDistances = new int[this.languages];
+	}
+
+	/**
+	 * Returns the number of best profiles to find.
+	 * @return k
+	 */
+	public int getK() {
+		return this.k;
+	}
+
+	/**
+	 * Sets the number of groups that are descended into on each level.
+	 * @param beamWidth
+	 *        Number of groups, 2 by default
+	 */
+	public void setBeamWidth(int beamWidth) {
+		if (beamWidth < 1)
+			throw new IllegalArgumentException("Beam width must be positive");
+		this.beamWidth = beamWidth;
+	}
+
+	/**
+	 * Returns the number of groups that are descended into on each level.
+	 * @return Beam width
+	 */
+	public int getBeamWidth() {
+		return this.beamWidth;
+	}
+
+	/**
+	 * Sets whether every query is also scored against all languages, to
+	 * measure the recall of the tree search.
+	 * @param verify
+	 *        true, to score exhaustively as well
+	 */
+	public void setVerify(boolean verify) {
+		this.verify = verify;
+	}
+
+	/**
+	 * Finds the closest language profiles to the query profile.
+	 * @param query
+	 *        Finalized query profile
+	 * @param best
+	 *        Array of at least length k receiving the closest profiles
+	 * @param distances
+	 *        Array of at least length k receiving their out-of-place measures
+	 * @return Number of profiles found, which is k, unless less languages
+	 *         were reached
+	 * @throws IllegalStateException
+	 *         if the query profile is not yet finalized
+	 */
+	public int score(Profile query, Profile[] best, int[] distances) throws IllegalStateException {
+
+		if (query == null || !query.isFinalized())
+			throw new IllegalStateException("Profile is not yet finalized");
+		int size = query.getNumberOfNGrams();
+		if (this.ids.length < size) {
+			this.ids = new int[size];
+		}
+		this.index.getDictionary().resolve(query, this.ids);
+		this.queries++;
+
+		// descend level by level into the best groups
+		Arrays.fill(this.distances, Integer.MAX_VALUE);
+		int reached = 0;
+		this.groups.clear();
+		this.groups.add(this.root);
+		while (!this.groups.isEmpty()) {
+			this.level.clear();
+			for (int g = 0; g < this.groups.size(); g++) {
+				for (Node child : this.groups.get(g).children) {
+					int dist = this.index.getOutOfPlaceMeasure(this.ids, size, child.id, Integer.MAX_VALUE);
+					this.comparisons++;
+					if (child.children == null) {
+						this.distances[child.id] = dist;
+						reached++;
+					} else {
+						this.levelDistances[this.level.size()] = dist;
+						this.level.add(child);
+					}
+				}
+			}
+			this.selectGroups();
+		}
+
+		int found = Detector.selectBest(this.distances, this.languages, this.best, Math.min(this.k, reached));
+		for (int i = 0; i < found; i++) {
+			best[i] = this.index.getProfile(this.best[i]);
+			distances[i] = this.distances[this.best[i]];
+		}
+
+		if (this.verify) {
+			// the measures of reached languages are overwritten, they are copied already
+			for (int langId = 0; langId < this.languages; langId++) {
+				this.distances[langId] = this.index.getOutOfPlaceMeasure(this.ids, size, langId, Integer.MAX_VALUE);
+			}
+			int bestLangId = this.best[0];
+			Detector.selectBest(this.distances, this.languages, this.best, 1);
+			this.verified++;
+			if (found > 0 && this.best[0] == bestLangId)
+				this.hits++;
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the number of scored queries.
+	 * @return Number of queries
+	 */
+	public long getQueries() {
+		return this.queries;
+	}
+
+	/**
+	 * Returns the number of out-of-place measures calculated so far, for
+	 * centroids and languages, without the ones of verification.
+	 * @return Number of comparisons
+	 */
+	public long getComparisons() {
+		return this.comparisons;
+	}
+
+	/**
+	 * Returns the share of verified queries for which the tree search found
+	 * the same best language as exhaustive search.
+	 * @return Recall between 0 and 1, or 1 if no query was verified
+	 */
+	public double getRecall() {
+		return this.verified == 0 ? 1 : (double) this.hits / this.verified;
+	}
+
+	/**
+	 * Returns the languages of the tree, with groups in parentheses.
+	 * @return Text such as "((es, pt), it), (de, nl)"
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		this.append(this.root, text);
+		return text.substring(1, text.length() - 1);
+	}
+
+	/**
+	 * Selects the best groups of the current level, up to the beam width, as
+	 * the groups to descend into.
+	 */
+	private void selectGroups() {
+		this.groups.clear();
+		int n = this.level.size();
+		for (int found = 0; found < this.beamWidth && found < n; found++) {
+			int bestNode = -1;
+			for (int i = 0; i < n; i++) {
+				if (this.levelDistances[i] != Integer.MAX_VALUE
+						&& (bestNode < 0 || this.levelDistances[i] < this.levelDistances[bestNode]))
+					bestNode = i;
+			}
+			this.groups.add(this.level.get(bestNode));
+			this.levelDistances[bestNode] = Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Splits the languages into groups and creates their nodes recursively.
+	 * @param members
+	 *        Language ids of the group
+	 * @param dist
+	 *        Distances between all languages
+	 * @param branching
+	 *        Maximum number of sub-groups
+	 * @param leaves
+	 *        Language profiles
+	 * @param nodes
+	 *        Profiles of the index, receiving the centroid of the group
+	 * @param scored
+	 *        Whether the node is compared to queries and needs a centroid
+	 * @return Node of the group
+	 */
+	private static Node cluster(int[] members, int[][] dist, int branching, List<Profile> leaves,
+			List<Profile> nodes, boolean scored) {
+
+		Node node = new Node(-1);
+		if (scored) {
+			node.id = nodes.size();
+			nodes.add(centroid(members, leaves));
+		}
+		if (members.length <= branching) {
+			node.children = new Node[members.length];
+			for (int i = 0; i < members.length; i++) {
+				node.children[i] = new Node(members[i]);
+			}
+			return node;
+		}
+
+		int[] assignment = kMedoids(members, dist, branching);
+		node.children = new Node[branching];
+		for (int group = 0; group < branching; group++) {
+			int[] subset = new int[members.length];
+			int n = 0;
+			for (int i = 0; i < members.length; i++) {
+				if (assignment[i] == group)
+					subset[n++] = members[i];
+			}
+			if (n == 1)
+				node.children[group] = new Node(subset[0]);
+			else
+				node.children[group] = cluster(Arrays.copyOf(subset, n), dist, branching, leaves, nodes, true);
+		}
+		return node;
+	}
+
+	/**
+	 * Assigns the languages to a number of groups around medoids, starting
+	 * with the languages that are farthest from each other.
+	 * @return Group of each member
+	 */
+	private static int[] kMedoids(int[] members, int[][] dist, int groups) {
+
+		// farthest-first seeds, beginning with the most distant language
+		int[] medoids = new int[groups];
+		long maxSum = -1;
+		for (int i = 0; i < members.length; i++) {
+			long sum = 0;
+			for (int j = 0; j < members.length; j++) {
+				sum += dist[members[i]][members[j]];
+			}
+			if (sum > maxSum) {
+				maxSum = sum;
+				medoids[0] = i;
+			}
+		}
+		for (int g = 1; g < groups; g++) {
+			int maxMin = -1;
+			for (int i = 0; i < members.length; i++) {
+				int min = Integer.MAX_VALUE;
+				for (int h = 0; h < g; h++) {
+					min = Math.min(min, medoids[h] == i ? -1 : dist[members[i]][members[medoids[h]]]);
+				}
+				if (min > maxMin) {
+					maxMin = min;
+					medoids[g] = i;
+				}
+			}
+		}
+
+		int[] assignment = new int[members.length];
+		for (int iteration = 0; iteration < 20; iteration++) {
+
+			// assign every member to its closest medoid
+			for (int i = 0; i < members.length; i++) {
+				int bestGroup = 0;
+				for (int g = 0; g < groups; g++) {
+					if (medoids[g] == i) {
+						bestGroup = g;
+						break;
+					}
+					if (dist[members[i]][members[medoids[g]]] < dist[members[i]][members[medoids[bestGroup]]])
+						bestGroup = g;
+				}
+				assignment[i] = bestGroup;
+			}
+
+			// move each medoid to the member closest to the rest of its group
+			boolean changed = false;
+			for (int g = 0; g < groups; g++) {
+				long minSum = Long.MAX_VALUE;
+				int medoid = medoids[g];
+				for (int i = 0; i < members.length; i++) {
+					if (assignment[i] != g)
+						continue;
+					long sum = 0;
+					for (int j = 0; j < members.length; j++) {
+						if (assignment[j] == g)
+							sum += dist[members[i]][members[j]];
+					}
+					if (sum < minSum) {
+						minSum = sum;
+						medoid = i;
+					}
+				}
+				changed |= medoid != medoids[g];
+				medoids[g] = medoid;
+			}
+			if (!changed)
+				break;
+		}
+		return assignment;
+	}
+
+	/**
+	 * Creates the centroid of a group of languages, which ranks their n-grams
+	 * by the sum of their ranks.
+	 */
+	private static Profile centroid(int[] members, List<Profile> leaves) {
+		String name = "";
+		int cutOff = 1;
+		for (int member : members) {
+			name += (name.isEmpty() ? "" : "+") + leaves.get(member).getName();
+			cutOff = Math.max(cutOff, leaves.get(member).getNumberOfNGrams());
+		}
+		Profile centroid = new Profile(name, true);
+		centroid.setCutOff(cutOff);
+		for (int member : members) {
+			Profile leaf = leaves.get(member);
+			int size = leaf.getNumberOfNGrams();
+			for (int pos = 0; pos < size; pos++) {
+				centroid.addNGram(leaf.getKey(pos), size - pos);
+			}
+		}
+		centroid.setFinalized();
+		return centroid;
+	}
+
+	/**
+	 * Appends the languages below a node.
+	 */
+	private void append(Node node, StringBuilder text) {
+		if (node.children == null) {
+			text.append(this.index.getProfile(node.id).getName());
+			return;
+		}
+		text.append('(');
+		for (int i = 0; i < node.children.length; i++) {
+			if (i > 0)
+				text.append(", ");
+			this.append(node.children[i], text);
+		}
+		text.append(')');
+	}
+
+	/**
+	 * Node of the tree, a language or a group of languages with its centroid
+	 */
+	private static class Node {
+
+		private int id;
+		private Node[] children;
+
+		public Node(int id) {
+			this.id = id;
+		}
+	}
+
+}
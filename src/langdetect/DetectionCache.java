@@ -0,0 +1,308 @@
+package langdetect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class caches the results of a {@link Detector} for repeated texts. Texts
+ * are normalized by trimming them and collapsing runs of whitespace, which
+ * does not change their n-grams, and the ranked results of a text are looked
+ * up before it is tokenized. The least recently used texts are evicted once
+ * the cache holds more than the maximum number of entries or their total
+ * weight, the approximate number of bytes of the cached texts and results,
+ * exceeds the maximum weight.
+ * <p>
+ * The cache can be used by many threads concurrently. It is split into
+ * segments by the hash of the text, each with its own lock and an equal share
+ * of the limits, so that threads rarely wait for each other. Detection itself
+ * runs outside of the locks.
+ * <p>
+ * If the detector records metrics, hits are recorded there as well, so that
+ * the metrics count all queries served.
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class DetectionCache {
+
+	// approximate size of an entry without the text and results
+	private static final int entryWeight = 64;
+	// approximate size of a cached result
+	private static final int resultWeight = 32;
+
+	/**
+	 * Detector computing results on a miss
+	 */
+	private final Detector detector;
+	/**
+	 * Number of results cached per text
+	 */
+	private final int k;
+	/**
+	 * Segments of the cache
+	 */
+	private final Segment[] segments;
+
+	/**
+	 * Creates a cache for a detector.
+	 * @param detector
+	 *        Detector
+	 * @param k
+	 *        Number of ranked results cached per text
+	 * @param maxEntries
+	 *        Maximum number of cached texts
+	 * @param maxWeight
+	 *        Maximum weight of the cached texts and results in bytes
+	 * @throws IllegalArgumentException
+	 *         if one of the numbers is not positive
+	 */
+	public DetectionCache(Detector detector, int k, int maxEntries, long maxWeight) throws IllegalArgumentException {
+
+		if (k < 1 || maxEntries < 1 || maxWeight < 1)
+			throw new IllegalArgumentException("k and limits must be positive");
+		this.detector = detector;
+		this.k = k;
+
+		// only split large caches, so that every segment holds some entries
+		int count = 1;
+		while (count < 16 && maxEntries / (2 * count) >= 64) {
+			count <<= 1;
+		}
+		this.segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			this.segments[i] = new Segment(maxEntries / count, maxWeight / count);
+		}
+	}
+
+	/**
+	 * Detects the language of a text.
+	 * @param text
+	 *        Text
+	 * @return Closest language
+	 * @throws IllegalStateException
+	 *         if the text does not contain any n-grams
+	 */
+	public DetectionResult detect(CharSequence text) throws IllegalStateException {
+		return this.detectTopK(text, 1).get(0);
+	}
+
+	/**
+	 * Detects the k closest languages of a text. Results for up to the number
+	 * of results given to the constructor are cached, larger requests are
+	 * passed to the detector.
+	 * @param text
+	 *        Text
+	 * @param k
+	 *        Number of languages
+	 * @return Closest languages, ordered by out-of-place measure, at most k
+	 * @throws IllegalStateException
+	 *         if the text does not contain any n-grams
+	 */
+	public List<DetectionResult> detectTopK(CharSequence text, int k) throws IllegalStateException {
+
+		if (k > this.k)
+			return this.detector.detectTopK(text, k);
+
+		DetectorMetrics metrics = this.detector.getMetrics();
+		long start = metrics != null ? System.nanoTime() : 0;
+		String key = normalize(text);
+		Segment segment = this.segments[spread(key.hashCode()) & (this.segments.length - 1)];
+		List<DetectionResult> results = segment.get(key);
+		if (results == null) {
+			// recorded by the detector
+			results = Collections.unmodifiableList(new ArrayList<DetectionResult>(this.detector.detectTopK(key,
+					this.k)));
+			segment.put(key, results);
+		} else if (metrics != null) {
+			metrics.recordCacheHit(start, System.nanoTime());
+		}
+		return results.size() > k ? results.subList(0, k) : results;
+	}
+
+	/**
+	 * Returns the number of cached texts.
+	 * @return Number of entries
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				size += segment.map.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the weight of the cached texts and results.
+	 * @return Approximate number of bytes
+	 */
+	public long getWeight() {
+		long weight = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				weight += segment.weight;
+			}
+		}
+		return weight;
+	}
+
+	/**
+	 * Returns the number of requests answered from the cache.
+	 * @return Number of hits
+	 */
+	public long getHits() {
+		long hits = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				hits += segment.hits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests passed to the detector.
+	 * @return Number of misses
+	 */
+	public long getMisses() {
+		long misses = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				misses += segment.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * Returns the number of texts evicted from the cache.
+	 * @return Number of evictions
+	 */
+	public long getEvictions() {
+		long evictions = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				evictions += segment.evictions;
+			}
+		}
+		return evictions;
+	}
+
+	/**
+	 * Removes all cached texts, keeping the statistics.
+	 */
+	public void clear() {
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				segment.map.clear();
+				segment.weight = 0;
+			}
+		}
+	}
+
+	/**
+	 * Returns a textual summary of the statistics.
+	 * @return Text
+	 */
+	@Override
+	public String toString() {
+		return this.size() + " entries, " + this.getHits() + " hits, " + this.getMisses() + " misses, "
+				+ this.getEvictions() + " evictions";
+	}
+
+	/**
+	 * Normalizes a text: leading and trailing whitespace is removed and other
+	 * runs of whitespace are replaced by a single space.
+	 * @param text
+	 *        Text
+	 * @return Normalized text
+	 */
+	static String normalize(CharSequence text) {
+
+		StringBuilder normalized = new StringBuilder(text.length());
+		boolean space = false;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = normalized.length() > 0;
+			} else {
+				if (space)
+					normalized.append(' ');
+				normalized.append(c);
+				space = false;
+			}
+		}
+		return normalized.toString();
+	}
+
+	/**
+	 * Spreads the bits of a hash code, so that segments are chosen by all of
+	 * them.
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Returns the weight of an entry.
+	 */
+	private static long weight(String key, List<DetectionResult> results) {
+		return entryWeight + 2L * key.length() + resultWeight * results.size();
+	}
+
+	/**
+	 * Part of the cache with its own lock, limits and statistics
+	 */
+	private static class Segment {
+
+		// access-ordered, the least recently used entry comes first
+		private Map<String, List<DetectionResult>> map = new LinkedHashMap<String, List<DetectionResult>>(16,
+				0.75f, true);
+		private int maxEntries;
+		private long maxWeight;
+		private long weight;
+		private long hits;
+		private long misses;
+		private long evictions;
+
+		public Segment(int maxEntries, long maxWeight) {
+			this.maxEntries = Math.max(1, maxEntries);
+			this.maxWeight = Math.max(1, maxWeight);
+		}
+
+		public synchronized List<DetectionResult> get(String key) {
+			List<DetectionResult> results = this.map.get(key);
+			if (results != null)
+				this.hits++;
+			else
+				this.misses++;
+			return results;
+		}
+
+		public synchronized void put(String key, List<DetectionResult> results) {
+
+			long weight = weight(key, results);
+			if (weight > this.maxWeight)
+				return;
+			List<DetectionResult> old = this.map.put(key, results);
+			if (old != null)
+				this.weight -= weight(key, old);
+			this.weight += weight;
+
+			// evict the least recently used entries
+			Iterator<Map.Entry<String, List<DetectionResult>>> it = this.map.entrySet().iterator();
+			while (this.map.size() > this.maxEntries || this.weight > this.maxWeight) {
+				Map.Entry<String, List<DetectionResult>> eldest = it.next();
+				this.weight -= weight(eldest.getKey(), eldest.getValue());
+				it.remove();
+				this.evictions++;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,443 @@
+package langdetect;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class detects the languages of a stream of text records as a
+ * {@link Flow.Processor}. It subscribes to a publisher of records and
+ * publishes, for every record and in the same order, the best languages (an
+ * empty list for records without any n-grams) to a single subscriber.
+ * <p>
+ * Records are detected in micro-batches by a fixed number of worker threads
+ * sharing one {@link Detector}. A batch takes all buffered records up to the
+ * batch size as soon as a worker is free, so records are detected one by one
+ * while the input is slow and in larger batches under load. Memory is bounded
+ * by the buffer size: the processor requests that many records from the
+ * publisher at first, and only requests another one when a result has been
+ * delivered to the subscriber. If the subscriber does not request results,
+ * the publisher is therefore not asked for more records either.
+ * <p>
+ * An error of the publisher or of a worker is passed on at once, dropping the
+ * records that are not yet delivered, and the worker threads are stopped once
+ * the stream ends or is cancelled.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class DetectionProcessor implements Flow.Processor<String, List<DetectionResult>> {
+
+	/**
+	 * Detector shared by all workers
+	 */
+	private Detector detector;
+	/**
+	 * Number of best languages per record
+	 */
+	private int k;
+	/**
+	 * Number of worker threads
+	 */
+	private int parallelism;
+	/**
+	 * Maximum number of records that are buffered, detected or waiting to be
+	 * delivered
+	 */
+	private int bufferSize = 1024;
+	/**
+	 * Maximum number of records per batch
+	 */
+	private int batchSize = 64;
+	/**
+	 * Workers detecting the batches, created on subscription
+	 */
+	private ExecutorService workers;
+
+	/**
+	 * Subscription of the publisher, null before subscription
+	 */
+	private Flow.Subscription upstream;
+	/**
+	 * Subscriber receiving the results, null before subscription
+	 */
+	private Flow.Subscriber<? super List<DetectionResult>> downstream;
+	/**
+	 * Records that are not yet detected
+	 */
+	private ArrayDeque<String> input = new ArrayDeque<String>();
+	/**
+	 * Batches in the order of their records, running or waiting for delivery
+	 */
+	private ArrayDeque<Batch> batches = new ArrayDeque<Batch>();
+	/**
+	 * Number of records that are buffered, detected or waiting to be
+	 * delivered
+	 */
+	private int pending;
+	/**
+	 * Number of running batches
+	 */
+	private int running;
+	/**
+	 * Number of results requested by the subscriber and not yet delivered
+	 */
+	private long demand;
+	/**
+	 * Whether the publisher has completed
+	 */
+	private boolean completed;
+	/**
+	 * Error to pass on, null if none
+	 */
+	private Throwable error;
+	/**
+	 * Whether the stream has ended, by completion, error or cancellation
+	 */
+	private boolean terminated;
+	/**
+	 * Whether a thread is delivering results, and whether it has to look for
+	 * more work before it stops
+	 */
+	private boolean emitting;
+	private boolean missed;
+
+	/**
+	 * Creates a processor.
+	 * @param detector
+	 *        Detector for the language profiles
+	 * @param parallelism
+	 *        Number of worker threads
+	 * @param k
+	 *        Number of best languages published per record
+	 * @throws IllegalArgumentException
+	 *         if parallelism or k are not positive
+	 */
+	public DetectionProcessor(Detector detector, int parallelism, int k) throws IllegalArgumentException {
+		if (parallelism < 1 || k < 1)
+			throw new IllegalArgumentException("Parallelism and k must be positive");
+		this.detector = detector;
+		this.parallelism = parallelism;
+		this.k = k;
+	}
+
+	/**
+	 * Sets the maximum number of records held by the processor, which has to
+	 * be done before subscribing to a publisher.
+	 * @param bufferSize
+	 *        Number of records, 1024 by default
+	 */
+	public synchronized void setBufferSize(int bufferSize) {
+		if (bufferSize < 1)
+			throw new IllegalArgumentException("Buffer size must be positive");
+		if (this.upstream != null)
+			throw new IllegalStateException("Already subscribed");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Sets the maximum number of records that are detected together by one
+	 * worker.
+	 * @param batchSize
+	 *        Number of records, 64 by default
+	 */
+	public synchronized void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Returns the number of records held by the processor, which are
+	 * buffered, detected or waiting to be delivered.
+	 * @return Number of records, at most the buffer size
+	 */
+	public synchronized int getPending() {
+		return this.pending;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super List<DetectionResult>> subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException("Subscriber must be specified");
+		boolean accepted = false;
+		synchronized (this) {
+			if (this.downstream == null) {
+				this.downstream = subscriber;
+				accepted = true;
+			}
+		}
+		if (accepted) {
+			subscriber.onSubscribe(new ResultSubscription());
+			// the publisher may have ended already
+			this.drain();
+			return;
+		}
+		// only one subscriber is supported
+		subscriber.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+			}
+
+			@Override
+			public void cancel() {
+			}
+		});
+		subscriber.onError(new IllegalStateException("Processor has already a subscriber"));
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		synchronized (this) {
+			if (this.upstream != null || this.terminated) {
+				subscription.cancel();
+				return;
+			}
+			this.upstream = subscription;
+			this.workers = Executors.newFixedThreadPool(this.parallelism, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "detection-worker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		subscription.request(this.bufferSize);
+	}
+
+	@Override
+	public void onNext(String record) {
+		synchronized (this) {
+			if (this.terminated)
+				return;
+			if (this.pending >= this.bufferSize) {
+				this.fail(new IllegalStateException("Publisher sent more records than requested"));
+			} else {
+				this.input.add(record);
+				this.pending++;
+				this.dispatch();
+			}
+		}
+		this.drain();
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		synchronized (this) {
+			this.fail(throwable);
+		}
+		this.drain();
+	}
+
+	@Override
+	public void onComplete() {
+		synchronized (this) {
+			this.completed = true;
+		}
+		this.drain();
+	}
+
+	/**
+	 * Starts batches of buffered records while workers are free.
+	 */
+	private void dispatch() {
+		if (this.error != null || this.terminated)
+			return;
+		while (!this.input.isEmpty() && this.running < this.parallelism) {
+			int size = Math.min(this.batchSize, this.input.size());
+			List<String> records = new ArrayList<String>(size);
+			for (int i = 0; i < size; i++) {
+				records.add(this.input.poll());
+			}
+			final Batch batch = new Batch(records);
+			this.batches.add(batch);
+			this.running++;
+			this.workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					DetectionProcessor.this.detect(batch);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Detects the records of a batch on a worker thread.
+	 */
+	private void detect(Batch batch) {
+		List<List<DetectionResult>> results = new ArrayList<List<DetectionResult>>(batch.records.size());
+		Throwable failure = null;
+		try {
+			for (String record : batch.records) {
+				try {
+					results.add(this.detector.detectTopK(record, this.k));
+				} catch (IllegalStateException e) {
+					// if the record does not contain any n-grams
+					results.add(Collections.<DetectionResult> emptyList());
+				}
+			}
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		synchronized (this) {
+			this.running--;
+			if (failure != null) {
+				this.fail(failure);
+			} else {
+				batch.results = results;
+				this.dispatch();
+			}
+		}
+		this.drain();
+	}
+
+	/**
+	 * Records an error, unless the stream has already ended.
+	 */
+	private void fail(Throwable throwable) {
+		if (this.error == null && !this.terminated)
+			this.error = throwable;
+	}
+
+	/**
+	 * Delivers the results of finished batches in order, as far as they are
+	 * requested, and requests as many records from the publisher. Only one
+	 * thread delivers at a time, so that the subscriber is called serially.
+	 */
+	private void drain() {
+
+		synchronized (this) {
+			if (this.emitting) {
+				this.missed = true;
+				return;
+			}
+			this.emitting = true;
+		}
+
+		List<List<DetectionResult>> ready = new ArrayList<List<DetectionResult>>();
+		while (true) {
+			Flow.Subscriber<? super List<DetectionResult>> subscriber;
+			Flow.Subscription subscription;
+			Throwable failure = null;
+			boolean complete = false;
+			ready.clear();
+			synchronized (this) {
+				subscriber = this.downstream;
+				subscription = this.upstream;
+				if (!this.terminated && subscriber != null) {
+					if (this.error != null) {
+						failure = this.error;
+						this.terminate();
+					} else {
+						this.collect(ready);
+						if (this.completed && this.input.isEmpty() && this.batches.isEmpty()) {
+							complete = true;
+							this.terminate();
+						}
+					}
+				}
+				if (ready.isEmpty() && failure == null && !complete && !this.missed) {
+					this.emitting = false;
+					return;
+				}
+				this.missed = false;
+			}
+
+			// call the subscriber and the publisher outside of the lock
+			for (List<DetectionResult> result : ready) {
+				subscriber.onNext(result);
+			}
+			if (failure != null) {
+				if (subscription != null)
+					subscription.cancel();
+				subscriber.onError(failure);
+			} else if (!ready.isEmpty() && subscription != null && !complete) {
+				subscription.request(ready.size());
+			}
+			if (complete)
+				subscriber.onComplete();
+		}
+	}
+
+	/**
+	 * Takes the requested results of finished batches, in order.
+	 */
+	private void collect(List<List<DetectionResult>> ready) {
+		while (this.demand > 0 && !this.batches.isEmpty() && this.batches.peek().results != null) {
+			Batch batch = this.batches.peek();
+			ready.add(batch.results.get(batch.delivered++));
+			this.demand--;
+			this.pending--;
+			if (batch.delivered == batch.records.size())
+				this.batches.poll();
+		}
+	}
+
+	/**
+	 * Ends the stream, drops all records and stops the workers.
+	 */
+	private void terminate() {
+		this.terminated = true;
+		this.input.clear();
+		this.batches.clear();
+		this.pending = 0;
+		if (this.workers != null)
+			this.workers.shutdown();
+	}
+
+	/**
+	 * Batch of records detected by one worker
+	 */
+	private static class Batch {
+
+		private List<String> records;
+		private List<List<DetectionResult>> results;
+		private int delivered;
+
+		public Batch(List<String> records) {
+			this.records = records;
+		}
+	}
+
+	/**
+	 * Subscription of the subscriber receiving the results
+	 */
+	private class ResultSubscription implements Flow.Subscription {
+
+		@Override
+		public void request(long n) {
+			DetectionProcessor processor = DetectionProcessor.this;
+			synchronized (processor) {
+				if (n <= 0) {
+					processor.fail(new IllegalArgumentException("Number of results must be positive"));
+				} else {
+					processor.demand += n;
+					if (processor.demand < 0)
+						processor.demand = Long.MAX_VALUE;
+				}
+			}
+			processor.drain();
+		}
+
+		@Override
+		public void cancel() {
+			DetectionProcessor processor = DetectionProcessor.this;
+			Flow.Subscription subscription;
+			synchronized (processor) {
+				if (processor.terminated)
+					return;
+				processor.terminate();
+				subscription = processor.upstream;
+			}
+			if (subscription != null)
+				subscription.cancel();
+		}
+	}
+
+}
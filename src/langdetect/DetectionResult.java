@@ -0,0 +1,66 @@
+package langdetect;
+
+/**
+ * This class represents a detected language: the language profile together
+ * with its out-of-place measure to the query. Results are immutable.
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class DetectionResult {
+
+	/**
+	 * Language profile
+	 */
+	private final Profile profile;
+	/**
+	 * Out-of-place measure to the query
+	 */
+	private final int outOfPlace;
+
+	/**
+	 * Creates a result.
+	 * @param profile
+	 *        Language profile
+	 * @param outOfPlace
+	 *        Out-of-place measure to the query
+	 */
+	public DetectionResult(Profile profile, int outOfPlace) {
+		this.profile = profile;
+		this.outOfPlace = outOfPlace;
+	}
+
+	/**
+	 * Returns the language profile.
+	 * @return Profile
+	 */
+	public Profile getProfile() {
+		return this.profile;
+	}
+
+	/**
+	 * Returns the name of the language.
+	 * @return Name
+	 */
+	public String getName() {
+		return this.profile.getName();
+	}
+
+	/**
+	 * Returns the out-of-place measure to the query.
+	 * @return out-of-place measure
+	 */
+	public int getOutOfPlaceMeasure() {
+		return this.outOfPlace;
+	}
+
+	/**
+	 * Returns a textual representation of the result.
+	 * @return Text
+	 */
+	@Override
+	public String toString() {
+		return this.getName() + " (" + this.outOfPlace + ")";
+	}
+
+}
@@ -0,0 +1,410 @@
+package langdetect;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class serves language detection over HTTP, using the server built into
+ * the JDK. All requests share one {@link Detector} and, optionally, one
+ * {@link DetectionCache}. Texts are sent as UTF-8 in the body of POST
+ * requests:
+ * <ul>
+ * <li><b>/detect</b> detects a single text and answers with a JSON object,
+ * e.g. {"results":[{"language":"en","distance":16080}, ...]}</li>
+ * <li><b>/batch</b> detects every line of the body and answers with a JSON
+ * array of such objects, in input order, with null for lines without any
+ * n-grams</li>
+ * </ul>
+ * The number of results can be given as parameter k (e.g. /detect?k=1).
+ * <p>
+ * Every request runs on its own virtual thread, if the JDK supports them
+ * (Java 21 and later), and otherwise on a thread of a cached pool. The number
+ * of requests detected at the same time is limited, further requests are
+ * rejected with status 503 instead of queuing up. The detector keeps as many
+ * scratch states as requests are detected at the same time, so that requests
+ * on new threads reuse them. Bodies larger than the request size limit are
+ * rejected with status 413.
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class DetectionServer {
+
+	private static final Charset utf8 = Charset.forName("UTF-8");
+	// number of results if not given by the request
+	private static final int defaultK = 3;
+	// maximum number of results per text
+	private static final int maxK = 100;
+
+	/**
+	 * Detector shared by all requests
+	 */
+	private volatile Detector detector;
+	/**
+	 * Port to listen on, 0 for any free port
+	 */
+	private int port;
+	/**
+	 * Cache of results, null to detect every text
+	 */
+	private volatile DetectionCache cache;
+	/**
+	 * Maximum number of requests detected at the same time
+	 */
+	private int maxConcurrency = 1000;
+	/**
+	 * Maximum size of a request body in bytes
+	 */
+	private int maxRequestSize = 1 << 20;
+	/**
+	 * Permits of concurrently detected requests
+	 */
+	private Semaphore permits;
+	/**
+	 * Running server, null if stopped
+	 */
+	private HttpServer server;
+	/**
+	 * Executor running the requests
+	 */
+	private ExecutorService executor;
+	/**
+	 * Whether requests run on virtual threads
+	 */
+	private boolean virtualThreads;
+
+	/**
+	 * Creates a server for a detector.
+	 * @param detector
+	 *        Detector
+	 * @param port
+	 *        Port to listen on, 0 for any free port
+	 */
+	public DetectionServer(Detector detector, int port) {
+		this.detector = detector;
+		this.port = port;
+	}
+
+	/**
+	 * Sets a cache that is consulted before detecting a text.
+	 * @param cache
+	 *        Cache for the same detector, null to detect every text
+	 */
+	public void setCache(DetectionCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Replaces the detector and its cache, also while the server is running.
+	 * Requests that have already started finish with the previous ones.
+	 * @param detector
+	 *        New detector
+	 * @param cache
+	 *        Cache for the new detector, null to detect every text
+	 */
+	public void setDetector(Detector detector, DetectionCache cache) {
+		detector.setPoolSize(this.maxConcurrency);
+		// a request seeing the old cache only uses the old cache
+		this.cache = null;
+		this.detector = detector;
+		this.cache = cache;
+	}
+
+	/**
+	 * Sets the number of requests that are detected at the same time. Takes
+	 * effect when the server is started.
+	 * @param maxConcurrency
+	 *        Number of requests
+	 */
+	public void setMaxConcurrency(int maxConcurrency) {
+		if (maxConcurrency < 1)
+			throw new IllegalArgumentException("Concurrency must be positive");
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	/**
+	 * Sets the maximum size of a request body.
+	 * @param maxRequestSize
+	 *        Number of bytes
+	 */
+	public void setMaxRequestSize(int maxRequestSize) {
+		if (maxRequestSize < 1)
+			throw new IllegalArgumentException("Request size must be positive");
+		this.maxRequestSize = maxRequestSize;
+	}
+
+	/**
+	 * Starts listening for requests.
+	 * @throws IOException
+	 *         if the port cannot be bound
+	 * @throws IllegalStateException
+	 *         if the server is already running
+	 */
+	public void start() throws IOException, IllegalStateException {
+
+		if (this.server != null)
+			throw new IllegalStateException("Server is already running");
+
+		this.permits = new Semaphore(this.maxConcurrency);
+		this.detector.setPoolSize(this.maxConcurrency);
+		this.executor = this.newVirtualThreadExecutor();
+		this.virtualThreads = this.executor != null;
+		if (this.executor == null) {
+			this.executor = Executors.newCachedThreadPool();
+		}
+
+		this.server = HttpServer.create(new InetSocketAddress(this.port), 1024);
+		this.server.createContext("/detect", new DetectHandler(false));
+		this.server.createContext("/batch", new DetectHandler(true));
+		this.server.setExecutor(this.executor);
+		this.server.start();
+	}
+
+	/**
+	 * Stops the server, waiting for running requests for at most the given
+	 * time.
+	 * @param delay
+	 *        Maximum time to wait in seconds
+	 */
+	public void stop(int delay) {
+		if (this.server != null) {
+			this.server.stop(delay);
+			this.executor.shutdown();
+			this.server = null;
+		}
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 * @return Port, or the configured port if the server is not running
+	 */
+	public int getPort() {
+		return this.server != null ? this.server.getAddress().getPort() : this.port;
+	}
+
+	/**
+	 * Returns whether requests run on virtual threads.
+	 * @return true, if the running server uses virtual threads
+	 */
+	public boolean isVirtualThreads() {
+		return this.virtualThreads;
+	}
+
+	/**
+	 * Creates an executor starting a virtual thread per task. It is looked up
+	 * by reflection, so that the server also runs on older JDKs.
+	 * @return Executor, or null if virtual threads are not supported
+	 */
+	private ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			// not available or a preview feature that is not enabled
+			return null;
+		}
+	}
+
+	/**
+	 * Detects a text and appends the results as a JSON object, or null if the
+	 * text does not contain any n-grams.
+	 * @return true, if the text contains n-grams
+	 */
+	private static boolean detect(Detector detector, DetectionCache cache, String text, int k,
+			StringBuilder json) {
+
+		List<DetectionResult> results;
+		try {
+			if (cache != null)
+				results = cache.detectTopK(text, k);
+			else
+				results = detector.detectTopK(text, k);
+		} catch (IllegalStateException e) {
+			json.append("null");
+			return false;
+		}
+		json.append("{\"results\":[");
+		for (int i = 0; i < results.size(); i++) {
+			if (i > 0)
+				json.append(',');
+			json.append("{\"language\":");
+			appendString(results.get(i).getName(), json);
+			json.append(",\"distance\":").append(results.get(i).getOutOfPlaceMeasure()).append('}');
+		}
+		json.append("]}");
+		return true;
+	}
+
+	/**
+	 * Appends a string as a JSON string literal.
+	 */
+	private static void appendString(String s, StringBuilder json) {
+		json.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				json.append('\\').append(c);
+			else if (c < 0x20)
+				json.append(String.format("\\u%04x", (int) c));
+			else
+				json.append(c);
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Returns the number of results requested by the parameter k.
+	 * @return Number of results, -1 if the parameter is invalid
+	 */
+	private static int parseK(URI uri) {
+		String query = uri.getRawQuery();
+		if (query == null)
+			return defaultK;
+		for (String param : query.split("&")) {
+			if (param.startsWith("k=")) {
+				try {
+					int k = Integer.parseInt(param.substring(2));
+					return k >= 1 && k <= maxK ? k : -1;
+				} catch (NumberFormatException e) {
+					return -1;
+				}
+			}
+		}
+		return defaultK;
+	}
+
+	/**
+	 * Reads the body of a request, up to the maximum request size.
+	 * @return Body, or null if it is too large
+	 */
+	private byte[] readBody(HttpExchange exchange) throws IOException {
+
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		if (length != null) {
+			try {
+				if (Long.parseLong(length.trim()) > this.maxRequestSize)
+					return null;
+			} catch (NumberFormatException e) {
+				// checked while reading
+			}
+		}
+
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int read;
+		while ((read = in.read(buf)) > 0) {
+			body.write(buf, 0, read);
+			if (body.size() > this.maxRequestSize)
+				return null;
+		}
+		return body.toByteArray();
+	}
+
+	/**
+	 * Sends a response and closes the exchange.
+	 */
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(utf8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Sends an error response.
+	 */
+	private static void respondError(HttpExchange exchange, int status, String message) throws IOException {
+		StringBuilder json = new StringBuilder("{\"error\":");
+		appendString(message, json);
+		respond(exchange, status, json.append('}').toString());
+	}
+
+	/**
+	 * Handler of the detection endpoints
+	 */
+	private class DetectHandler implements HttpHandler {
+
+		private boolean batch;
+
+		public DetectHandler(boolean batch) {
+			this.batch = batch;
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+
+			DetectionServer server = DetectionServer.this;
+			try {
+				if (!exchange.getRequestMethod().equals("POST")) {
+					exchange.getResponseHeaders().set("Allow", "POST");
+					respondError(exchange, 405, "Method not allowed");
+					return;
+				}
+				int k = parseK(exchange.getRequestURI());
+				if (k < 0) {
+					respondError(exchange, 400, "Invalid number of results");
+					return;
+				}
+				if (!server.permits.tryAcquire()) {
+					respondError(exchange, 503, "Too many concurrent requests");
+					return;
+				}
+				try {
+					byte[] body = server.readBody(exchange);
+					if (body == null) {
+						respondError(exchange, 413, "Request too large");
+						return;
+					}
+					String text = new String(body, utf8);
+					StringBuilder json = new StringBuilder();
+					// all texts of a request are detected with the same profiles
+					DetectionCache cache = server.cache;
+					Detector detector = cache != null ? null : server.detector;
+					if (this.batch) {
+						json.append('[');
+						String[] records = text.split("\r?\n", -1);
+						// a final line break does not start another record
+						int count = records.length > 0 && text.endsWith("\n") ? records.length - 1 : records.length;
+						for (int i = 0; i < count; i++) {
+							if (i > 0)
+								json.append(',');
+							detect(detector, cache, records[i], k, json);
+						}
+						json.append(']');
+						respond(exchange, 200, json.toString());
+					} else {
+						if (!detect(detector, cache, text, k, json))
+							respondError(exchange, 422, "Text does not contain any n-grams");
+						else
+							respond(exchange, 200, json.toString());
+					}
+				} finally {
+					server.permits.release();
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,277 @@
+package langdetect;
+
+/**
+ * This class detects the language of a text that is passed in chunks. The
+ * n-gram counts of the text are updated with every chunk, and every few
+ * characters, the current counts are scored against all language profiles.
+ * Once the best language is ahead of the second best by a margin above the
+ * threshold, the session is decided and does not consume further input. For
+ * long documents, only a prefix is processed then.
+ * <p>
+ * The margin is the difference of the out-of-place measures of the two best
+ * languages, relative to the largest possible measure for the current query
+ * (number of n-grams times the out-of-place measure of a missing n-gram). A
+ * session is not thread-safe.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class DetectionSession {
+
+	/**
+	 * Index of the language profiles
+	 */
+	private ProfileIndex index;
+	/**
+	 * Collector of the query n-grams
+	 */
+	private NGramCollector collector;
+	/**
+	 * Running n-gram counts of the query
+	 */
+	private Profile counts;
+	/**
+	 * Maximum number of n-grams of a query profile
+	 */
+	private int cutOff;
+	/**
+	 * Out-of-place measures of the last scoring
+	 */
+	private int[] distances;
+	/**
+	 * Margin required to stop early
+	 */
+	private double threshold = 0.05;
+	/**
+	 * Number of characters between scorings
+	 */
+	private int interval = 1000;
+	/**
+	 * Number of distinct n-grams required before stopping early
+	 */
+	private int minNGrams = Profile.cutOffPos;
+	/**
+	 * Number of consumed characters
+	 */
+	private long consumed;
+	/**
+	 * Number of characters consumed since the last scoring
+	 */
+	private int sinceScoring;
+	/**
+	 * Id of the best language of the last scoring, -1 if not scored
+	 */
+	private int best;
+	/**
+	 * Margin of the last scoring
+	 */
+	private double margin;
+	/**
+	 * Whether the margin was reached
+	 */
+	private boolean decided;
+
+	/**
+	 * Creates a session that scores against the languages of the index.
+	 * @param index
+	 *        Index of language profiles
+	 */
+	public DetectionSession(ProfileIndex index) {
+		this(index, 1, 5, Profile.cutOffPos);
+	}
+
+	/**
+	 * Creates a session that scores against the languages of the index with
+	 * the given settings.
+	 * @param index
+	 *        Index of language profiles
+	 * @param minLen
+	 *        Minimum length of n-grams
+	 * @param maxLen
+	 *        Maximum length of n-grams
+	 * @param cutOff
+	 *        Maximum number of n-grams of a query profile
+	 */
+	public DetectionSession(ProfileIndex index, int minLen, int maxLen, int cutOff) {
+		this.index = index;
+		this.collector = new NGramCollector(minLen, maxLen);
+		this.cutOff = cutOff;
+		this.minNGrams = cutOff;
+		this.distances = new int[index.size()];
+		this.reset();
+	}
+
+	/**
+	 * Sets the margin between the two best languages at which the session
+	 * stops consuming input.
+	 * @param threshold
+	 *        Relative margin, between 0 and 1
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Sets the number of characters after which the counts are scored again.
+	 * @param interval
+	 *        Number of characters
+	 */
+	public void setInterval(int interval) {
+		if (interval < 1)
+			throw new IllegalArgumentException("Interval must be positive");
+		this.interval = interval;
+	}
+
+	/**
+	 * Sets the number of distinct n-grams that have to be seen before the
+	 * session can stop early.
+	 * @param minNGrams
+	 *        Number of distinct n-grams
+	 */
+	public void setMinNGrams(int minNGrams) {
+		this.minNGrams = minNGrams;
+	}
+
+	/**
+	 * Discards the current text to start with a new one.
+	 */
+	public void reset() {
+		this.counts = new Profile("", true);
+		this.counts.setCutOff(this.cutOff);
+		this.collector.reset(this.counts);
+		this.consumed = 0;
+		this.sinceScoring = 0;
+		this.best = -1;
+		this.margin = 0;
+		this.decided = false;
+	}
+
+	/**
+	 * Processes the next chunk of text.
+	 * @param text
+	 *        Chunk
+	 * @return true, if more input is needed, false, if the session is decided
+	 */
+	public boolean add(CharSequence text) {
+		int pos = 0;
+		while (pos < text.length() && !this.decided) {
+			int len = Math.min(text.length() - pos, this.interval - this.sinceScoring);
+			this.collector.add(text, pos, pos + len);
+			pos += len;
+			this.consumed(len);
+		}
+		return !this.decided;
+	}
+
+	/**
+	 * Processes the next chunk of text given as a range of a character array.
+	 * @param buf
+	 *        Characters
+	 * @param off
+	 *        Start of the chunk
+	 * @param len
+	 *        Length of the chunk
+	 * @return true, if more input is needed, false, if the session is decided
+	 */
+	public boolean add(char[] buf, int off, int len) {
+		int end = off + len;
+		while (off < end && !this.decided) {
+			int n = Math.min(end - off, this.interval - this.sinceScoring);
+			this.collector.add(buf, off, n);
+			off += n;
+			this.consumed(n);
+		}
+		return !this.decided;
+	}
+
+	/**
+	 * Ends the text and scores the complete counts, unless the session is
+	 * already decided.
+	 * @return Best language profile
+	 * @throws IllegalStateException
+	 *         if the text does not contain any n-grams
+	 */
+	public Profile finish() throws IllegalStateException {
+		if (!this.decided) {
+			this.collector.flush();
+			this.score();
+		}
+		return this.index.getProfile(this.best);
+	}
+
+	/**
+	 * Returns whether the margin was reached and no further input is consumed.
+	 * @return true, if decided
+	 */
+	public boolean isDecided() {
+		return this.decided;
+	}
+
+	/**
+	 * Returns the number of consumed characters.
+	 * @return Number of characters
+	 */
+	public long getConsumed() {
+		return this.consumed;
+	}
+
+	/**
+	 * Returns the margin between the two best languages of the last scoring.
+	 * @return Relative margin
+	 */
+	public double getMargin() {
+		return this.margin;
+	}
+
+	/**
+	 * Returns the out-of-place measures of the last scoring.
+	 * @return out-of-place measure for each language id of the index
+	 */
+	public int[] getOutOfPlaceMeasures() {
+		return this.distances.clone();
+	}
+
+	/**
+	 * Updates the counters after consuming characters and scores, if the
+	 * interval is reached.
+	 */
+	private void consumed(int len) {
+		this.consumed += len;
+		this.sinceScoring += len;
+		if (this.sinceScoring >= this.interval) {
+			this.sinceScoring = 0;
+			if (this.counts.getNumberOfNGrams() > 0) {
+				this.score();
+				this.decided = this.counts.getNumberOfNGrams() >= this.minNGrams && this.margin > this.threshold;
+			}
+		}
+	}
+
+	/**
+	 * Scores the current counts and determines best language and margin.
+	 */
+	private void score() {
+
+		Profile query = this.counts.snapshot();
+		this.index.getOutOfPlaceMeasures(query, this.distances);
+
+		int first = -1;
+		int second = -1;
+		for (int langId = 0; langId < this.distances.length; langId++) {
+			if (first < 0 || this.distances[langId] < this.distances[first]) {
+				second = first;
+				first = langId;
+			} else if (second < 0 || this.distances[langId] < this.distances[second]) {
+				second = langId;
+			}
+		}
+		this.best = first;
+		if (second >= 0) {
+			int max = query.getNumberOfNGrams() * this.index.getMaxOoP();
+			this.margin = (double) (this.distances[second] - this.distances[first]) / max;
+		} else {
+			this.margin = 1;
+		}
+	}
+
+}
@@ -0,0 +1,387 @@
+package langdetect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class implements a thread-safe language detector. It is created once
+ * from a set of finalized language profiles and can then be used by any number
+ * of threads concurrently, without locking. A query takes its scratch state
+ * (n-gram collector, query profile and distance buffers) from a bounded pool
+ * and returns it afterwards, so that the state is reused by later queries of
+ * any thread, also if every query runs on a new thread. Only queries finding
+ * the pool empty create a new state, which is dropped afterwards if the pool
+ * is full. Optionally, the durations of all phases are recorded in
+ * {@link DetectorMetrics}.
+ * <p>
+ * The n-gram lengths, the cut-off of the query profiles and the out-of-place
+ * measure of missing n-grams are configured per detector. They should match
+ * the settings the language profiles were trained with.
+ * <p>
+ * Before scoring, the languages are restricted to the ones written in the
+ * script of the text (see {@link ScriptFilter}). The scripts are counted while
+ * the text is tokenized. If only some languages match, only these are scored,
+ * one at a time, and fewer than k results may be returned; if a single
+ * language matches, it is returned without comparing any other one.
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class Detector {
+
+	// number of idle scratch states kept by default
+	private static final int defaultPoolSize = 4 * Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Index of the language profiles
+	 */
+	private final ProfileIndex index;
+	/**
+	 * Minimum length of created n-grams
+	 */
+	private final int minLen;
+	/**
+	 * Maximum length of created n-grams
+	 */
+	private final int maxLen;
+	/**
+	 * Maximum number of n-grams of a query profile
+	 */
+	private final int cutOff;
+	/**
+	 * Candidate languages per script
+	 */
+	private final ScriptFilter filter;
+	/**
+	 * Metrics receiving the timings, null if disabled
+	 */
+	private final DetectorMetrics metrics;
+	/**
+	 * Idle scratch states of queries
+	 */
+	private volatile BlockingQueue<Scratch> pool = new ArrayBlockingQueue<Scratch>(defaultPoolSize);
+
+	/**
+	 * Creates a detector for the given language profiles and the default
+	 * n-gram lengths of the tokenizer.
+	 * @param profiles
+	 *        Finalized language profiles
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 */
+	public Detector(Collection<Profile> profiles) throws IllegalStateException {
+		this(profiles, 1, 5, null);
+	}
+
+	/**
+	 * Creates a detector for the given language profiles and the default
+	 * n-gram lengths of the tokenizer, which records its timings.
+	 * @param profiles
+	 *        Finalized language profiles
+	 * @param metrics
+	 *        Metrics receiving the timings, null to disable them
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 */
+	public Detector(Collection<Profile> profiles, DetectorMetrics metrics) throws IllegalStateException {
+		this(profiles, 1, 5, metrics);
+	}
+
+	/**
+	 * Creates a detector for the given language profiles.
+	 * @param profiles
+	 *        Finalized language profiles
+	 * @param minLen
+	 *        Minimum length of n-grams
+	 * @param maxLen
+	 *        Maximum length of n-grams
+	 * @param metrics
+	 *        Metrics receiving the timings, null to disable them
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 */
+	public Detector(Collection<Profile> profiles, int minLen, int maxLen, DetectorMetrics metrics)
+			throws IllegalStateException {
+		this(profiles, minLen, maxLen, Profile.cutOffPos, Profile.maxOoP, metrics);
+	}
+
+	/**
+	 * Creates a detector for the given language profiles and settings.
+	 * @param profiles
+	 *        Finalized language profiles
+	 * @param minLen
+	 *        Minimum length of n-grams
+	 * @param maxLen
+	 *        Maximum length of n-grams
+	 * @param cutOff
+	 *        Maximum number of n-grams of a query profile
+	 * @param maxOoP
+	 *        Out-of-place measure of n-grams missing in a language profile
+	 * @param metrics
+	 *        Metrics receiving the timings, null to disable them
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 * @throws IllegalArgumentException
+	 *         if one of the settings is invalid
+	 */
+	public Detector(Collection<Profile> profiles, int minLen, int maxLen, int cutOff, int maxOoP,
+			DetectorMetrics metrics) throws IllegalStateException, IllegalArgumentException {
+		if (minLen < 1 || maxLen < minLen || cutOff < 1)
+			throw new IllegalArgumentException("Invalid n-gram lengths or cut-off");
+		this.index = new ProfileIndex(profiles, maxOoP);
+		this.filter = new ScriptFilter(this.index);
+		this.minLen = minLen;
+		this.maxLen = maxLen;
+		this.cutOff = cutOff;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Returns the number of languages.
+	 * @return Number of language profiles
+	 */
+	public int getNumberOfLanguages() {
+		return this.index.size();
+	}
+
+	/**
+	 * Returns the minimum length of the n-grams of a query.
+	 * @return Number of characters
+	 */
+	public int getMinLength() {
+		return this.minLen;
+	}
+
+	/**
+	 * Returns the maximum length of the n-grams of a query.
+	 * @return Number of characters
+	 */
+	public int getMaxLength() {
+		return this.maxLen;
+	}
+
+	/**
+	 * Returns the maximum number of n-grams of a query profile.
+	 * @return Number of n-grams
+	 */
+	public int getCutOff() {
+		return this.cutOff;
+	}
+
+	/**
+	 * Returns the metrics receiving the timings.
+	 * @return Metrics, null if disabled
+	 */
+	public DetectorMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Sets the number of idle scratch states kept for later queries, which
+	 * should be the number of queries detected at the same time. States kept
+	 * so far are dropped.
+	 * @param size
+	 *        Number of scratch states
+	 * @throws IllegalArgumentException
+	 *         if the size is not positive
+	 */
+	public void setPoolSize(int size) throws IllegalArgumentException {
+		if (size < 1)
+			throw new IllegalArgumentException("Pool size must be positive");
+		this.pool = new ArrayBlockingQueue<Scratch>(size);
+	}
+
+	/**
+	 * Returns the number of idle scratch states.
+	 * @return Number of scratch states in the pool
+	 */
+	int getIdleScratchStates() {
+		return this.pool.size();
+	}
+
+	/**
+	 * Returns the index of the language profiles.
+	 * @return Index
+	 */
+	public ProfileIndex getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Detects the language of a text.
+	 * @param text
+	 *        Text
+	 * @return Closest language
+	 * @throws IllegalStateException
+	 *         if the text does not contain any n-grams
+	 */
+	public DetectionResult detect(CharSequence text) throws IllegalStateException {
+		return this.detectTopK(text, 1).get(0);
+	}
+
+	/**
+	 * Detects the k closest languages of a text.
+	 * @param text
+	 *        Text
+	 * @param k
+	 *        Number of languages
+	 * @return Closest languages, ordered by out-of-place measure, at most k
+	 * @throws IllegalStateException
+	 *         if the text does not contain any n-grams
+	 */
+	public List<DetectionResult> detectTopK(CharSequence text, int k) throws IllegalStateException {
+
+		if (k < 1)
+			throw new IllegalArgumentException("k must be positive");
+		BlockingQueue<Scratch> pool = this.pool;
+		Scratch s = pool.poll();
+		if (s == null)
+			s = new Scratch(this.minLen, this.maxLen, this.cutOff, this.index.size());
+		try {
+			int found = this.score(text, k, s);
+			List<DetectionResult> results = new ArrayList<DetectionResult>(found);
+			for (int i = 0; i < found; i++) {
+				int langId = s.best[i];
+				results.add(new DetectionResult(this.index.getProfile(langId), s.distances[langId]));
+			}
+			return results;
+		} finally {
+			// dropped if the pool is full
+			pool.offer(s);
+		}
+	}
+
+	/**
+	 * Returns the filter restricting the languages to the script of a text.
+	 * @return Script filter
+	 */
+	public ScriptFilter getScriptFilter() {
+		return this.filter;
+	}
+
+	/**
+	 * Creates a session to detect the language of a text passed in chunks.
+	 * Sessions are not thread-safe.
+	 * @return New session
+	 */
+	public DetectionSession newSession() {
+		return new DetectionSession(this.index, this.minLen, this.maxLen, this.cutOff);
+	}
+
+	/**
+	 * Creates a segmenter to split texts that switch between languages into
+	 * segments of a single language. Segmenters are not thread-safe.
+	 * @return New segmenter
+	 */
+	public Segmenter newSegmenter() {
+		return new Segmenter(this.index, this.minLen, this.maxLen, this.cutOff);
+	}
+
+	/**
+	 * Computes the query profile of the text in the given scratch state and
+	 * determines the closest languages.
+	 * @return Number of languages found
+	 */
+	private int score(CharSequence text, int k, Scratch s) {
+
+		DetectorMetrics metrics = this.metrics;
+		long start = metrics != null ? System.nanoTime() : 0;
+		s.query.reset();
+		s.collector.reset(s.query);
+		s.collector.add(text, 0, text.length());
+		s.collector.flush();
+		long tokenized = metrics != null ? System.nanoTime() : 0;
+		try {
+			s.query.setFinalized();
+		} catch (IllegalStateException e) {
+			if (metrics != null)
+				metrics.recordInvalid(start, System.nanoTime());
+			throw e;
+		}
+		long finalized = metrics != null ? System.nanoTime() : 0;
+		int size = s.query.getNumberOfNGrams();
+		if (s.ids.length < size) {
+			s.ids = new int[size];
+		}
+		this.index.getDictionary().resolve(s.query, s.ids);
+		int[] candidates = this.filter.getCandidates(s.scripts);
+		int languages = this.index.size();
+		if (candidates == null) {
+			this.index.getOutOfPlaceMeasures(s.ids, size, s.distances);
+		} else {
+			// only languages of the query's script, all others are never selected
+			Arrays.fill(s.distances, Integer.MAX_VALUE);
+			for (int langId : candidates) {
+				s.distances[langId] = this.index.getOutOfPlaceMeasure(s.ids, size, langId, Integer.MAX_VALUE);
+			}
+			languages = candidates.length;
+			k = Math.min(k, languages);
+		}
+		if (s.best.length < k) {
+			s.best = new int[k];
+		}
+		int found = selectBest(s.distances, this.index.size(), s.best, k);
+		if (metrics != null)
+			metrics.record(start, tokenized, finalized, System.nanoTime(), s.collector.getNGramCount(), languages);
+		return found;
+	}
+
+	/**
+	 * Determines the language ids with the smallest distances, ties are broken
+	 * by language id.
+	 * @param distances
+	 *        Distance per language id
+	 * @param size
+	 *        Number of languages
+	 * @param best
+	 *        Array receiving the best language ids
+	 * @param k
+	 *        Number of language ids to find, at most the length of best
+	 * @return Number of language ids found
+	 */
+	static int selectBest(int[] distances, int size, int[] best, int k) {
+		int found = 0;
+		for (int langId = 0; langId < size; langId++) {
+			int dist = distances[langId];
+			if (found == k && dist >= distances[best[found - 1]])
+				continue;
+			int i = found < k ? found++ : found - 1;
+			while (i > 0 && distances[best[i - 1]] > dist) {
+				best[i] = best[i - 1];
+				i--;
+			}
+			best[i] = langId;
+		}
+		return found;
+	}
+
+	/**
+	 * Scratch state of a query, reused by later queries
+	 */
+	private static class Scratch {
+		private ScriptHistogram scripts = new ScriptHistogram();
+		private NGramCollector collector;
+		private Profile query;
+		private int[] ids;
+		private int[] distances;
+		private int[] best = new int[3];
+
+		/**
+		 * Creates the scratch state for the settings of a detector.
+		 */
+		public Scratch(int minLen, int maxLen, int cutOff, int languages) {
+			// the collector counts the scripts of the letters
+			this.collector = new NGramCollector(minLen, maxLen);
+			this.collector.setScriptHistogram(this.scripts);
+			this.query = new Profile("", true);
+			this.query.setCutOff(cutOff);
+			this.ids = new int[cutOff];
+			this.distances = new int[languages];
+		}
+	}
+
+}
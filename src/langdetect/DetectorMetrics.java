@@ -0,0 +1,253 @@
+package langdetect;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class collects timings and counters of a {@link Detector}: the
+ * durations of the phases of a detection (collecting n-grams, finalizing the
+ * query profile and scoring it against all languages) in
+ * {@link LatencyHistogram}s, and the numbers of texts, invalid texts, n-grams
+ * and out-of-place measures. Texts answered from a {@link DetectionCache}
+ * are counted as queries and their durations are part of the durations of
+ * complete detections, but not of the single phases. The metrics can be
+ * registered as an MBean to be read through JMX.
+ * <p>
+ * A detector without metrics only checks for their absence, so instrumentation
+ * costs nothing when it is disabled. When it is enabled, it costs a few reads
+ * of the clock and striped increments per text.
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class DetectorMetrics implements DetectorMetricsMBean {
+
+	/**
+	 * Durations of collecting n-grams
+	 */
+	private final LatencyHistogram tokenize = new LatencyHistogram();
+	/**
+	 * Durations of finalizing query profiles
+	 */
+	private final LatencyHistogram finalize = new LatencyHistogram();
+	/**
+	 * Durations of scoring query profiles
+	 */
+	private final LatencyHistogram score = new LatencyHistogram();
+	/**
+	 * Durations of complete detections
+	 */
+	private final LatencyHistogram detect = new LatencyHistogram();
+	/**
+	 * Durations of texts answered from a cache, counting them
+	 */
+	private final LatencyHistogram cached = new LatencyHistogram();
+	/**
+	 * Durations of detections of invalid texts, counting them
+	 */
+	private final LatencyHistogram invalid = new LatencyHistogram();
+	/**
+	 * Numbers of n-grams per text, as counts and sum of a histogram
+	 */
+	private final LatencyHistogram nGrams = new LatencyHistogram();
+	/**
+	 * Numbers of languages per text
+	 */
+	private final LatencyHistogram comparisons = new LatencyHistogram();
+
+	/**
+	 * Records a detection.
+	 * @param start
+	 *        Time of the start in nanoseconds
+	 * @param tokenized
+	 *        Time after collecting the n-grams
+	 * @param finalized
+	 *        Time after finalizing the query profile
+	 * @param scored
+	 *        Time after scoring
+	 * @param nGrams
+	 *        Number of collected n-grams
+	 * @param languages
+	 *        Number of scored languages
+	 */
+	public void record(long start, long tokenized, long finalized, long scored, long nGrams, int languages) {
+		this.tokenize.record(tokenized - start);
+		this.finalize.record(finalized - tokenized);
+		this.score.record(scored - finalized);
+		this.detect.record(scored - start);
+		this.nGrams.record(nGrams);
+		this.comparisons.record(languages);
+	}
+
+	/**
+	 * Records a text without any n-grams.
+	 * @param start
+	 *        Time of the start in nanoseconds
+	 * @param end
+	 *        Time when the text was rejected
+	 */
+	public void recordInvalid(long start, long end) {
+		this.invalid.record(end - start);
+	}
+
+	/**
+	 * Records a text answered from a cache without detecting it.
+	 * @param start
+	 *        Time of the start in nanoseconds
+	 * @param end
+	 *        Time when the cached results were found
+	 */
+	public void recordCacheHit(long start, long end) {
+		this.cached.record(end - start);
+		this.detect.record(end - start);
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server.
+	 * @param name
+	 *        Object name, e.g. "langdetect:type=Detector"
+	 * @throws JMException
+	 *         if the name is invalid or already registered
+	 */
+	public void register(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(this, new ObjectName(name));
+	}
+
+	/**
+	 * Returns the histogram of the durations of collecting n-grams.
+	 * @return Histogram
+	 */
+	public LatencyHistogram getTokenizeHistogram() {
+		return this.tokenize;
+	}
+
+	/**
+	 * Returns the histogram of the durations of finalizing query profiles.
+	 * @return Histogram
+	 */
+	public LatencyHistogram getFinalizeHistogram() {
+		return this.finalize;
+	}
+
+	/**
+	 * Returns the histogram of the durations of scoring.
+	 * @return Histogram
+	 */
+	public LatencyHistogram getScoreHistogram() {
+		return this.score;
+	}
+
+	/**
+	 * Returns the histogram of the durations of complete detections.
+	 * @return Histogram
+	 */
+	public LatencyHistogram getDetectHistogram() {
+		return this.detect;
+	}
+
+	@Override
+	public long getQueries() {
+		return this.detect.getCount() + this.invalid.getCount();
+	}
+
+	@Override
+	public long getCachedQueries() {
+		return this.cached.getCount();
+	}
+
+	@Override
+	public long getInvalidQueries() {
+		return this.invalid.getCount();
+	}
+
+	@Override
+	public long getNGrams() {
+		return this.nGrams.getTotal();
+	}
+
+	@Override
+	public long getComparisons() {
+		return this.comparisons.getTotal();
+	}
+
+	@Override
+	public double getTokenizeMeanMicros() {
+		return this.tokenize.getMean() / 1000;
+	}
+
+	@Override
+	public double getTokenizeP99Micros() {
+		return this.tokenize.getPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getFinalizeMeanMicros() {
+		return this.finalize.getMean() / 1000;
+	}
+
+	@Override
+	public double getFinalizeP99Micros() {
+		return this.finalize.getPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getScoreMeanMicros() {
+		return this.score.getMean() / 1000;
+	}
+
+	@Override
+	public double getScoreP99Micros() {
+		return this.score.getPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getDetectMeanMicros() {
+		return this.detect.getMean() / 1000;
+	}
+
+	@Override
+	public double getDetectP50Micros() {
+		return this.detect.getPercentile(50) / 1000.0;
+	}
+
+	@Override
+	public double getDetectP99Micros() {
+		return this.detect.getPercentile(99) / 1000.0;
+	}
+
+	@Override
+	public double getDetectP999Micros() {
+		return this.detect.getPercentile(99.9) / 1000.0;
+	}
+
+	@Override
+	public void reset() {
+		this.tokenize.reset();
+		this.finalize.reset();
+		this.score.reset();
+		this.detect.reset();
+		this.cached.reset();
+		this.invalid.reset();
+		this.nGrams.reset();
+		this.comparisons.reset();
+	}
+
+	/**
+	 * Returns a textual summary of the metrics.
+	 * @return Text
+	 */
+	@Override
+	public String toString() {
+		return this.getQueries() + " queries (" + this.getCachedQueries() + " cached, " + this.getInvalidQueries()
+				+ " invalid), " + this.getNGrams()
+				+ " n-grams, mean " + Math.round(this.getDetectMeanMicros()) + " us (tokenize "
+				+ Math.round(this.getTokenizeMeanMicros()) + ", finalize " + Math.round(this.getFinalizeMeanMicros())
+				+ ", score " + Math.round(this.getScoreMeanMicros()) + "), p99 below "
+				+ Math.round(this.getDetectP99Micros()) + " us";
+	}
+
+}
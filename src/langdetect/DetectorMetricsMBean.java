@@ -0,0 +1,93 @@
+package langdetect;
+
+/**
+ * This interface defines the attributes and operations of
+ * {@link DetectorMetrics} exposed through JMX. Durations are given in
+ * microseconds.
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public interface DetectorMetricsMBean {
+
+	/**
+	 * @return Number of detected texts, including invalid and cached ones
+	 */
+	long getQueries();
+
+	/**
+	 * @return Number of texts answered from a cache, included in the queries
+	 */
+	long getCachedQueries();
+
+	/**
+	 * @return Number of texts without any n-grams
+	 */
+	long getInvalidQueries();
+
+	/**
+	 * @return Number of n-grams collected from all texts
+	 */
+	long getNGrams();
+
+	/**
+	 * @return Number of out-of-place measures computed
+	 */
+	long getComparisons();
+
+	/**
+	 * @return Mean duration of collecting the n-grams of a text
+	 */
+	double getTokenizeMeanMicros();
+
+	/**
+	 * @return 99th percentile of the duration of collecting the n-grams
+	 */
+	double getTokenizeP99Micros();
+
+	/**
+	 * @return Mean duration of finalizing the profile of a text
+	 */
+	double getFinalizeMeanMicros();
+
+	/**
+	 * @return 99th percentile of the duration of finalizing the profile
+	 */
+	double getFinalizeP99Micros();
+
+	/**
+	 * @return Mean duration of scoring a text against all languages
+	 */
+	double getScoreMeanMicros();
+
+	/**
+	 * @return 99th percentile of the duration of scoring a text
+	 */
+	double getScoreP99Micros();
+
+	/**
+	 * @return Mean duration of detecting a text, or answering it from a cache
+	 */
+	double getDetectMeanMicros();
+
+	/**
+	 * @return Median duration of detecting a text
+	 */
+	double getDetectP50Micros();
+
+	/**
+	 * @return 99th percentile of the duration of detecting a text
+	 */
+	double getDetectP99Micros();
+
+	/**
+	 * @return 99.9th percentile of the duration of detecting a text
+	 */
+	double getDetectP999Micros();
+
+	/**
+	 * Removes all recorded values.
+	 */
+	void reset();
+
+}
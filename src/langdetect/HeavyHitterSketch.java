@@ -0,0 +1,293 @@
+package langdetect;
+
+/**
+ * This class counts n-gram keys with a fixed number of counters, using the
+ * Space-Saving algorithm (Metwally et al.: Efficient Computation of Frequent
+ * and Top-k Elements in Data Streams). As long as there are free counters,
+ * counts are exact. Afterwards, a new key replaces the key with the smallest
+ * count, takes over its count and records it as its error. Memory therefore
+ * does not depend on the number of distinct n-grams, while frequent n-grams
+ * are counted almost exactly.
+ * <p>
+ * For every key, the estimated count is never smaller than the true count and
+ * exceeds it by at most the recorded error. Keys that are not monitored
+ * occurred at most {@link #getMinCount()} times.
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class HeavyHitterSketch {
+
+	/**
+	 * Monitored keys
+	 */
+	private long[] keys;
+	/**
+	 * Estimated counts of the keys
+	 */
+	private int[] counts;
+	/**
+	 * Maximum overestimation of the counts
+	 */
+	private int[] errors;
+	/**
+	 * Counters in a heap with the smallest count on top
+	 */
+	private int[] heap;
+	/**
+	 * Position of each counter in the heap
+	 */
+	private int[] heapPos;
+	/**
+	 * Counter of each monitored key
+	 */
+	private NGramTable index;
+	/**
+	 * Number of used counters
+	 */
+	private int size;
+	/**
+	 * Sum of all added counts
+	 */
+	private long total;
+
+	/**
+	 * Creates a sketch with the given number of counters.
+	 * @param capacity
+	 *        Number of counters
+	 * @throws IllegalArgumentException
+	 *         if the capacity is not positive
+	 */
+	public HeavyHitterSketch(int capacity) throws IllegalArgumentException {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.keys = new long[capacity];
+		this.counts = new int[capacity];
+		this.errors = new int[capacity];
+		this.heap = new int[capacity];
+		this.heapPos = new int[capacity];
+		this.index = new NGramTable(capacity);
+	}
+
+	/**
+	 * Returns the number of counters.
+	 * @return Number of counters
+	 */
+	public int getCapacity() {
+		return this.keys.length;
+	}
+
+	/**
+	 * Returns the number of monitored keys.
+	 * @return Number of keys
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the sum of all added counts.
+	 * @return Number of added n-grams
+	 */
+	public long getTotal() {
+		return this.total;
+	}
+
+	/**
+	 * Adds an occurrence of a key.
+	 * @param key
+	 *        n-gram key
+	 * @return Estimated count of the key
+	 */
+	public int add(long key) {
+		return this.add(key, 1);
+	}
+
+	/**
+	 * Adds occurrences of a key.
+	 * @param key
+	 *        n-gram key
+	 * @param delta
+	 *        Number of occurrences, positive
+	 * @return Estimated count of the key
+	 */
+	public int add(long key, int delta) {
+
+		int counter = this.index.get(key);
+		if (counter < 0 && this.size < this.keys.length) {
+			// free counter, added as a leaf of the heap
+			counter = this.size++;
+			this.keys[counter] = key;
+			this.counts[counter] = delta;
+			this.errors[counter] = 0;
+			this.heap[counter] = counter;
+			this.heapPos[counter] = counter;
+			this.index.put(key, counter);
+			this.siftUp(counter);
+		} else {
+			if (counter < 0) {
+				// replace the key with the smallest count
+				counter = this.heap[0];
+				this.index.remove(this.keys[counter]);
+				this.errors[counter] = this.counts[counter];
+				this.keys[counter] = key;
+				this.index.put(key, counter);
+			}
+			this.counts[counter] += delta;
+			this.siftDown(this.heapPos[counter]);
+		}
+		this.total += delta;
+		return this.counts[counter];
+	}
+
+	/**
+	 * Returns the estimated count of a key.
+	 * @param key
+	 *        n-gram key
+	 * @return Estimated count, 0 if the key is not monitored
+	 */
+	public int getCount(long key) {
+		int counter = this.index.get(key);
+		return counter >= 0 ? this.counts[counter] : 0;
+	}
+
+	/**
+	 * Returns the maximum overestimation of the count of a key.
+	 * @param key
+	 *        n-gram key
+	 * @return Error, {@link #getMinCount()} if the key is not monitored
+	 */
+	public int getError(long key) {
+		int counter = this.index.get(key);
+		return counter >= 0 ? this.errors[counter] : this.getMinCount();
+	}
+
+	/**
+	 * Returns the smallest count of a monitored key, once all counters are
+	 * used. No key that is not monitored occurred more often.
+	 * @return Smallest count, 0 if there are free counters
+	 */
+	public int getMinCount() {
+		return this.size < this.keys.length ? 0 : this.counts[this.heap[0]];
+	}
+
+	/**
+	 * Returns the key of a counter. Together with {@link #size()}, this allows
+	 * to iterate over all monitored keys.
+	 * @param counter
+	 *        Counter, less than the size
+	 * @return Key
+	 */
+	public long keyAt(int counter) {
+		return this.keys[counter];
+	}
+
+	/**
+	 * Returns the estimated count of a counter.
+	 * @param counter
+	 *        Counter, less than the size
+	 * @return Estimated count
+	 */
+	public int countAt(int counter) {
+		return this.counts[counter];
+	}
+
+	/**
+	 * Stores the estimated counts of all monitored keys in a table.
+	 * @return Table of counts
+	 */
+	public NGramTable toTable() {
+		NGramTable table = new NGramTable(this.size);
+		for (int counter = 0; counter < this.size; counter++) {
+			table.put(this.keys[counter], this.counts[counter]);
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the number of the k best keys that certainly belong to the k
+	 * most frequent ones: their guaranteed count (estimate minus error) is not
+	 * smaller than the estimated count of the next key.
+	 * @param k
+	 *        Number of keys
+	 * @return Number of guaranteed keys
+	 */
+	public int getGuaranteed(int k) {
+
+		long[] ranked = this.toTable().rank(k + 1);
+		if (ranked.length <= k)
+			return ranked.length;
+		int next = this.getCount(ranked[k]);
+		int guaranteed = 0;
+		for (int i = 0; i < k; i++) {
+			int counter = this.index.get(ranked[i]);
+			if (this.counts[counter] - this.errors[counter] >= next)
+				guaranteed++;
+		}
+		return guaranteed;
+	}
+
+	/**
+	 * Returns the largest error of the k best keys.
+	 * @param k
+	 *        Number of keys
+	 * @return Largest overestimation of their counts
+	 */
+	public int getMaxError(int k) {
+		int max = 0;
+		for (long key : this.toTable().rank(k)) {
+			max = Math.max(max, this.getError(key));
+		}
+		return max;
+	}
+
+	/**
+	 * Removes all keys.
+	 */
+	public void clear() {
+		this.index.clear();
+		this.size = 0;
+		this.total = 0;
+	}
+
+	/**
+	 * Restores the heap order for a new counter.
+	 */
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (this.counts[this.heap[parent]] <= this.counts[this.heap[i]])
+				return;
+			this.swap(i, parent);
+			i = parent;
+		}
+	}
+
+	/**
+	 * Restores the heap order for a counter whose count has grown.
+	 */
+	private void siftDown(int i) {
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < this.size && this.counts[this.heap[left]] < this.counts[this.heap[smallest]])
+				smallest = left;
+			if (right < this.size && this.counts[this.heap[right]] < this.counts[this.heap[smallest]])
+				smallest = right;
+			if (smallest == i)
+				return;
+			this.swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int counter = this.heap[i];
+		this.heap[i] = this.heap[j];
+		this.heap[j] = counter;
+		this.heapPos[this.heap[i]] = i;
+		this.heapPos[counter] = j;
+	}
+
+}
@@ -1,13 +1,25 @@
 package langdetect;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Scanner;
 
+import javax.management.JMException;
+
 /**
  * This class implements a language detector. It can identify the language of
  * inputs entered on the command line based on the comparison to n-gram
@@ -24,6 +36,14 @@ public class LangDetect {
 	 * Folder containing training texts for languages
 	 */
 	private static final String trainingFolder = "data/training";
+	/**
+	 * Number of best matches shown for a query
+	 */
+	private static final int numResults = 3;
+	/**
+	 * Maximum weight of cached results in bytes
+	 */
+	private static final long cacheWeight = 64L << 20;
 
 	/**
 	 * Tokenizer to create n-grams
@@ -32,7 +52,69 @@ public class LangDetect {
 	/**
 	 * Frequency profiles of known languages
 	 */
-	private Collection<Profile> langProfiles;
+	private volatile Collection<Profile> langProfiles;
+	/**
+	 * Detector for the language profiles
+	 */
+	private volatile Detector detector;
+	/**
+	 * Cache of results for repeated queries, null to detect every query
+	 */
+	private volatile DetectionCache cache;
+	/**
+	 * Maximum number of cached queries
+	 */
+	private int cacheEntries;
+	/**
+	 * Scorer finding only the best matches, null to score all profiles
+	 */
+	private volatile TopKScorer scorer;
+	/**
+	 * Scorer searching a tree of language clusters, null to score all
+	 * profiles
+	 */
+	private volatile ClusterScorer clusterScorer;
+	/**
+	 * Segmenter for queries switching languages, null to detect one language
+	 */
+	private volatile Segmenter segmenter;
+	/**
+	 * Training folder or compiled profile file
+	 */
+	private File source;
+	/**
+	 * Running HTTP server, null if not started
+	 */
+	private DetectionServer server;
+	/**
+	 * Whether training files are processed in parallel
+	 */
+	private boolean parallel;
+	/**
+	 * Number of counters of the sketch per training text, 0 to count exactly
+	 */
+	private int sketchCapacity;
+	/**
+	 * Encoding of the training texts
+	 */
+	private Charset charset;
+	/**
+	 * Minimum length of n-grams
+	 */
+	private int minLen;
+	/**
+	 * Maximum length of n-grams
+	 */
+	private int maxLen;
+	/**
+	 * Number of n-grams kept per profile, also the out-of-place measure of
+	 * missing n-grams unless a profile is larger
+	 */
+	private int cutOff;
+	/**
+	 * Stream for status messages
+	 */
+	private PrintStream log;
 	/**
 	 * Command line input
 	 */
@@ -40,23 +122,103 @@ public class LangDetect {
 
 	/**
 	 * Creates a new language detector that is initialized by reading the
-	 * provided training texts.
+	 * provided training texts. If the path denotes a file instead of a folder,
+	 * it is loaded as a compiled profile file (see {@link ProfileFile}).
 	 * @throws IllegalArgumentException
 	 *         if no valid training data path is found
 	 */
 	public LangDetect(String trainingFolder) throws IllegalArgumentException {
+		this(trainingFolder, false);
+	}
+
+	/**
+	 * Creates a new language detector that is initialized by reading the
+	 * provided training texts, optionally in parallel (see
+	 * {@link ParallelTrainer}).
+	 * @throws IllegalArgumentException
+	 *         if no valid training data path is found
+	 */
+	public LangDetect(String trainingFolder, boolean parallel) throws IllegalArgumentException {
+		this(trainingFolder, parallel, System.out);
+	}
 
-		this.tok = new Tokenizer();
+	/**
+	 * Creates a new language detector that is initialized by reading the
+	 * provided training texts, optionally in parallel, and prints status
+	 * messages to the given stream.
+	 * @throws IllegalArgumentException
+	 *         if no valid training data path is found
+	 */
+	public LangDetect(String trainingFolder, boolean parallel, PrintStream log) throws IllegalArgumentException {
+		this(trainingFolder, parallel, 0, log);
+	}
+
+	/**
+	 * Creates a new language detector that is initialized by reading the
+	 * provided training texts, optionally in parallel and with bounded memory
+	 * (see {@link HeavyHitterSketch}), and prints status messages to the given
+	 * stream.
+	 * @throws IllegalArgumentException
+	 *         if no valid training data path is found
+	 */
+	public LangDetect(String trainingFolder, boolean parallel, int sketchCapacity, PrintStream log)
+			throws IllegalArgumentException {
+		this(trainingFolder, parallel, sketchCapacity, Charset.defaultCharset(), log);
+	}
+
+	/**
+	 * Creates a new language detector that is initialized by reading the
+	 * provided training texts in the given charset, optionally in parallel and
+	 * with bounded memory (see {@link HeavyHitterSketch}), and prints status
+	 * messages to the given stream.
+	 * @throws IllegalArgumentException
+	 *         if no valid training data path is found
+	 */
+	public LangDetect(String trainingFolder, boolean parallel, int sketchCapacity, Charset charset, PrintStream log)
+			throws IllegalArgumentException {
+		this(trainingFolder, parallel, sketchCapacity, charset, 1, 5, Profile.cutOffPos, log);
+	}
+
+	/**
+	 * Creates a new language detector that is initialized by reading the
+	 * provided training texts in the given charset, with n-grams of the given
+	 * lengths and profiles cut off after the given number of n-grams, which
+	 * is also used as the out-of-place measure of missing n-grams. Training
+	 * is optionally parallel and with bounded memory (see
+	 * {@link HeavyHitterSketch}), and status messages are printed to the
+	 * given stream.
+	 * @throws IllegalArgumentException
+	 *         if no valid training data path is found or the settings are
+	 *         invalid
+	 */
+	public LangDetect(String trainingFolder, boolean parallel, int sketchCapacity, Charset charset, int minLen,
+			int maxLen, int cutOff, PrintStream log) throws IllegalArgumentException {
+
+		if (minLen < 1 || maxLen < minLen || cutOff < 1)
+			throw new IllegalArgumentException("Invalid n-gram lengths or cut-off");
+		this.tok = new Tokenizer(minLen, maxLen);
+		this.parallel = parallel;
+		this.charset = charset;
+		this.minLen = minLen;
+		this.maxLen = maxLen;
+		this.cutOff = cutOff;
+		this.sketchCapacity = sketchCapacity;
+		this.log = log;
 
 		File folder = new File(trainingFolder);
 		if (folder == null || !folder.exists())
 			throw new IllegalArgumentException("Invalid path to training data");
+		this.source = folder;
 
-		System.out.println("Initializing...");
-		String langIds = this.initProfiles(folder);
+		this.log.println("Initializing...");
+		String langIds = folder.isFile() ? this.loadProfiles(folder) : this.initProfiles(folder);
 		if (this.langProfiles.isEmpty())
 			throw new IllegalArgumentException("No training data found in specified path");
-		System.out.println("Available languages: " + langIds);
+		this.detector = this.createDetector(this.langProfiles, null);
+		this.log.println("Available languages: " + langIds);
+		if (this.sketchCapacity > 0) {
+			this.printSketchErrors();
+		}
 
 	}
 
@@ -64,22 +226,155 @@ public class LangDetect {
 	 * Instantiates a new language detector and starts a query session.
 	 * @param args
 	 *        as a parameter, a folder containing the training texts can be
-	 *        passed
+	 *        passed, the option -topk enables top-k scoring in query
+	 *        sessions (not with -batch, -server, -worker or -coordinator),
+	 *        -cluster followed by a beam width searches a tree of language
+	 *        clusters, -segment splits queries into segments of a single
+	 *        language, -watch reloads changed training texts or compiled
+	 *        profiles, -parallel
+	 *        enables parallel training, -charset followed by a name sets the
+	 *        encoding of the training texts, -ngrams followed by a range such
+	 *        as 1-5 sets the n-gram lengths, -cutoff followed by a number sets
+	 *        the n-grams kept per profile, -compile followed by a file name
+	 *        writes the profiles to a compiled file, -sketch followed by a
+	 *        number of counters trains with bounded memory, -cache followed
+	 *        by a number of entries caches results of repeated queries,
+	 *        -batch detects all lines of the standard input or the file given
+	 *        with -input using the number of threads given with -threads and
+	 *        -server followed by a port starts an HTTP server, with limits set
+	 *        by -concurrency and -maxrequest (bytes), -metrics records
+	 *        timings that are available through JMX, -partition followed by
+	 *        i/n keeps only every n-th profile starting with the i-th,
+	 *        -worker followed by a port serves the profiles to a coordinator
+	 *        and -coordinator followed by a comma-separated list of
+	 *        host:port addresses detects queries with these workers
 	 */
 	public static void main(String[] args) {
 
-		// get training folder
-		String trainingFolder = null;
-		if (args.length > 0) {
-			trainingFolder = args[0];
-		} else {
-			trainingFolder = LangDetect.trainingFolder;
+		// get training folder and options
+		String trainingFolder = LangDetect.trainingFolder;
+		boolean topK = false;
+		int beamWidth = 0;
+		boolean segment = false;
+		boolean watch = false;
+		boolean parallel = false;
+		Charset charset = Charset.defaultCharset();
+		int minLen = 1;
+		int maxLen = 5;
+		int cutOff = Profile.cutOffPos;
+		String compiledFile = null;
+		int sketchCapacity = 0;
+		int cacheEntries = 0;
+		boolean metrics = false;
+		boolean batch = false;
+		String inputFile = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int port = -1;
+		int concurrency = 1000;
+		int maxRequest = 1 << 20;
+		String partition = null;
+		int workerPort = -1;
+		String workers = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-topk")) {
+				topK = true;
+			} else if (args[i].equals("-cluster") && i + 1 < args.length) {
+				beamWidth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-segment")) {
+				segment = true;
+			} else if (args[i].equals("-watch")) {
+				watch = true;
+			} else if (args[i].equals("-parallel")) {
+				parallel = true;
+			} else if (args[i].equals("-charset") && i + 1 < args.length) {
+				charset = Charset.forName(args[++i]);
+			} else if (args[i].equals("-ngrams") && i + 1 < args.length) {
+				String[] range = args[++i].split("-");
+				minLen = Integer.parseInt(range[0]);
+				maxLen = Integer.parseInt(range[range.length - 1]);
+			} else if (args[i].equals("-cutoff") && i + 1 < args.length) {
+				cutOff = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-compile") && i + 1 < args.length) {
+				compiledFile = args[++i];
+			} else if (args[i].equals("-sketch") && i + 1 < args.length) {
+				sketchCapacity = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-cache") && i + 1 < args.length) {
+				cacheEntries = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-metrics")) {
+				metrics = true;
+			} else if (args[i].equals("-batch")) {
+				batch = true;
+			} else if (args[i].equals("-input") && i + 1 < args.length) {
+				inputFile = args[++i];
+			} else if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-server") && i + 1 < args.length) {
+				port = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-concurrency") && i + 1 < args.length) {
+				concurrency = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-maxrequest") && i + 1 < args.length) {
+				maxRequest = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-partition") && i + 1 < args.length) {
+				partition = args[++i];
+			} else if (args[i].equals("-worker") && i + 1 < args.length) {
+				workerPort = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-coordinator") && i + 1 < args.length) {
+				workers = args[++i];
+			} else {
+				trainingFolder = args[i];
+			}
 		}
 
 		// initialize
 		try {
-			LangDetect detector = new LangDetect(trainingFolder);
-			detector.startQuerySession();
+			// batch, server and worker detect with the shared detector only
+			if (topK && (batch || port >= 0 || workerPort >= 0 || workers != null))
+				throw new IllegalArgumentException("-topk only applies to interactive query sessions");
+			// the coordinator does not load any profiles
+			if (workers != null) {
+				startCoordinatorSession(workers, minLen, maxLen, cutOff);
+				return;
+			}
+			// in batch mode, keep the standard output for results
+			PrintStream log = batch ? System.err : System.out;
+			LangDetect detector = new LangDetect(trainingFolder, parallel, sketchCapacity, charset, minLen, maxLen,
+					cutOff, log);
+			if (partition != null) {
+				String[] part = partition.split("/");
+				detector.selectPartition(Integer.parseInt(part[0]), Integer.parseInt(part[part.length - 1]));
+			}
+			if (compiledFile != null) {
+				detector.compileProfiles(new File(compiledFile));
+				System.out.println("Profiles written to " + compiledFile);
+				return;
+			}
+			if (metrics) {
+				detector.enableMetrics();
+			}
+			if (cacheEntries > 0) {
+				detector.enableCache(cacheEntries);
+			}
+			if (watch && !batch && workerPort < 0) {
+				detector.startWatching();
+			}
+			if (workerPort >= 0) {
+				detector.startWorker(workerPort);
+			} else if (batch) {
+				detector.startBatch(inputFile, threads);
+			} else if (port >= 0) {
+				detector.startServer(port, concurrency, maxRequest);
+			} else {
+				if (topK) {
+					detector.enableTopKScoring();
+				}
+				if (beamWidth > 0) {
+					detector.enableClusterScoring(beamWidth);
+				}
+				if (segment) {
+					detector.enableSegmentation();
+				}
+				detector.startQuerySession();
+			}
 		} catch (Exception e) {
 			System.out.println("Error: " + e.getMessage());
 		}
@@ -94,11 +389,9 @@ public class LangDetect {
 		String query;
 		while ((query = this.getQuery()) != null) {
 
-			Profile queryProfile = new Profile("");
 			try {
 				// compute profile and find best match
-				this.tok.computeProfile(queryProfile, query);
-				this.findBestProfile(queryProfile);
+				this.findBestProfile(query);
 			} catch (IllegalStateException e) {
 				// if the query does not contain any n-grams
 				System.out.println("invalid query");
@@ -107,6 +400,398 @@ public class LangDetect {
 		}
 
 		this.input.close();
+		if (this.detector.getMetrics() != null) {
+			System.out.println("Metrics: " + this.detector.getMetrics());
+		}
+	}
+
+	/**
+	 * Detects the languages of all lines of a file or the standard input with
+	 * several threads and writes the results to the standard output (see
+	 * {@link BatchDetector}). Both are read and written as UTF-8.
+	 * @param inputFile
+	 *        File with one record per line, null for the standard input
+	 * @param threads
+	 *        Number of worker threads
+	 * @throws IOException
+	 *         if reading or writing fails
+	 */
+	public void startBatch(String inputFile, int threads) throws IOException {
+
+		Charset utf8 = Charset.forName("UTF-8");
+		InputStream in = inputFile != null ? new FileInputStream(inputFile) : System.in;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, utf8), 1 << 16);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, utf8), 1 << 16);
+		try {
+			BatchDetector batch = new BatchDetector(this.detector, threads, LangDetect.numResults);
+			batch.setCache(this.cache);
+			long records = batch.run(reader, writer);
+			this.log.println("Records processed: " + records);
+			if (this.cache != null) {
+				this.log.println("Cache: " + this.cache);
+			}
+			if (this.detector.getMetrics() != null) {
+				this.log.println("Metrics: " + this.detector.getMetrics());
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Starts an HTTP server for language detection (see
+	 * {@link DetectionServer}). The server keeps running after this method
+	 * returns.
+	 * @param port
+	 *        Port to listen on
+	 * @param concurrency
+	 *        Maximum number of requests detected at the same time
+	 * @param maxRequest
+	 *        Maximum size of a request in bytes
+	 * @return Running server
+	 * @throws IOException
+	 *         if the port cannot be bound
+	 */
+	public DetectionServer startServer(int port, int concurrency, int maxRequest) throws IOException {
+
+		DetectionServer server = new DetectionServer(this.detector, port);
+		server.setCache(this.cache);
+		server.setMaxConcurrency(concurrency);
+		server.setMaxRequestSize(maxRequest);
+		server.start();
+		this.server = server;
+		String threads = server.isVirtualThreads() ? "virtual threads" : "thread pool";
+		this.log.println("Listening on port " + server.getPort() + " (" + threads + ")");
+		return server;
+	}
+
+	/**
+	 * Serves the language profiles to a coordinator (see
+	 * {@link PartitionWorker}). The worker keeps running after this method
+	 * returns.
+	 * @param port
+	 *        Port to listen on, 0 for any free port
+	 * @return Running worker
+	 * @throws IOException
+	 *         if the port cannot be bound
+	 */
+	public PartitionWorker startWorker(int port) throws IOException {
+
+		int maxOoP = this.getMaxOoP(this.langProfiles);
+		PartitionWorker worker = new PartitionWorker(this.langProfiles, maxOoP, port);
+		worker.start();
+		this.log.println("Worker listening on port " + worker.getPort());
+		return worker;
+	}
+
+	/**
+	 * Starts a query session in the command line that detects the queries
+	 * with a partition worker per address (see {@link ScatterGatherDetector}).
+	 * @param workers
+	 *        Comma-separated addresses of the workers, as host:port
+	 * @param minLen
+	 *        Minimum length of n-grams
+	 * @param maxLen
+	 *        Maximum length of n-grams
+	 * @param cutOff
+	 *        Maximum number of n-grams of a query profile
+	 * @throws IOException
+	 *         if a worker cannot be reached or fails
+	 */
+	public static void startCoordinatorSession(String workers, int minLen, int maxLen, int cutOff)
+			throws IOException {
+
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for (String worker : workers.split(",")) {
+			int colon = worker.lastIndexOf(':');
+			if (colon < 0)
+				throw new IllegalArgumentException("Invalid worker address " + worker);
+			addresses.add(new InetSocketAddress(worker.substring(0, colon).trim(),
+					Integer.parseInt(worker.substring(colon + 1).trim())));
+		}
+		ScatterGatherDetector coordinator = new ScatterGatherDetector(addresses, minLen, maxLen, cutOff);
+		Scanner input = new Scanner(System.in);
+		try {
+			System.out.println("Languages of " + addresses.size() + " workers: "
+					+ coordinator.getNumberOfLanguages());
+			while (true) {
+				System.out.println(System.lineSeparator() + "Query: (or type 'exit')");
+				String query = input.nextLine();
+				if (query.equals("exit"))
+					break;
+				try {
+					List<DetectionResult> best = coordinator.detectTopK(query, numResults);
+					for (int i = 0; i < best.size(); i++) {
+						System.out.println(" " + (i + 1) + ". " + best.get(i));
+					}
+				} catch (IllegalStateException e) {
+					// if the query does not contain any n-grams
+					System.out.println("invalid query");
+				}
+			}
+		} finally {
+			input.close();
+			coordinator.close();
+		}
+	}
+
+	/**
+	 * Keeps only a partition of the language profiles, so that several worker
+	 * processes can share them (see {@link PartitionWorker}). The profiles are
+	 * numbered in the order of their training files' names, or in the order
+	 * of a compiled file, so every process assigns the same partitions.
+	 * @param part
+	 *        Number of the partition, starting at 0
+	 * @param parts
+	 *        Number of partitions, every n-th profile belongs to the same one
+	 * @return Profiles of the partition
+	 * @throws IllegalArgumentException
+	 *         if the partition is invalid or empty
+	 */
+	public List<Profile> selectPartition(int part, int parts) throws IllegalArgumentException {
+
+		if (parts < 1 || part < 0 || part >= parts)
+			throw new IllegalArgumentException("Invalid partition " + part + "/" + parts);
+		List<Profile> profiles = new ArrayList<Profile>();
+		int langId = 0;
+		for (Profile profile : this.langProfiles) {
+			if (langId++ % parts == part)
+				profiles.add(profile);
+		}
+		if (profiles.isEmpty())
+			throw new IllegalArgumentException("No profiles in partition " + part + "/" + parts);
+		this.langProfiles = profiles;
+		this.detector = this.createDetector(profiles, null);
+
+		String langIds = "";
+		for (Profile profile : profiles) {
+			langIds += (langIds.isEmpty() ? "" : ", ") + profile.getName();
+		}
+		this.log.println("Languages of partition " + part + "/" + parts + ": " + langIds);
+		return profiles;
+	}
+
+	/**
+	 * Switches to top-k scoring: instead of scoring all language profiles, only
+	 * the best matches are determined and the calculation of all other
+	 * out-of-place measures is stopped early.
+	 */
+	public void enableTopKScoring() {
+		int maxOoP = this.getMaxOoP(this.langProfiles);
+		this.scorer = new TopKScorer(this.langProfiles, LangDetect.numResults, maxOoP);
+	}
+
+	/**
+	 * Switches to scoring with a tree of language clusters: the query is
+	 * compared to the centroids of similar languages first, and only the
+	 * languages of the best clusters are scored (see {@link ClusterScorer}).
+	 * Every query is also scored against all languages, to report the recall
+	 * of the tree search.
+	 * @param beamWidth
+	 *        Number of clusters searched on each level
+	 */
+	public void enableClusterScoring(int beamWidth) {
+		int maxOoP = this.getMaxOoP(this.langProfiles);
+		ClusterScorer scorer = new ClusterScorer(this.langProfiles, LangDetect.numResults, 4, maxOoP);
+		scorer.setBeamWidth(beamWidth);
+		scorer.setVerify(true);
+		this.clusterScorer = scorer;
+		this.log.println("Language clusters: " + scorer);
+	}
+
+	/**
+	 * Splits queries that switch between languages into segments of a single
+	 * language instead of detecting one language (see {@link Segmenter}).
+	 */
+	public void enableSegmentation() {
+		this.segmenter = this.detector.newSegmenter();
+	}
+
+	/**
+	 * Records the timings of all phases of detection and registers them as
+	 * MBean "langdetect:type=Detector" (see {@link DetectorMetrics}). Has to
+	 * be enabled before the cache.
+	 * @return Metrics
+	 * @throws JMException
+	 *         if the MBean cannot be registered
+	 */
+	public DetectorMetrics enableMetrics() throws JMException {
+		DetectorMetrics metrics = new DetectorMetrics();
+		metrics.register("langdetect:type=Detector");
+		this.detector = this.createDetector(this.langProfiles, metrics);
+		return metrics;
+	}
+
+	/**
+	 * Watches the training folder or the compiled profile file and replaces
+	 * the profiles when files change, without interrupting queries (see
+	 * {@link ProfileWatcher}).
+	 * @return Watcher running in the background
+	 * @throws IOException
+	 *         if the folder cannot be watched
+	 */
+	public ProfileWatcher startWatching() throws IOException {
+		ProfileWatcher.Listener listener = new ProfileWatcher.Listener() {
+			@Override
+			public void profilesChanged(List<Profile> profiles) {
+				LangDetect.this.replaceProfiles(profiles);
+			}
+
+			@Override
+			public void reloadFailed(File file, Exception e) {
+				LangDetect.this.log.println("Reloading " + file + " failed: " + e.getMessage());
+			}
+		};
+		List<Profile> profiles = new ArrayList<Profile>(this.langProfiles);
+		ProfileWatcher watcher = new ProfileWatcher(this.source, this.charset, profiles, listener);
+		watcher.setTraining(this.minLen, this.maxLen, this.cutOff);
+		watcher.start();
+		this.log.println("Watching " + this.source + " for changes");
+		return watcher;
+	}
+
+	/**
+	 * Replaces the language profiles, creating a new detector and cache.
+	 * Queries that have already started finish with the old ones.
+	 * @param profiles
+	 *        Finalized profiles
+	 */
+	private void replaceProfiles(List<Profile> profiles) {
+
+		if (profiles.isEmpty()) {
+			this.log.println("Reloading failed: no profiles left");
+			return;
+		}
+		this.applySettings(ProfileFile.getSettings(profiles));
+		Detector detector = this.createDetector(profiles, this.detector.getMetrics());
+		DetectionCache cache = null;
+		if (this.cache != null)
+			cache = new DetectionCache(detector, LangDetect.numResults, this.cacheEntries, LangDetect.cacheWeight);
+
+		this.langProfiles = profiles;
+		this.detector = detector;
+		this.cache = cache;
+		if (this.scorer != null)
+			this.scorer = new TopKScorer(profiles, LangDetect.numResults, this.getMaxOoP(profiles));
+		if (this.clusterScorer != null)
+			this.enableClusterScoring(this.clusterScorer.getBeamWidth());
+		if (this.segmenter != null)
+			this.segmenter = detector.newSegmenter();
+		if (this.server != null)
+			this.server.setDetector(detector, cache);
+
+		String langIds = "";
+		for (Profile profile : profiles) {
+			langIds += (langIds.isEmpty() ? "" : ", ") + profile.getName();
+		}
+		this.log.println("Profiles reloaded, available languages: " + langIds);
+	}
+
+	/**
+	 * Creates a detector with the configured n-gram lengths and cut-off.
+	 */
+	private Detector createDetector(Collection<Profile> profiles, DetectorMetrics metrics) {
+		return new Detector(profiles, this.minLen, this.maxLen, this.cutOff, this.getMaxOoP(profiles), metrics);
+	}
+
+	/**
+	 * Returns the out-of-place measure of missing n-grams for the given
+	 * profiles: the cut-off, or the number of n-grams of the largest profile
+	 * if it is larger, so that a contained n-gram never scores worse than a
+	 * missing one.
+	 */
+	private int getMaxOoP(Collection<Profile> profiles) {
+		int maxOoP = this.cutOff;
+		for (Profile p : profiles) {
+			maxOoP = Math.max(maxOoP, p.getNumberOfNGrams());
+		}
+		return maxOoP;
+	}
+
+	/**
+	 * Adopts the n-gram lengths and cut-off stored in a compiled profile file,
+	 * so that queries are profiled like the loaded profiles.
+	 * @param settings
+	 *        Settings of the file, null to keep the configured ones
+	 */
+	private void applySettings(ProfileFile.Settings settings) {
+
+		if (settings == null)
+			return;
+		if (settings.getMinLength() != this.minLen || settings.getMaxLength() != this.maxLen
+				|| settings.getCutOff() != this.cutOff) {
+			this.log.println("Using the settings of the profile file: n-grams " + settings.getMinLength() + "-"
+					+ settings.getMaxLength() + ", cut-off " + settings.getCutOff());
+		}
+		this.minLen = settings.getMinLength();
+		this.maxLen = settings.getMaxLength();
+		this.cutOff = settings.getCutOff();
+		this.tok = new Tokenizer(this.minLen, this.maxLen);
+	}
+
+	/**
+	 * Caches the results of repeated queries, so that they are neither
+	 * tokenized nor scored again (see {@link DetectionCache}).
+	 * @param entries
+	 *        Maximum number of cached queries
+	 */
+	public void enableCache(int entries) {
+		this.cacheEntries = entries;
+		this.cache = new DetectionCache(this.detector, LangDetect.numResults, entries, LangDetect.cacheWeight);
+	}
+
+	/**
+	 * Writes the language profiles to a compiled profile file, together with
+	 * the n-gram lengths and cut-off, from which detectors can be started
+	 * without reading the training texts again.
+	 * @param file
+	 *        Target file
+	 * @throws IOException
+	 *         if the file cannot be written
+	 */
+	public void compileProfiles(File file) throws IOException {
+		ProfileFile.Settings settings = new ProfileFile.Settings(this.minLen, this.maxLen, this.cutOff);
+		ProfileFile.write(this.langProfiles, file, settings);
+	}
+
+	/**
+	 * Loads the language profiles from a compiled profile file and adopts the
+	 * settings stored with them.
+	 * @param file
+	 *        Compiled profile file
+	 * @return List of available profiles
+	 * @throws IllegalArgumentException
+	 *         if the file cannot be loaded
+	 */
+	private String loadProfiles(File file) throws IllegalArgumentException {
+
+		List<Profile> profiles;
+		try {
+			profiles = ProfileFile.read(file);
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Invalid profile file: " + e.getMessage());
+		}
+		this.applySettings(ProfileFile.getSettings(profiles));
+		this.langProfiles = profiles;
+
+		String langIds = "";
+		for (Profile profile : this.langProfiles) {
+			langIds += (langIds.isEmpty() ? "" : ", ") + profile.getName();
+		}
+		return langIds;
+	}
+
+	/**
+	 * Returns the files of the training folder sorted by name, so that the
+	 * language ids, and thus the partitions of the profiles, are the same in
+	 * every process.
+	 */
+	private static File[] listTrainingFiles(File folder) {
+		File[] files = folder.listFiles();
+		if (files == null)
+			return new File[0];
+		Arrays.sort(files);
+		return files;
 	}
 
 	/**
@@ -120,9 +805,13 @@ public class LangDetect {
 
 		this.langProfiles = new ArrayList<Profile>();
 		String langIds = "";
+		if (this.parallel)
+			return this.initProfilesParallel(folder);
 
 		// process each file in the folder
-		for (File file : folder.listFiles()) {
+		long start = System.nanoTime();
+		long read = 0;
+		for (File file : listTrainingFiles(folder)) {
 			if (file.isFile()) {
 
 				// derive name from file name
@@ -130,10 +819,15 @@ public class LangDetect {
 				langIds += langId + ", ";
 
 				// compute the profile
-				Profile profile = new Profile(langId);
+				Profile profile;
+				if (this.sketchCapacity > 0)
+					profile = new Profile(langId, new HeavyHitterSketch(this.sketchCapacity));
+				else
+					profile = new Profile(langId);
+				profile.setCutOff(this.cutOff);
 				try {
-					this.tok.computeProfile(profile, file);
-				} catch (FileNotFoundException e) {
+					read += this.tok.computeProfile(profile, file, this.charset);
+				} catch (IOException e) {
 					e.printStackTrace();
 				}
 				this.langProfiles.add(profile);
@@ -144,9 +838,63 @@ public class LangDetect {
 		if (langIds.length() > 2) {
 			langIds = langIds.substring(0, langIds.length() - 2);
 		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double mb = read / (1024.0 * 1024.0);
+		this.log.println("Training texts read: " + Math.round(mb * 10) / 10.0 + " MB ("
+				+ Math.round(mb / seconds * 10) / 10.0 + " MB/s, " + this.charset.name() + ")");
 		return langIds;
 	}
 
+	/**
+	 * Reads training texts from the given folder in parallel and calculates the
+	 * corresponding frequency profiles.
+	 * @param folder
+	 *        Folder with training texts
+	 * @return List of available profiles
+	 */
+	private String initProfilesParallel(File folder) {
+
+		List<File> files = new ArrayList<File>();
+		List<String> names = new ArrayList<String>();
+		String langIds = "";
+		for (File file : listTrainingFiles(folder)) {
+			if (file.isFile()) {
+				files.add(file);
+				names.add(file.getName().substring(0, 2));
+				langIds += (langIds.isEmpty() ? "" : ", ") + file.getName().substring(0, 2);
+			}
+		}
+
+		ParallelTrainer trainer = new ParallelTrainer(this.minLen, this.maxLen, this.charset);
+		trainer.setPacked(false);
+		trainer.setCutOff(this.cutOff);
+		trainer.setSketchCapacity(this.sketchCapacity);
+		try {
+			this.langProfiles = trainer.computeProfiles(files, names);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return langIds;
+	}
+
+	/**
+	 * Prints the error bounds of the profiles trained with a sketch: how many
+	 * of the ranked n-grams certainly belong to the most frequent ones and by
+	 * how much their counts may be overestimated.
+	 */
+	private void printSketchErrors() {
+
+		for (Profile profile : this.langProfiles) {
+			HeavyHitterSketch sketch = profile.getSketch();
+			if (sketch == null)
+				continue;
+			int ranked = profile.getNumberOfNGrams();
+			this.log.print(" " + profile.getName() + ": " + sketch.getGuaranteed(ranked) + " of " + ranked);
+			this.log.print(" n-grams guaranteed, counts overestimated by at most " + sketch.getMaxError(ranked));
+			this.log.println(" (" + sketch.getTotal() + " n-grams, " + sketch.getCapacity() + " counters)");
+		}
+	}
+
 	/**
 	 * Reads the next query string from the command line.
 	 * @return null, if the session was aborted typing "exit", otherwise, the
@@ -174,51 +922,119 @@ public class LangDetect {
 	/**
 	 * Calculates out-of-place measures with all language profiles and returns
 	 * the closest profile.
-	 * @param queryProfile
-	 *        Profile of query text
+	 * @param query
+	 *        Query text
 	 * @return Closest language profile
 	 */
-	private Profile findBestProfile(Profile queryProfile) {
+	private Profile findBestProfile(String query) {
 
-		// calculate distance for each language profile
-		java.util.List<ProfileDistance> distances = new LinkedList<ProfileDistance>();
-		for (Profile p : this.langProfiles) {
-			ProfileDistance dist = new ProfileDistance();
-			dist.profile = p;
-			dist.outOfPlace = queryProfile.getOutOfPlaceMeasure(p);
-			distances.add(dist);
+		if (this.segmenter != null) {
+			return this.printSegments(query);
+		}
+		if (this.scorer != null || this.clusterScorer != null) {
+			Profile queryProfile = new Profile("");
+			queryProfile.setCutOff(this.cutOff);
+			this.tok.computeProfile(queryProfile, query);
+			if (this.clusterScorer != null)
+				return this.findClusteredProfiles(queryProfile);
+			return this.findBestProfiles(queryProfile);
 		}
-
-		// sort by distance
-		Collections.sort(distances);
 
 		// print best matches
-		int max = this.langProfiles.size() < 3 ? this.langProfiles.size() : 3;
-		for (int i = 0; i < max; i++) {
-			ProfileDistance dist = distances.get(i);
-			System.out.print(" " + (i + 1) + ". ");
-			System.out.print(dist.profile.getName() + " (");
-			System.out.println(dist.outOfPlace + ")");
+		List<DetectionResult> best;
+		DetectionCache cache = this.cache;
+		if (cache != null)
+			best = cache.detectTopK(query, numResults);
+		else
+			best = this.detector.detectTopK(query, numResults);
+		for (int i = 0; i < best.size(); i++) {
+			this.printMatch(i, best.get(i).getProfile(), best.get(i).getOutOfPlaceMeasure());
 		}
 
-		return distances.get(0).profile;
+		return best.get(0).getProfile();
+	}
+
+	/**
+	 * Splits the query into segments of a single language, prints them and
+	 * returns the language of the first one.
+	 * @param query
+	 *        Query text
+	 * @return Language profile of the first segment
+	 */
+	private Profile printSegments(String query) {
+
+		List<Segment> segments = this.segmenter.segment(query);
+		if (segments.isEmpty())
+			throw new IllegalStateException("No n-grams in query");
+		for (Segment segment : segments) {
+			System.out.println(" " + segment.getName() + ": " + query.substring(segment.getStart(), segment.getEnd()));
+		}
+		return segments.get(0).getProfile();
 	}
 
 	/**
-	 * This class is a simple data structure that represents a profile together
-	 * with its out-of-place measure to another profile.
-	 * 
-	 * @author Tobias Falke
-	 * 
+	 * Determines only the closest language profiles with the top-k scorer and
+	 * returns the closest profile.
+	 * @param queryProfile
+	 *        Profile of query text
+	 * @return Closest language profile
 	 */
-	private class ProfileDistance implements Comparable<ProfileDistance> {
+	private Profile findBestProfiles(Profile queryProfile) {
 
-		public Profile profile;
-		public int outOfPlace;
+		Profile[] best = new Profile[numResults];
+		int[] outOfPlace = new int[numResults];
+		long pruned = this.scorer.getPrunedComparisons();
+		int found = this.scorer.score(queryProfile, best, outOfPlace);
 
-		@Override
-		public int compareTo(ProfileDistance o) {
-			return this.outOfPlace - o.outOfPlace;
+		// print best matches and savings
+		for (int i = 0; i < found; i++) {
+			this.printMatch(i, best[i], outOfPlace[i]);
 		}
+		pruned = this.scorer.getPrunedComparisons() - pruned;
+		System.out.println(" (" + pruned + " of " + this.langProfiles.size() + " comparisons pruned)");
+
+		return best[0];
+	}
+
+	/**
+	 * Determines the closest language profiles with the cluster scorer and
+	 * returns the closest profile.
+	 * @param queryProfile
+	 *        Profile of query text
+	 * @return Closest language profile
+	 */
+	private Profile findClusteredProfiles(Profile queryProfile) {
+
+		ClusterScorer scorer = this.clusterScorer;
+		Profile[] best = new Profile[numResults];
+		int[] outOfPlace = new int[numResults];
+		long comparisons = scorer.getComparisons();
+		int found = scorer.score(queryProfile, best, outOfPlace);
+
+		// print best matches, comparisons and recall
+		for (int i = 0; i < found; i++) {
+			this.printMatch(i, best[i], outOfPlace[i]);
+		}
+		comparisons = scorer.getComparisons() - comparisons;
+		System.out.println(" (" + comparisons + " comparisons for " + this.langProfiles.size()
+				+ " languages, recall against exhaustive search " + Math.round(scorer.getRecall() * 1000) / 10.0
+				+ "% over " + scorer.getQueries() + " queries)");
+
+		return best[0];
+	}
+
+	/**
+	 * Prints a match to the command line.
+	 * @param rank
+	 *        Rank of the match, starting at 0
+	 * @param profile
+	 *        Matching profile
+	 * @param outOfPlace
+	 *        Out-of-place measure
+	 */
+	private void printMatch(int rank, Profile profile, int outOfPlace) {
+		System.out.print(" " + (rank + 1) + ". ");
+		System.out.print(profile.getName() + " (");
+		System.out.println(outOfPlace + ")");
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,140 @@
+package langdetect;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class records durations in a histogram with one bucket per power of
+ * two nanoseconds, so that recording is a single increment and the memory is
+ * fixed. Percentiles are reported as the upper bound of their bucket, at most
+ * twice the exact value.
+ * <p>
+ * The histogram can be updated by many threads concurrently. To avoid that
+ * they contend for the same counters, the counters are striped: each thread
+ * updates one of several copies, chosen by its id, which are summed when the
+ * histogram is read.
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class LatencyHistogram {
+
+	// number of buckets, bucket i holds durations below 2^i nanoseconds
+	private static final int buckets = 64;
+	// number of counters per stripe: buckets, count and sum, padded against
+	// false sharing with the next stripe
+	private static final int stride = buckets + 2 + 8;
+
+	/**
+	 * Counters of all stripes
+	 */
+	private final AtomicLongArray counters;
+	/**
+	 * Number of stripes minus one
+	 */
+	private final int mask;
+
+	/**
+	 * Creates an empty histogram with one stripe per available processor.
+	 */
+	public LatencyHistogram() {
+		int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+		this.counters = new AtomicLongArray(stripes * stride);
+		this.mask = stripes - 1;
+	}
+
+	/**
+	 * Records a duration.
+	 * @param nanos
+	 *        Duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		int base = ((int) Thread.currentThread().getId() & this.mask) * stride;
+		int bucket = nanos > 0 ? 64 - Long.numberOfLeadingZeros(nanos) : 0;
+		this.counters.incrementAndGet(base + Math.min(bucket, buckets - 1));
+		this.counters.incrementAndGet(base + buckets);
+		this.counters.addAndGet(base + buckets + 1, nanos);
+	}
+
+	/**
+	 * Returns the number of recorded durations.
+	 * @return Number of durations
+	 */
+	public long getCount() {
+		return this.sum(buckets);
+	}
+
+	/**
+	 * Returns the sum of the recorded durations.
+	 * @return Total duration in nanoseconds
+	 */
+	public long getTotal() {
+		return this.sum(buckets + 1);
+	}
+
+	/**
+	 * Returns the mean of the recorded durations.
+	 * @return Mean duration in nanoseconds, 0 if nothing was recorded
+	 */
+	public double getMean() {
+		long count = this.getCount();
+		return count > 0 ? (double) this.getTotal() / count : 0;
+	}
+
+	/**
+	 * Returns the number of recorded durations per bucket.
+	 * @return Counts, the count at index i is the number of durations of at
+	 *         least 2^(i-1) and less than 2^i nanoseconds
+	 */
+	public long[] getBuckets() {
+		long[] counts = new long[buckets];
+		for (int bucket = 0; bucket < buckets; bucket++) {
+			counts[bucket] = this.sum(bucket);
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns an upper bound of a percentile of the recorded durations.
+	 * @param percentile
+	 *        Percentile, between 0 and 100
+	 * @return Upper bound of the bucket containing the percentile in
+	 *         nanoseconds, 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = this.getBuckets();
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long seen = 0;
+		for (int bucket = 0; bucket < buckets; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank && seen > 0)
+				return bucket < buckets - 1 ? 1L << bucket : Long.MAX_VALUE;
+		}
+		return 0;
+	}
+
+	/**
+	 * Removes all recorded durations. Durations recorded at the same time may
+	 * be partially lost.
+	 */
+	public void reset() {
+		for (int i = 0; i < this.counters.length(); i++) {
+			this.counters.set(i, 0);
+		}
+	}
+
+	/**
+	 * Sums a counter over all stripes.
+	 */
+	private long sum(int counter) {
+		long sum = 0;
+		for (int stripe = 0; stripe <= this.mask; stripe++) {
+			sum += this.counters.get(stripe * stride + counter);
+		}
+		return sum;
+	}
+
+}
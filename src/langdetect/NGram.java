@@ -66,6 +66,16 @@ public class NGram implements Comparable<NGram> {
 		return ++this.count;
 	}
 
+	/**
+	 * Increments the number of occurrences by the given number.
+	 * @param count
+	 *        Additional occurrences
+	 * @return New number of occurrences
+	 */
+	public int incCount(int count) {
+		return this.count += count;
+	}
+
 	/**
 	 * Returns the position in the frequency profile.
 	 * @return Position
@@ -0,0 +1,319 @@
+package langdetect;
+
+import java.util.Locale;
+
+/**
+ * This class collects the n-grams of a text that is passed in one or more
+ * chunks of characters. It walks over the code points directly instead of
+ * using a scanner and regular expressions: every maximal run of letters forms
+ * a token, which is lower-cased through a lookup table, padded and split into
+ * n-grams that are added to a profile without creating strings. The resulting
+ * profile is the same as the one created by the scanner-based tokenizer.
+ * <p>
+ * A collector keeps the state of the current token between chunks and is not
+ * thread-safe. It can be reused for several texts by calling
+ * {@link #reset(Profile)}. With {@link #reset(Profile, boolean)}, it removes
+ * the n-grams of a text from a profile instead, which undoes collecting them.
+ * Optionally, the letters are also counted per script in a
+ * {@link ScriptHistogram}.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class NGramCollector {
+
+	// space character for token padding
+	private static final char pad = ' ';
+	// lower-case mapping of all characters of the basic multilingual plane
+	private static final char[] lowerCase = new char[Character.MAX_VALUE + 1];
+
+	static {
+		for (int c = 0; c <= Character.MAX_VALUE; c++) {
+			lowerCase[c] = (char) Character.toLowerCase(c);
+		}
+	}
+
+	/**
+	 * Minimum length of created n-grams
+	 */
+	private final int minLen;
+	/**
+	 * Maximum length of created n-grams
+	 */
+	private final int maxLen;
+	/**
+	 * Profile receiving the n-grams
+	 */
+	private Profile profile;
+	/**
+	 * Whether the n-grams are removed from the profile instead of added
+	 */
+	private boolean remove;
+	/**
+	 * Histogram receiving the scripts of the letters, null if not counted
+	 */
+	private ScriptHistogram scripts;
+	/**
+	 * Characters of the current token
+	 */
+	private char[] token;
+	/**
+	 * Length of the current token
+	 */
+	private int tokenLen;
+	/**
+	 * Padded and lower-cased token
+	 */
+	private char[] padded;
+	/**
+	 * High surrogate at the end of the last chunk, 0 if none
+	 */
+	private char highSurrogate;
+	/**
+	 * Whether the current token needs context-dependent lower-casing
+	 */
+	private boolean special;
+	/**
+	 * Whether lower-casing depends on the default locale
+	 */
+	private boolean localeDependent;
+	/**
+	 * Number of tokens passed to the profile since the last reset
+	 */
+	private int tokenCount;
+	/**
+	 * Number of n-grams passed to the profile since the last reset
+	 */
+	private long nGramCount;
+
+	/**
+	 * Creates a collector for n-grams of the given lengths.
+	 * @param minLen
+	 *        Minimum length of n-grams
+	 * @param maxLen
+	 *        Maximum length of n-grams
+	 */
+	public NGramCollector(int minLen, int maxLen) {
+		this.minLen = minLen;
+		this.maxLen = maxLen;
+		this.token = new char[32];
+		this.padded = new char[34];
+	}
+
+	/**
+	 * Prepares the collector for a new text.
+	 * @param profile
+	 *        Profile receiving the n-grams
+	 */
+	public void reset(Profile profile) {
+		this.reset(profile, false);
+	}
+
+	/**
+	 * Prepares the collector for a new text, whose n-grams are either added to
+	 * the profile or removed from it.
+	 * @param profile
+	 *        Profile receiving the n-grams
+	 * @param remove
+	 *        true, to remove the n-grams from the profile (see
+	 *        {@link Profile#removeNGram(char[], int, int)})
+	 */
+	public void reset(Profile profile, boolean remove) {
+		this.profile = profile;
+		this.remove = remove;
+		this.tokenLen = 0;
+		this.tokenCount = 0;
+		this.nGramCount = 0;
+		this.highSurrogate = 0;
+		this.special = false;
+		if (this.scripts != null)
+			this.scripts.reset();
+		// these languages have their own lower-case rules (see String)
+		String lang = Locale.getDefault().getLanguage();
+		this.localeDependent = lang.equals("tr") || lang.equals("az") || lang.equals("lt");
+	}
+
+	/**
+	 * Sets a histogram that counts the letters per script. It is reset
+	 * together with the collector.
+	 * @param scripts
+	 *        Histogram, null to stop counting
+	 */
+	public void setScriptHistogram(ScriptHistogram scripts) {
+		this.scripts = scripts;
+	}
+
+	/**
+	 * Returns the number of tokens passed to the profile since the last reset.
+	 * @return Number of tokens
+	 */
+	public int getTokenCount() {
+		return this.tokenCount;
+	}
+
+	/**
+	 * Returns the number of n-grams passed to the profile since the last
+	 * reset, counting every occurrence.
+	 * @return Number of n-grams
+	 */
+	public long getNGramCount() {
+		return this.nGramCount;
+	}
+
+	/**
+	 * Processes a chunk of text given as a character array.
+	 * @param buf
+	 *        Characters
+	 * @param off
+	 *        Start of the chunk
+	 * @param len
+	 *        Length of the chunk
+	 */
+	public void add(char[] buf, int off, int len) {
+		for (int i = off; i < off + len; i++) {
+			this.add(buf[i]);
+		}
+	}
+
+	/**
+	 * Processes a chunk of text given as a character sequence.
+	 * @param text
+	 *        Characters
+	 * @param start
+	 *        Start of the chunk
+	 * @param end
+	 *        End of the chunk (exclusive)
+	 */
+	public void add(CharSequence text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			this.add(text.charAt(i));
+		}
+	}
+
+	/**
+	 * Ends the current token, which has to be called after the last chunk.
+	 */
+	public void flush() {
+		this.highSurrogate = 0;
+		this.endToken();
+	}
+
+	/**
+	 * Processes a single character.
+	 */
+	private void add(char c) {
+
+		// complete a code point split into surrogates
+		if (this.highSurrogate != 0) {
+			char high = this.highSurrogate;
+			this.highSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				int cp = Character.toCodePoint(high, c);
+				if (Character.isLetter(cp)) {
+					if (this.scripts != null)
+						this.scripts.add(cp);
+					this.append(high);
+					this.append(c);
+				} else {
+					this.endToken();
+				}
+				return;
+			}
+			// unpaired surrogate -> no letter
+			this.endToken();
+		}
+		if (Character.isHighSurrogate(c)) {
+			this.highSurrogate = c;
+			return;
+		}
+
+		// every non-letter delimits a token
+		if (Character.isLetter(c)) {
+			// final sigma and dotted capital I depend on their context
+			if (c == '\u03A3' || c == '\u0130')
+				this.special = true;
+			if (this.scripts != null)
+				this.scripts.add(c);
+			this.append(c);
+		} else {
+			this.endToken();
+		}
+	}
+
+	private void append(char c) {
+		if (this.tokenLen == this.token.length) {
+			char[] grown = new char[this.token.length * 2];
+			System.arraycopy(this.token, 0, grown, 0, this.tokenLen);
+			this.token = grown;
+		}
+		this.token[this.tokenLen++] = c;
+	}
+
+	/**
+	 * Lower-cases and pads the current token and adds all its n-grams to the
+	 * profile.
+	 */
+	private void endToken() {
+
+		if (this.tokenLen == 0)
+			return;
+		int len = this.lowerCaseToken();
+		this.tokenLen = 0;
+		this.special = false;
+		this.tokenCount++;
+
+		// for each length n within the limits
+		for (int n = this.minLen; n <= this.maxLen && n <= len; n++) {
+			// create all n-grams of the token
+			for (int pos = 0; pos + n <= len; pos++) {
+				// padding alone is no n-gram (all other characters are letters)
+				if (n == 1 && this.padded[pos] <= pad)
+					continue;
+				if (this.remove)
+					this.profile.removeNGram(this.padded, pos, n);
+				else
+					this.profile.addNGram(this.padded, pos, n);
+				this.nGramCount++;
+			}
+		}
+	}
+
+	/**
+	 * Writes the lower-cased token with padding to the padded buffer.
+	 * @return Length of the padded token
+	 */
+	private int lowerCaseToken() {
+
+		if (this.special || this.localeDependent) {
+			// rare case: use the string implementation
+			String lower = new String(this.token, 0, this.tokenLen).toLowerCase();
+			this.ensurePadded(lower.length() + 2);
+			lower.getChars(0, lower.length(), this.padded, 1);
+			this.padded[0] = pad;
+			this.padded[lower.length() + 1] = pad;
+			return lower.length() + 2;
+		}
+
+		this.ensurePadded(this.tokenLen + 2);
+		this.padded[0] = pad;
+		int len = 1;
+		for (int i = 0; i < this.tokenLen; i++) {
+			char c = this.token[i];
+			if (Character.isHighSurrogate(c) && i + 1 < this.tokenLen) {
+				int cp = Character.toLowerCase(Character.toCodePoint(c, this.token[++i]));
+				len += Character.toChars(cp, this.padded, len);
+			} else {
+				this.padded[len++] = lowerCase[c];
+			}
+		}
+		this.padded[len++] = pad;
+		return len;
+	}
+
+	private void ensurePadded(int len) {
+		if (this.padded.length < len) {
+			this.padded = new char[Math.max(len, this.padded.length * 2)];
+		}
+	}
+
+}
@@ -0,0 +1,204 @@
+package langdetect;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * This class implements an immutable dictionary of the n-grams of a set of
+ * finalized profiles. Each n-gram of the union of the profiles gets a dense
+ * int id, in ascending order of the n-gram keys, so that per-n-gram data of
+ * all profiles can be stored in plain arrays indexed by id.
+ * <p>
+ * A query is resolved to ids once, by a single lookup per n-gram. Query
+ * n-grams without an id do not occur in any of the profiles and count as
+ * {@link Profile#maxOoP} for all of them without further lookups.
+ * <p>
+ * A dictionary stored in a compiled profile file (see {@link ProfileFile})
+ * reads its keys and its table directly from the mapped buffer.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class NGramDictionary {
+
+	/**
+	 * n-gram keys by id (heap backend only)
+	 */
+	private long[] keys;
+	/**
+	 * Id of each n-gram key (heap backend only)
+	 */
+	private NGramTable ids;
+	/**
+	 * Buffer of a compiled profile file (mapped backend only)
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * Offset of the sorted keys in the buffer, followed by the table of keys
+	 * and ids (mapped backend only)
+	 */
+	private int bufferOffset;
+	/**
+	 * Number of n-grams in the buffer (mapped backend only)
+	 */
+	private int bufferSize;
+	/**
+	 * Number of table slots in the buffer minus one (mapped backend only)
+	 */
+	private int bufferMask;
+
+	/**
+	 * Creates a dictionary over the n-grams of the given profiles.
+	 * @param profiles
+	 *        Finalized profiles
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 */
+	public NGramDictionary(Collection<Profile> profiles) throws IllegalStateException {
+
+		NGramTable union = new NGramTable();
+		for (Profile p : profiles) {
+			if (!p.isFinalized())
+				throw new IllegalStateException("Profile is not yet finalized");
+			for (int pos = 0; pos < p.getNumberOfNGrams(); pos++) {
+				union.put(p.getKey(pos), 0);
+			}
+		}
+
+		// ids in key order do not depend on the order of the profiles
+		this.keys = new long[union.size()];
+		int id = 0;
+		for (int slot = 0; slot < union.capacity(); slot++) {
+			if (union.keyAt(slot) != 0) {
+				this.keys[id++] = union.keyAt(slot);
+			}
+		}
+		Arrays.sort(this.keys);
+		this.ids = new NGramTable(this.keys.length);
+		for (id = 0; id < this.keys.length; id++) {
+			this.ids.put(this.keys[id], id);
+		}
+	}
+
+	/**
+	 * Creates a dictionary that reads its n-grams from a buffer in the format
+	 * of {@link ProfileFile}.
+	 * @param buffer
+	 *        Buffer of a compiled profile file
+	 * @param offset
+	 *        Offset of the sorted keys
+	 * @param size
+	 *        Number of n-grams
+	 * @param slots
+	 *        Number of table slots, a power of two
+	 */
+	NGramDictionary(ByteBuffer buffer, int offset, int size, int slots) {
+		this.buffer = buffer;
+		this.bufferOffset = offset;
+		this.bufferSize = size;
+		this.bufferMask = slots - 1;
+	}
+
+	/**
+	 * Returns the number of n-grams.
+	 * @return Number of ids
+	 */
+	public int size() {
+		if (this.isMapped())
+			return this.bufferSize;
+		return this.keys.length;
+	}
+
+	/**
+	 * Returns whether the dictionary reads its n-grams from a compiled file.
+	 * @return true, if the dictionary was loaded from a compiled file
+	 */
+	public boolean isMapped() {
+		return this.buffer != null;
+	}
+
+	/**
+	 * Returns the id of an n-gram.
+	 * @param key
+	 *        n-gram key
+	 * @return Id, or -1 if the n-gram is not in the dictionary
+	 */
+	public int getId(long key) {
+		if (!this.isMapped())
+			return this.ids.get(key);
+		int keys = this.bufferOffset + 8 * this.bufferSize;
+		int ids = keys + 8 * (this.bufferMask + 1);
+		int slot = NGramTable.slot(key, this.bufferMask);
+		long k;
+		while ((k = this.buffer.getLong(keys + 8 * slot)) != 0) {
+			if (k == key)
+				return this.buffer.getInt(ids + 4 * slot);
+			slot = (slot + 1) & this.bufferMask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the n-gram of an id.
+	 * @param id
+	 *        Id
+	 * @return n-gram key
+	 */
+	public long getKey(int id) {
+		if (this.isMapped())
+			return this.buffer.getLong(this.bufferOffset + 8 * id);
+		return this.keys[id];
+	}
+
+	/**
+	 * Resolves the n-grams of a finalized profile to ids.
+	 * @param profile
+	 *        Finalized profile
+	 * @param ids
+	 *        Array receiving the id of the n-gram at each position, or -1 if
+	 *        it is not in the dictionary, at least as long as the profile
+	 * @return Number of n-grams of the profile
+	 * @throws IllegalStateException
+	 *         if the profile is not yet finalized
+	 */
+	public int resolve(Profile profile, int[] ids) throws IllegalStateException {
+		if (!profile.isFinalized())
+			throw new IllegalStateException("Profile is not yet finalized");
+		int size = profile.getNumberOfNGrams();
+		for (int pos = 0; pos < size; pos++) {
+			ids[pos] = this.getId(profile.getKey(pos));
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the positions of all n-grams of the dictionary in a finalized
+	 * profile.
+	 * @param profile
+	 *        Finalized profile with at most 32768 n-grams
+	 * @return Position of each id, -1 if the n-gram is not in the profile
+	 * @throws IllegalStateException
+	 *         if the profile is not yet finalized
+	 * @throws IllegalArgumentException
+	 *         if the profile contains n-grams that are not in the dictionary
+	 *         or too many n-grams
+	 */
+	public short[] getPositions(Profile profile) throws IllegalStateException, IllegalArgumentException {
+
+		if (!profile.isFinalized())
+			throw new IllegalStateException("Profile is not yet finalized");
+		if (profile.getNumberOfNGrams() > Short.MAX_VALUE + 1)
+			throw new IllegalArgumentException("Too many n-grams in profile " + profile.getName());
+		short[] positions = new short[this.size()];
+		Arrays.fill(positions, (short) -1);
+		for (int pos = 0; pos < profile.getNumberOfNGrams(); pos++) {
+			int id = this.getId(profile.getKey(pos));
+			if (id < 0)
+				throw new IllegalArgumentException("Profile " + profile.getName() + " is not in the dictionary");
+			positions[id] = (short) pos;
+		}
+		return positions;
+	}
+
+}
@@ -0,0 +1,156 @@
+package langdetect;
+
+/**
+ * This class packs n-grams into primitive long keys. N-grams of up to five
+ * characters whose characters all lie below U+1000 (which covers padding,
+ * Latin, Greek, Cyrillic, Arabic, Hebrew and most Indic scripts) are encoded
+ * exactly: 12 bits per character, most significant character first, followed
+ * by three bits for the length. For such keys, the numeric order equals the
+ * lexicographic order of the n-grams. All other n-grams are mapped to a 64-bit
+ * hash with the sign bit set. Valid keys are never 0.
+ *
+ * @author Tobias Falke
+ *
+ */
+public final class NGramKey {
+
+	/**
+	 * Maximum length of n-grams that are encoded exactly
+	 */
+	public static final int maxExactLen = 5;
+
+	// bits per character and length field of exact keys
+	private static final int charBits = 12;
+	private static final int lenBits = 3;
+	// characters from this value on cannot be encoded exactly
+	private static final int charLimit = 1 << charBits;
+	// marks hashed keys
+	private static final long hashFlag = Long.MIN_VALUE;
+	// FNV-1a parameters
+	private static final long fnvOffset = 0xcbf29ce484222325L;
+	private static final long fnvPrime = 0x100000001b3L;
+
+	private NGramKey() {
+	}
+
+	/**
+	 * Returns the key of the given n-gram.
+	 * @param ngram
+	 *        n-gram
+	 * @return Key
+	 * @throws IllegalArgumentException
+	 *         if no non-empty string is given
+	 */
+	public static long of(CharSequence ngram) throws IllegalArgumentException {
+		if (ngram == null || ngram.length() == 0)
+			throw new IllegalArgumentException("Gram must be specified");
+		int len = ngram.length();
+		if (len <= maxExactLen) {
+			long key = 0;
+			for (int i = 0; i < len; i++) {
+				char c = ngram.charAt(i);
+				if (c >= charLimit)
+					return hash(ngram);
+				key |= (long) c << shift(i);
+			}
+			return key | len;
+		}
+		return hash(ngram);
+	}
+
+	/**
+	 * Returns the key of the n-gram given as a range of a character array.
+	 * @param buf
+	 *        Characters
+	 * @param off
+	 *        Start of the n-gram
+	 * @param len
+	 *        Length of the n-gram
+	 * @return Key
+	 * @throws IllegalArgumentException
+	 *         if the range is empty
+	 */
+	public static long of(char[] buf, int off, int len) throws IllegalArgumentException {
+		if (len <= 0)
+			throw new IllegalArgumentException("Gram must be specified");
+		if (len <= maxExactLen) {
+			long key = 0;
+			for (int i = 0; i < len; i++) {
+				char c = buf[off + i];
+				if (c >= charLimit)
+					return hash(buf, off, len);
+				key |= (long) c << shift(i);
+			}
+			return key | len;
+		}
+		return hash(buf, off, len);
+	}
+
+	/**
+	 * Checks whether a key encodes its n-gram exactly.
+	 * @param key
+	 *        Key
+	 * @return true, if the n-gram can be restored from the key, false, if the
+	 *         key is a hash
+	 */
+	public static boolean isExact(long key) {
+		return key > 0;
+	}
+
+	/**
+	 * Restores the n-gram of an exact key.
+	 * @param key
+	 *        Exact key
+	 * @return n-gram
+	 * @throws IllegalArgumentException
+	 *         if the key is not exact
+	 */
+	public static String toGram(long key) throws IllegalArgumentException {
+		if (!isExact(key))
+			throw new IllegalArgumentException("Key is not exact");
+		int len = (int) (key & ((1 << lenBits) - 1));
+		char[] gram = new char[len];
+		for (int i = 0; i < len; i++) {
+			gram[i] = (char) ((key >>> shift(i)) & (charLimit - 1));
+		}
+		return new String(gram);
+	}
+
+	/**
+	 * Returns a textual representation of a key, which is the n-gram for exact
+	 * keys and the hash value otherwise.
+	 * @param key
+	 *        Key
+	 * @return Text
+	 */
+	public static String toString(long key) {
+		if (isExact(key))
+			return toGram(key);
+		else
+			return "#" + Long.toHexString(key & ~hashFlag);
+	}
+
+	/**
+	 * Returns the bit offset of the i-th character of an exact key.
+	 */
+	private static int shift(int i) {
+		return lenBits + (maxExactLen - 1 - i) * charBits;
+	}
+
+	private static long hash(CharSequence ngram) {
+		long h = fnvOffset;
+		for (int i = 0; i < ngram.length(); i++) {
+			h = (h ^ ngram.charAt(i)) * fnvPrime;
+		}
+		return hashFlag | h;
+	}
+
+	private static long hash(char[] buf, int off, int len) {
+		long h = fnvOffset;
+		for (int i = off; i < off + len; i++) {
+			h = (h ^ buf[i]) * fnvPrime;
+		}
+		return hashFlag | h;
+	}
+
+}
@@ -0,0 +1,353 @@
+package langdetect;
+
+import java.util.Arrays;
+
+/**
+ * This class implements an open-addressing hash map from n-gram keys (see
+ * {@link NGramKey}) to int values. It is used to store counts or positions of
+ * n-grams without creating objects per n-gram. Collisions are resolved by
+ * linear probing, the key 0 marks empty slots. Removed keys do not leave
+ * markers behind: the following keys of the probe sequence are shifted back
+ * instead, so that lookups stay short after many removals.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class NGramTable {
+
+	// maximum ratio of used slots before the table grows
+	private static final float loadFactor = 0.5f;
+	// multiplier used to spread keys over the slots
+	private static final long mix = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * Keys, 0 for empty slots
+	 */
+	private long[] keys;
+	/**
+	 * Values corresponding to the keys
+	 */
+	private int[] values;
+	/**
+	 * Number of stored keys
+	 */
+	private int size;
+	/**
+	 * Number of stored keys at which the table grows
+	 */
+	private int growAt;
+
+	/**
+	 * Creates an empty table with a small initial capacity.
+	 */
+	public NGramTable() {
+		this(16);
+	}
+
+	/**
+	 * Creates an empty table that can hold the given number of keys without
+	 * growing.
+	 * @param expected
+	 *        Expected number of keys
+	 */
+	public NGramTable(int expected) {
+		int capacity = 8;
+		while (capacity * loadFactor < expected) {
+			capacity <<= 1;
+		}
+		this.allocate(capacity);
+	}
+
+	/**
+	 * Returns the number of stored keys.
+	 * @return Number of keys
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the value of a key.
+	 * @param key
+	 *        n-gram key
+	 * @return Value, or -1 if the key is not present
+	 */
+	public int get(long key) {
+		int mask = this.keys.length - 1;
+		int slot = slot(key, mask);
+		long k;
+		while ((k = this.keys[slot]) != 0) {
+			if (k == key)
+				return this.values[slot];
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Increments the value of a key by one, a new key starts at 0.
+	 * @param key
+	 *        n-gram key
+	 * @return New value
+	 */
+	public int increment(long key) {
+		return this.add(key, 1);
+	}
+
+	/**
+	 * Adds a delta to the value of a key, a new key starts at 0.
+	 * @param key
+	 *        n-gram key
+	 * @param delta
+	 *        Value to add
+	 * @return New value
+	 */
+	public int add(long key, int delta) {
+		int slot = this.find(key);
+		if (this.keys[slot] == 0) {
+			this.insert(slot, key, delta);
+			return delta;
+		}
+		return this.values[slot] += delta;
+	}
+
+	/**
+	 * Sets the value of a key.
+	 * @param key
+	 *        n-gram key
+	 * @param value
+	 *        Value
+	 */
+	public void put(long key, int value) {
+		int slot = this.find(key);
+		if (this.keys[slot] == 0)
+			this.insert(slot, key, value);
+		else
+			this.values[slot] = value;
+	}
+
+	/**
+	 * Removes a key.
+	 * @param key
+	 *        n-gram key
+	 * @return Value of the removed key, or -1 if the key is not present
+	 */
+	public int remove(long key) {
+
+		int mask = this.keys.length - 1;
+		int slot = slot(key, mask);
+		long k;
+		while ((k = this.keys[slot]) != key) {
+			if (k == 0)
+				return -1;
+			slot = (slot + 1) & mask;
+		}
+		int value = this.values[slot];
+
+		// move following keys into the hole, if it is on their probe sequence
+		int hole = slot;
+		int next = (slot + 1) & mask;
+		while ((k = this.keys[next]) != 0) {
+			int home = slot(k, mask);
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				this.keys[hole] = k;
+				this.values[hole] = this.values[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		this.keys[hole] = 0;
+		this.size--;
+		return value;
+	}
+
+	/**
+	 * Removes all keys, keeping the capacity.
+	 */
+	public void clear() {
+		Arrays.fill(this.keys, 0);
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the number of slots. Together with {@link #keyAt(int)} and
+	 * {@link #valueAt(int)}, this allows to iterate over all entries.
+	 * @return Number of slots
+	 */
+	public int capacity() {
+		return this.keys.length;
+	}
+
+	/**
+	 * Returns the key stored in a slot.
+	 * @param slot
+	 *        Slot
+	 * @return Key, or 0 if the slot is empty
+	 */
+	public long keyAt(int slot) {
+		return this.keys[slot];
+	}
+
+	/**
+	 * Returns the value stored in a slot.
+	 * @param slot
+	 *        Slot
+	 * @return Value
+	 */
+	public int valueAt(int slot) {
+		return this.values[slot];
+	}
+
+	/**
+	 * Returns up to limit keys in descending order of their values. Keys with
+	 * equal values are ordered ascending, so that the ranking does not depend
+	 * on the layout of the table.
+	 * @param limit
+	 *        Maximum number of keys
+	 * @return Ranked keys
+	 */
+	public long[] rank(int limit) {
+		int n = Math.min(limit, this.size);
+		long[] ranked = new long[n];
+		this.rank(n, ranked, new int[n]);
+		return ranked;
+	}
+
+	/**
+	 * Writes up to limit keys in descending order of their values to the given
+	 * array, using a buffer of at least limit entries instead of allocating
+	 * one. Keys with equal values are ordered ascending.
+	 * @param limit
+	 *        Maximum number of keys
+	 * @param ranked
+	 *        Array receiving the ranked keys
+	 * @param heap
+	 *        Buffer
+	 * @return Number of ranked keys
+	 */
+	public int rank(int limit, long[] ranked, int[] heap) {
+
+		// keep the best slots in a heap with the worst one on top
+		int max = Math.min(limit, this.size);
+		int heapSize = 0;
+		for (int slot = 0; slot < this.keys.length; slot++) {
+			if (this.keys[slot] != 0) {
+				if (heapSize < max) {
+					heap[heapSize] = slot;
+					this.siftUp(heap, heapSize++);
+				} else if (heapSize > 0 && this.isBetter(slot, heap[0])) {
+					heap[0] = slot;
+					this.siftDown(heap, 0, heapSize);
+				}
+			}
+		}
+
+		// take the worst one off the heap until it is empty
+		int count = heapSize;
+		for (int i = heapSize - 1; i >= 0; i--) {
+			ranked[i] = this.keys[heap[0]];
+			heap[0] = heap[i];
+			this.siftDown(heap, 0, i);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the slot of a key or the empty slot where it has to be inserted.
+	 */
+	private int find(long key) {
+		int mask = this.keys.length - 1;
+		int slot = slot(key, mask);
+		long k;
+		while ((k = this.keys[slot]) != 0 && k != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void insert(int slot, long key, int value) {
+		if (key == 0)
+			throw new IllegalArgumentException("Invalid key");
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		if (++this.size > this.growAt) {
+			this.grow();
+		}
+	}
+
+	private void grow() {
+		long[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		this.allocate(oldKeys.length << 1);
+		int mask = this.keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = slot(oldKeys[i], mask);
+				while (this.keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.growAt = (int) (capacity * loadFactor);
+	}
+
+	/**
+	 * Returns the first slot to probe for a key.
+	 * @param key
+	 *        n-gram key
+	 * @param mask
+	 *        Number of slots minus one
+	 * @return Slot
+	 */
+	static int slot(long key, int mask) {
+		return (int) ((key * mix) >>> 32) & mask;
+	}
+
+	/**
+	 * Checks whether the entry in slot a ranks before the entry in slot b.
+	 */
+	private boolean isBetter(int a, int b) {
+		int diff = this.values[a] - this.values[b];
+		return diff > 0 || (diff == 0 && this.keys[a] < this.keys[b]);
+	}
+
+	private void siftUp(int[] heap, int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!this.isBetter(heap[parent], heap[i]))
+				break;
+			swap(heap, i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int[] heap, int i, int heapSize) {
+		while (true) {
+			int worst = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < heapSize && this.isBetter(heap[worst], heap[left]))
+				worst = left;
+			if (right < heapSize && this.isBetter(heap[worst], heap[right]))
+				worst = right;
+			if (worst == i)
+				return;
+			swap(heap, i, worst);
+			i = worst;
+		}
+	}
+
+	private static void swap(int[] heap, int i, int j) {
+		int tmp = heap[i];
+		heap[i] = heap[j];
+		heap[j] = tmp;
+	}
+
+}
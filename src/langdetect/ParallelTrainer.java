@@ -0,0 +1,359 @@
+package langdetect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class computes the profiles of training files in parallel with a
+ * fork-join pool. All files are processed concurrently, and large files are
+ * split at token boundaries into chunks that are counted independently. The
+ * counts of the chunks are combined before the profile is finalized, so the
+ * profiles are the same as the ones computed sequentially by a streaming
+ * {@link Tokenizer} with the same charset.
+ * <p>
+ * Files are only split if the charset encodes ASCII characters as single
+ * bytes that cannot be part of other characters (such as UTF-8 or ISO-8859-1).
+ * Then, every ASCII byte that is not a letter is a token boundary. Files
+ * counted with a {@link HeavyHitterSketch} are never split, as the estimated
+ * counts of separate chunks cannot be combined without losing accuracy.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class ParallelTrainer {
+
+	/**
+	 * Minimum length of created n-grams
+	 */
+	private int minLen;
+	/**
+	 * Maximum length of created n-grams
+	 */
+	private int maxLen;
+	/**
+	 * Encoding of the training files
+	 */
+	private Charset charset;
+	/**
+	 * Whether files can be split at ASCII bytes
+	 */
+	private boolean splittable;
+	/**
+	 * Whether the profiles use the packed backend
+	 */
+	private boolean packed = true;
+	/**
+	 * Number of counters of the sketch per file, 0 to count exactly
+	 */
+	private int sketchCapacity;
+	/**
+	 * Number of bytes up to which a chunk is counted without splitting
+	 */
+	private int chunkSize = 1 << 22;
+	/**
+	 * Number of n-grams kept per profile
+	 */
+	private int cutOff = Profile.cutOffPos;
+	/**
+	 * Number of worker threads
+	 */
+	private int parallelism;
+	/**
+	 * Decoder of each worker thread
+	 */
+	private final ThreadLocal<ChannelDecoder> decoder = new ThreadLocal<ChannelDecoder>() {
+		@Override
+		protected ChannelDecoder initialValue() {
+			return new ChannelDecoder(ParallelTrainer.this.charset, 1 << 16);
+		}
+	};
+
+	/**
+	 * Creates a trainer for n-grams of the given lengths that uses all
+	 * available processors.
+	 * @param minLen
+	 *        Minimum length of n-grams
+	 * @param maxLen
+	 *        Maximum length of n-grams
+	 * @param charset
+	 *        Encoding of the training files
+	 */
+	public ParallelTrainer(int minLen, int maxLen, Charset charset) {
+		this.minLen = minLen;
+		this.maxLen = maxLen;
+		this.charset = charset;
+		this.splittable = isSplittable(charset);
+		this.parallelism = Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Sets the number of bytes up to which a chunk of a file is counted
+	 * without splitting it further.
+	 * @param chunkSize
+	 *        Number of bytes
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("Chunk size must be positive");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Sets the backend of the computed profiles.
+	 * @param packed
+	 *        true, to compute packed profiles (default)
+	 */
+	public void setPacked(boolean packed) {
+		this.packed = packed;
+	}
+
+	/**
+	 * Sets the number of counters per file, to count the n-grams of each file
+	 * in a {@link HeavyHitterSketch} with bounded memory.
+	 * @param sketchCapacity
+	 *        Number of counters, 0 to count exactly (default)
+	 */
+	public void setSketchCapacity(int sketchCapacity) {
+		if (sketchCapacity < 0)
+			throw new IllegalArgumentException("Capacity must not be negative");
+		this.sketchCapacity = sketchCapacity;
+	}
+
+	/**
+	 * Sets the number of n-grams kept in each profile.
+	 * @param cutOff
+	 *        Number of n-grams, {@link Profile#cutOffPos} by default
+	 */
+	public void setCutOff(int cutOff) {
+		if (cutOff < 1)
+			throw new IllegalArgumentException("Cut-off must be positive");
+		this.cutOff = cutOff;
+	}
+
+	/**
+	 * Sets the number of worker threads.
+	 * @param parallelism
+	 *        Number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Computes the finalized profiles of the given files in parallel.
+	 * @param files
+	 *        Training files
+	 * @param names
+	 *        Profile names, one per file
+	 * @return Finalized profiles in the order of the files
+	 * @throws IOException
+	 *         if one of the files cannot be read
+	 * @throws IllegalStateException
+	 *         if one of the files does not contain any n-grams
+	 */
+	public List<Profile> computeProfiles(List<File> files, List<String> names) throws IOException,
+			IllegalStateException {
+
+		if (files.size() != names.size())
+			throw new IllegalArgumentException("One name per file required");
+
+		ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+		try {
+			// start all files at once
+			List<FileTask> tasks = new ArrayList<FileTask>();
+			for (int i = 0; i < files.size(); i++) {
+				FileTask task = new FileTask(files.get(i), names.get(i));
+				tasks.add(task);
+				pool.execute(task);
+			}
+
+			List<Profile> profiles = new ArrayList<Profile>();
+			for (FileTask task : tasks) {
+				profiles.add(task.join());
+			}
+			return profiles;
+		} catch (TrainingException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Computes the finalized profile of a single file, splitting it into
+	 * chunks that are counted in parallel.
+	 * @param file
+	 *        Training file
+	 * @param name
+	 *        Profile name
+	 * @return Finalized profile
+	 * @throws IOException
+	 *         if the file cannot be read
+	 * @throws IllegalStateException
+	 *         if the file does not contain any n-grams
+	 */
+	public Profile computeProfile(File file, String name) throws IOException, IllegalStateException {
+		List<File> files = new ArrayList<File>();
+		files.add(file);
+		List<String> names = new ArrayList<String>();
+		names.add(name);
+		return this.computeProfiles(files, names).get(0);
+	}
+
+	/**
+	 * Checks whether ASCII characters are encoded as single bytes by the
+	 * charset and these bytes cannot appear within other characters.
+	 */
+	private static boolean isSplittable(Charset charset) {
+		if (!charset.canEncode())
+			return false;
+		boolean singleByte = charset.newEncoder().maxBytesPerChar() == 1.0f;
+		if (!singleByte && !charset.name().equals("UTF-8"))
+			return false;
+		String ascii = " az\n.";
+		return new String(ascii.getBytes(Charset.forName("US-ASCII")), charset).equals(ascii);
+	}
+
+	/**
+	 * Counts the n-grams of a byte range of a file.
+	 */
+	private Profile count(FileChannel channel, long start, long end, String name) throws IOException {
+
+		Profile profile;
+		if (this.sketchCapacity > 0)
+			profile = new Profile(name, new HeavyHitterSketch(this.sketchCapacity));
+		else
+			profile = new Profile(name, this.packed);
+		NGramCollector collector = new NGramCollector(this.minLen, this.maxLen);
+		collector.reset(profile);
+		this.decoder.get().decode(channel, start, end, collector);
+		collector.flush();
+		return profile;
+	}
+
+	/**
+	 * Returns the first token boundary at or after the given position: the
+	 * position after an ASCII byte that is not a letter.
+	 * @return Boundary, or end if there is none
+	 */
+	private static long findBoundary(FileChannel channel, long pos, long end) throws IOException {
+		ByteBuffer window = ByteBuffer.allocate(4096);
+		while (pos < end) {
+			window.clear();
+			window.limit((int) Math.min(window.capacity(), end - pos));
+			int read = channel.read(window, pos);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++) {
+				int b = window.get(i);
+				if (b >= 0 && !Character.isLetter(b))
+					return pos + i + 1;
+			}
+			pos += read;
+		}
+		return end;
+	}
+
+	/**
+	 * Task computing the profile of a file.
+	 */
+	private class FileTask extends RecursiveTask<Profile> {
+
+		private static final long serialVersionUID = 1L;
+
+		private File file;
+		private String name;
+
+		public FileTask(File file, String name) {
+			this.file = file;
+			this.name = name;
+		}
+
+		@Override
+		protected Profile compute() {
+			try {
+				RandomAccessFile raf = new RandomAccessFile(this.file, "r");
+				try {
+					FileChannel channel = raf.getChannel();
+					Profile profile = new ChunkTask(channel, 0, channel.size(), this.name).compute();
+					profile.setCutOff(ParallelTrainer.this.cutOff);
+					profile.setFinalized();
+					return profile;
+				} finally {
+					raf.close();
+				}
+			} catch (IOException e) {
+				throw new TrainingException(e);
+			}
+		}
+	}
+
+	/**
+	 * Task counting the n-grams of a byte range of a file, which is split in
+	 * half at a token boundary if it is too large.
+	 */
+	private class ChunkTask extends RecursiveTask<Profile> {
+
+		private static final long serialVersionUID = 1L;
+
+		private FileChannel channel;
+		private long start;
+		private long end;
+		private String name;
+
+		public ChunkTask(FileChannel channel, long start, long end, String name) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.name = name;
+		}
+
+		@Override
+		protected Profile compute() {
+			try {
+				ParallelTrainer trainer = ParallelTrainer.this;
+				if (trainer.splittable && trainer.sketchCapacity == 0 && this.end - this.start > trainer.chunkSize) {
+					long middle = findBoundary(this.channel, this.start + (this.end - this.start) / 2, this.end);
+					if (middle < this.end) {
+						ChunkTask second = new ChunkTask(this.channel, middle, this.end, this.name);
+						second.fork();
+						Profile first = new ChunkTask(this.channel, this.start, middle, this.name).compute();
+						first.addNGrams(second.join());
+						return first;
+					}
+				}
+				return trainer.count(this.channel, this.start, this.end, this.name);
+			} catch (IOException e) {
+				throw new TrainingException(e);
+			}
+		}
+	}
+
+	/**
+	 * Wraps an I/O error of a task.
+	 */
+	private static class TrainingException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public TrainingException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+
+}
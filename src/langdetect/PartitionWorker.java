@@ -0,0 +1,254 @@
+package langdetect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class serves the out-of-place measures of a partition of the language
+ * profiles to a {@link ScatterGatherDetector}. Each worker process loads only
+ * its partition, so that thousands of profiles can be spread over several
+ * processes whose indexes each fit into the CPU caches.
+ * <p>
+ * The worker listens on the loopback interface. On a new connection, it sends
+ * a magic number, the number of its languages and their names. Then it
+ * answers requests until the connection is closed: a request consists of the
+ * number of results k, the number of n-grams n of a finalized query profile
+ * and its n n-gram keys (see {@link NGramKey}) in the order of their ranking.
+ * The answer consists of the number of results, at most k, followed by the
+ * local language id and the out-of-place measure of each result, ordered by
+ * measure and ties broken by language id. All numbers are big-endian, as
+ * written by {@link DataOutputStream}.
+ * <p>
+ * Every connection is served by its own thread, so a coordinator keeps one
+ * connection per worker and queries all workers at the same time.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class PartitionWorker {
+
+	/**
+	 * Magic number sent at the start of a connection ("LDPW")
+	 */
+	public static final int magic = 0x4c445057;
+	/**
+	 * Maximum number of n-grams of a query
+	 */
+	public static final int maxQuerySize = 1 << 16;
+
+	/**
+	 * Index of the profiles of the partition
+	 */
+	private ProfileIndex index;
+	/**
+	 * Port to listen on, 0 for any free port
+	 */
+	private int port;
+	/**
+	 * Listening socket, null if stopped
+	 */
+	private ServerSocket socket;
+	/**
+	 * Open connections, closed when the worker stops
+	 */
+	private Set<Socket> connections = new HashSet<Socket>();
+	/**
+	 * Number of answered queries
+	 */
+	private AtomicLong queries = new AtomicLong();
+
+	/**
+	 * Creates a worker for a partition of the language profiles.
+	 * @param profiles
+	 *        Finalized language profiles of the partition
+	 * @param maxOoP
+	 *        Out-of-place measure of n-grams missing in a language profile
+	 * @param port
+	 *        Port to listen on, 0 for any free port
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 * @throws IllegalArgumentException
+	 *         if there are too many profiles or n-grams per profile
+	 */
+	public PartitionWorker(Collection<Profile> profiles, int maxOoP, int port) throws IllegalStateException,
+			IllegalArgumentException {
+		this.index = new ProfileIndex(profiles, maxOoP);
+		this.port = port;
+	}
+
+	/**
+	 * Starts listening for connections. The thread accepting connections
+	 * keeps the JVM alive until the worker is stopped.
+	 * @throws IOException
+	 *         if the port cannot be bound
+	 * @throws IllegalStateException
+	 *         if the worker is already running
+	 */
+	public synchronized void start() throws IOException, IllegalStateException {
+
+		if (this.socket != null)
+			throw new IllegalStateException("Worker is already running");
+		final ServerSocket socket = new ServerSocket(this.port, 64, InetAddress.getLoopbackAddress());
+		this.socket = socket;
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				PartitionWorker.this.accept(socket);
+			}
+		}, "partition-worker");
+		acceptor.start();
+	}
+
+	/**
+	 * Stops the worker and closes all connections.
+	 */
+	public synchronized void stop() {
+		if (this.socket != null) {
+			close(this.socket);
+			this.socket = null;
+			for (Socket connection : this.connections) {
+				close(connection);
+			}
+			this.connections.clear();
+		}
+	}
+
+	/**
+	 * Returns the port the worker listens on.
+	 * @return Port, or the configured port if the worker is not running
+	 */
+	public synchronized int getPort() {
+		return this.socket != null ? this.socket.getLocalPort() : this.port;
+	}
+
+	/**
+	 * Returns the number of languages of the partition.
+	 * @return Number of language profiles
+	 */
+	public int getNumberOfLanguages() {
+		return this.index.size();
+	}
+
+	/**
+	 * Returns the number of queries answered so far.
+	 * @return Number of queries
+	 */
+	public long getQueries() {
+		return this.queries.get();
+	}
+
+	/**
+	 * Accepts connections until the socket is closed and serves each of them
+	 * on a new thread.
+	 */
+	private void accept(ServerSocket socket) {
+		while (true) {
+			final Socket connection;
+			try {
+				connection = socket.accept();
+			} catch (IOException e) {
+				// the worker was stopped
+				return;
+			}
+			synchronized (this) {
+				if (this.socket != socket) {
+					close(connection);
+					return;
+				}
+				this.connections.add(connection);
+			}
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					PartitionWorker.this.serve(connection);
+				}
+			}, "partition-connection");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Sends the names of the languages and answers requests until the
+	 * connection is closed.
+	 */
+	private void serve(Socket connection) {
+		try {
+			connection.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+			out.writeInt(magic);
+			out.writeInt(this.index.size());
+			for (int langId = 0; langId < this.index.size(); langId++) {
+				out.writeUTF(this.index.getProfile(langId).getName());
+			}
+			out.flush();
+
+			NGramDictionary dictionary = this.index.getDictionary();
+			int[] ids = new int[Profile.cutOffPos];
+			int[] dist = new int[this.index.size()];
+			int[] best = new int[3];
+			while (true) {
+				int k;
+				try {
+					k = in.readInt();
+				} catch (EOFException e) {
+					// closed by the coordinator
+					return;
+				}
+				int size = in.readInt();
+				if (k < 1 || size < 1 || size > maxQuerySize)
+					throw new IOException("Invalid request");
+				if (ids.length < size)
+					ids = new int[size];
+				for (int pos = 0; pos < size; pos++) {
+					ids[pos] = dictionary.getId(in.readLong());
+				}
+
+				this.index.getOutOfPlaceMeasures(ids, size, dist);
+				k = Math.min(k, dist.length);
+				if (best.length < k)
+					best = new int[k];
+				int found = Detector.selectBest(dist, dist.length, best, k);
+				out.writeInt(found);
+				for (int i = 0; i < found; i++) {
+					out.writeInt(best[i]);
+					out.writeInt(dist[best[i]]);
+				}
+				out.flush();
+				this.queries.incrementAndGet();
+			}
+		} catch (IOException e) {
+			// stopped worker, broken connection or invalid request
+		} finally {
+			synchronized (this) {
+				this.connections.remove(connection);
+			}
+			close(connection);
+		}
+	}
+
+	/**
+	 * Closes a socket, ignoring errors.
+	 */
+	private static void close(Closeable socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// nothing left to release
+		}
+	}
+
+}
@@ -1,6 +1,9 @@
 package langdetect;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -10,6 +13,16 @@ import java.util.List;
  * n-grams of a text can be added and their numbers of occurrence will be
  * determined. Once the profile is finalized, the added n-grams are sorted in
  * reverse order of frequency and its position is stored in each n-gram.
+ * N-grams with the same frequency are ordered alphabetically.
+ * <p>
+ * A profile either stores n-gram objects (default) or, if created as packed,
+ * primitive n-gram keys (see {@link NGramKey}) in an {@link NGramTable}. The
+ * packed backend does not create any objects per n-gram. Both backends compute
+ * the same ranking for n-grams that can be encoded exactly. Packed profiles
+ * can also count into a {@link HeavyHitterSketch} of fixed size, which bounds
+ * the memory for texts with very many distinct n-grams. Profiles loaded
+ * from a compiled file (see {@link ProfileFile}) are finalized and read their
+ * n-grams directly from the file's buffer.
  * 
  * @author Tobias Falke
  * 
@@ -17,14 +30,26 @@ import java.util.List;
 public class Profile {
 
 	/**
-	 * Maximum number of n-grams in a frequency profile
+	 * Default maximum number of n-grams in a frequency profile
 	 */
 	public static final int cutOffPos = 300;
 	/**
-	 * Out of place measure for n-grams not present in the compared profile
+	 * Default out of place measure for n-grams not present in the compared
+	 * profile
 	 */
 	public static final int maxOoP = 300;
 
+	/**
+	 * Sort order of n-gram objects: descending frequency, then alphabetically
+	 */
+	private static final Comparator<NGram> rankOrder = new Comparator<NGram>() {
+		@Override
+		public int compare(NGram a, NGram b) {
+			int diff = a.compareTo(b);
+			return diff != 0 ? diff : a.getGram().compareTo(b.getGram());
+		}
+	};
+
 	/**
 	 * Name of the profile
 	 */
@@ -40,6 +65,58 @@ public class Profile {
 	 */
 	// to iterate for out-of-place calculation or print to screen
 	private List<NGram> nGramList;
+	/**
+	 * Table of n-gram keys, storing counts before and positions after
+	 * finalization (packed backend only)
+	 */
+	private NGramTable nGramTable;
+	/**
+	 * Sketch counting the n-grams before finalization instead of the table,
+	 * null to count exactly (packed backend only)
+	 */
+	private HeavyHitterSketch sketch;
+	/**
+	 * Sorted n-gram keys (packed backend only)
+	 */
+	private long[] nGramKeys;
+	/**
+	 * Counts of the sorted n-gram keys (packed backend only)
+	 */
+	private int[] nGramCounts;
+	/**
+	 * Table kept for the next finalization or reset, once the profile has been
+	 * reset (packed backend only)
+	 */
+	private NGramTable spareTable;
+	/**
+	 * Buffer for ranking the n-grams (packed backend only)
+	 */
+	private int[] rankBuffer;
+	/**
+	 * Whether the profile has been reset and keeps its storage for reuse
+	 */
+	private boolean reused;
+	/**
+	 * Buffer of a compiled profile file (mapped backend only)
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * Offset of the sorted keys in the buffer, followed by their counts and the
+	 * table of keys and positions (mapped backend only)
+	 */
+	private int bufferOffset;
+	/**
+	 * Number of n-grams in the buffer (mapped backend only)
+	 */
+	private int bufferSize;
+	/**
+	 * Number of table slots in the buffer minus one (mapped backend only)
+	 */
+	private int bufferMask;
+	/**
+	 * Maximum number of n-grams kept on finalization
+	 */
+	private int cutOff = Profile.cutOffPos;
 	/**
 	 * State
 	 */
@@ -50,12 +127,63 @@ public class Profile {
 	 * @param name
 	 */
 	public Profile(String name) {
+		this(name, false);
+	}
+
+	/**
+	 * Creates an empty profile with the given name and backend.
+	 * @param name
+	 * @param packed
+	 *        true, to store primitive n-gram keys instead of n-gram objects
+	 */
+	public Profile(String name, boolean packed) {
 		this.name = name;
-		this.nGramMap = new HashMap<String, NGram>();
-		this.nGramList = new LinkedList<NGram>();
+		if (packed) {
+			this.nGramTable = new NGramTable();
+			this.nGramKeys = new long[0];
+			this.nGramCounts = new int[0];
+		} else {
+			this.nGramMap = new HashMap<String, NGram>();
+			this.nGramList = new LinkedList<NGram>();
+		}
 		this.finalized = false;
 	}
 
+	/**
+	 * Creates an empty packed profile that counts its n-grams in the given
+	 * sketch. Only the most frequent n-grams are kept while counting, so that
+	 * the memory is bounded by the capacity of the sketch.
+	 * @param name
+	 * @param sketch
+	 *        Empty sketch
+	 */
+	public Profile(String name, HeavyHitterSketch sketch) {
+		this(name, true);
+		this.sketch = sketch;
+	}
+
+	/**
+	 * Creates a finalized profile that reads its n-grams from a buffer in the
+	 * layout written by {@link ProfileFile}.
+	 * @param name
+	 * @param buffer
+	 *        Buffer
+	 * @param offset
+	 *        Offset of the profile's sorted keys
+	 * @param size
+	 *        Number of n-grams
+	 * @param slots
+	 *        Number of table slots, a power of two
+	 */
+	Profile(String name, ByteBuffer buffer, int offset, int size, int slots) {
+		this.name = name;
+		this.buffer = buffer;
+		this.bufferOffset = offset;
+		this.bufferSize = size;
+		this.bufferMask = slots - 1;
+		this.finalized = true;
+	}
+
 	/**
 	 * Returns the profile's name.
 	 * @return Name
@@ -69,9 +197,55 @@ public class Profile {
 	 * @return number of distinct n-grams
 	 */
 	public int getNumberOfNGrams() {
+		if (this.isMapped())
+			return this.bufferSize;
+		if (this.isPacked())
+			return this.sketch != null && !this.finalized ? this.sketch.size() : this.nGramTable.size();
 		return this.nGramMap.size();
 	}
 
+	/**
+	 * Returns whether the profile uses the packed backend.
+	 * @return true, if n-grams are stored as primitive keys
+	 */
+	public boolean isPacked() {
+		return this.nGramTable != null;
+	}
+
+	/**
+	 * Returns the sketch the profile counts its n-grams in.
+	 * @return Sketch, or null if n-grams are counted exactly
+	 */
+	public HeavyHitterSketch getSketch() {
+		return this.sketch;
+	}
+
+	/**
+	 * Returns whether the profile reads its n-grams from a compiled file.
+	 * @return true, if the profile was loaded from a compiled file
+	 */
+	public boolean isMapped() {
+		return this.buffer != null;
+	}
+
+	/**
+	 * Returns the buffer of the compiled file the profile reads its n-grams
+	 * from.
+	 * @return Buffer, null if the profile is not mapped
+	 */
+	ByteBuffer getBuffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Returns the offset of the profile's n-grams in the buffer of its
+	 * compiled file.
+	 * @return Offset of the sorted keys
+	 */
+	int getBufferOffset() {
+		return this.bufferOffset;
+	}
+
 	/**
 	 * Adds an n-gram to the profile. If the n-gram is already present, its
 	 * counter is incremented. If not, it is added to the set of n-grams with a
@@ -90,6 +264,8 @@ public class Profile {
 			throw new IllegalArgumentException("Gram must be specified");
 		if (this.finalized)
 			throw new IllegalStateException("Profile is already finalized");
+		if (this.isPacked())
+			return this.count(NGramKey.of(ngram), 1);
 
 		// find it in the map
 		NGram nGramObject = this.nGramMap.get(ngram);
@@ -104,6 +280,240 @@ public class Profile {
 		return nGramObject.getCount();
 	}
 
+	/**
+	 * Adds an n-gram given by its key to the profile. Keys of n-grams that
+	 * cannot be encoded exactly can only be added to packed profiles.
+	 * @param key
+	 *        n-gram key
+	 * @return New number of occurrences
+	 * @throws IllegalStateException
+	 *         if the profile is already finalized
+	 * @throws IllegalArgumentException
+	 *         if the key cannot be added to this profile
+	 */
+	public int addNGram(long key) throws IllegalStateException, IllegalArgumentException {
+
+		if (this.finalized)
+			throw new IllegalStateException("Profile is already finalized");
+		if (this.isPacked())
+			return this.count(key, 1);
+		return this.addNGram(NGramKey.toGram(key));
+	}
+
+	/**
+	 * Adds an n-gram given by its key with the given number of occurrences to
+	 * the profile, for example to combine the n-grams of several profiles with
+	 * weights.
+	 * @param key
+	 *        n-gram key
+	 * @param count
+	 *        Number of occurrences, positive
+	 * @return New number of occurrences
+	 * @throws IllegalStateException
+	 *         if the profile is already finalized
+	 * @throws IllegalArgumentException
+	 *         if the count is not positive or the key cannot be added
+	 */
+	public int addNGram(long key, int count) throws IllegalStateException, IllegalArgumentException {
+
+		if (this.finalized)
+			throw new IllegalStateException("Profile is already finalized");
+		if (count < 1)
+			throw new IllegalArgumentException("Count must be positive");
+		if (this.isPacked())
+			return this.count(key, count);
+		String ngram = NGramKey.toGram(key);
+		this.addNGram(ngram, count);
+		return this.nGramMap.get(ngram).getCount();
+	}
+
+	/**
+	 * Adds an n-gram given as a range of a character array to the profile. For
+	 * packed profiles, no objects are created.
+	 * @param buf
+	 *        Characters
+	 * @param off
+	 *        Start of the n-gram
+	 * @param len
+	 *        Length of the n-gram
+	 * @return New number of occurrences
+	 * @throws IllegalStateException
+	 *         if the profile is already finalized
+	 * @throws IllegalArgumentException
+	 *         if the range is empty
+	 */
+	public int addNGram(char[] buf, int off, int len) throws IllegalStateException, IllegalArgumentException {
+
+		if (this.finalized)
+			throw new IllegalStateException("Profile is already finalized");
+		if (this.isPacked())
+			return this.count(NGramKey.of(buf, off, len), 1);
+		return this.addNGram(new String(buf, off, len));
+	}
+
+	/**
+	 * Removes one occurrence of an n-gram given by its key from the profile,
+	 * which undoes adding it. An n-gram whose count drops to 0 is removed
+	 * completely, so that a profile can count a window moving over a text.
+	 * @param key
+	 *        n-gram key
+	 * @return New number of occurrences
+	 * @throws IllegalStateException
+	 *         if the profile is already finalized or counts with a sketch
+	 * @throws IllegalArgumentException
+	 *         if the n-gram is not in the profile
+	 */
+	public int removeNGram(long key) throws IllegalStateException, IllegalArgumentException {
+
+		if (this.finalized)
+			throw new IllegalStateException("Profile is already finalized");
+		if (this.sketch != null)
+			throw new IllegalStateException("Counts of a sketch cannot be decreased");
+		if (!this.isPacked())
+			return this.removeNGram(NGramKey.toGram(key));
+
+		int count = this.nGramTable.get(key);
+		if (count < 0)
+			throw new IllegalArgumentException("Gram is not in the profile");
+		if (count == 1) {
+			this.nGramTable.remove(key);
+			return 0;
+		}
+		return this.nGramTable.add(key, -1);
+	}
+
+	/**
+	 * Removes one occurrence of an n-gram given as a range of a character
+	 * array from the profile (see {@link #removeNGram(long)}).
+	 * @param buf
+	 *        Characters
+	 * @param off
+	 *        Start of the n-gram
+	 * @param len
+	 *        Length of the n-gram
+	 * @return New number of occurrences
+	 * @throws IllegalStateException
+	 *         if the profile is already finalized or counts with a sketch
+	 * @throws IllegalArgumentException
+	 *         if the n-gram is not in the profile
+	 */
+	public int removeNGram(char[] buf, int off, int len) throws IllegalStateException, IllegalArgumentException {
+
+		if (this.isPacked() || this.finalized)
+			return this.removeNGram(NGramKey.of(buf, off, len));
+		return this.removeNGram(new String(buf, off, len));
+	}
+
+	/**
+	 * Removes one occurrence of an n-gram from the object backend.
+	 */
+	private int removeNGram(String ngram) {
+		NGram nGramObject = this.nGramMap.get(ngram);
+		if (nGramObject == null)
+			throw new IllegalArgumentException("Gram is not in the profile");
+		if (nGramObject.getCount() == 1) {
+			this.nGramMap.remove(ngram);
+			return 0;
+		}
+		return nGramObject.incCount(-1);
+	}
+
+	/**
+	 * Adds all n-grams of another profile that is not yet finalized, together
+	 * with their numbers of occurrence. This allows to count parts of a text
+	 * separately and to combine the counts before finalizing.
+	 * @param other
+	 *        Profile that is not yet finalized
+	 * @throws IllegalStateException
+	 *         if one of the profiles is already finalized
+	 * @throws IllegalArgumentException
+	 *         if the other profile's n-grams cannot be added to this profile
+	 */
+	public void addNGrams(Profile other) throws IllegalStateException, IllegalArgumentException {
+
+		if (this.finalized || other.finalized)
+			throw new IllegalStateException("Profile is already finalized");
+
+		if (other.sketch != null) {
+			HeavyHitterSketch sketch = other.sketch;
+			for (int counter = 0; counter < sketch.size(); counter++) {
+				if (this.isPacked())
+					this.count(sketch.keyAt(counter), sketch.countAt(counter));
+				else
+					this.addNGram(NGramKey.toGram(sketch.keyAt(counter)), sketch.countAt(counter));
+			}
+		} else if (other.isPacked()) {
+			NGramTable table = other.nGramTable;
+			for (int slot = 0; slot < table.capacity(); slot++) {
+				long key = table.keyAt(slot);
+				if (key == 0)
+					continue;
+				if (this.isPacked())
+					this.count(key, table.valueAt(slot));
+				else
+					this.addNGram(NGramKey.toGram(key), table.valueAt(slot));
+			}
+		} else {
+			for (NGram ngram : other.nGramMap.values()) {
+				if (this.isPacked())
+					this.count(NGramKey.of(ngram.getGram()), ngram.getCount());
+				else
+					this.addNGram(ngram.getGram(), ngram.getCount());
+			}
+		}
+	}
+
+	/**
+	 * Adds an n-gram key with the given number of occurrences to the packed
+	 * backend.
+	 */
+	private int count(long key, int delta) {
+		if (this.sketch != null)
+			return this.sketch.add(key, delta);
+		return this.nGramTable.add(key, delta);
+	}
+
+	/**
+	 * Adds an n-gram with the given number of occurrences to the object
+	 * backend.
+	 */
+	private void addNGram(String ngram, int count) {
+		NGram nGramObject = this.nGramMap.get(ngram);
+		if (nGramObject != null) {
+			nGramObject.incCount(count);
+		} else {
+			nGramObject = new NGram(ngram);
+			nGramObject.incCount(count - 1);
+			this.nGramMap.put(ngram, nGramObject);
+		}
+	}
+
+	/**
+	 * Sets the maximum number of n-grams that are kept when the profile is
+	 * finalized. Shorter profiles are faster to compare, but may distinguish
+	 * similar languages less reliably.
+	 * @param cutOff
+	 *        Number of n-grams, {@link #cutOffPos} by default
+	 * @throws IllegalStateException
+	 *         if the profile is already finalized
+	 */
+	public void setCutOff(int cutOff) throws IllegalStateException {
+		if (cutOff < 1)
+			throw new IllegalArgumentException("Cut-off must be positive");
+		if (this.finalized)
+			throw new IllegalStateException("Profile is already finalized");
+		this.cutOff = cutOff;
+	}
+
+	/**
+	 * Returns the maximum number of n-grams that are kept when the profile is
+	 * finalized.
+	 * @return Number of n-grams
+	 */
+	public int getCutOff() {
+		return this.cutOff;
+	}
+
 	/**
 	 * Finalizes the profile. The added n-grams with their current count are
 	 * used to calculate the reverse-order frequency profile. The sort-order is
@@ -116,18 +526,22 @@ public class Profile {
 
 		if (this.finalized)
 			return;
-		if (this.nGramMap.size() == 0)
+		if (this.getNumberOfNGrams() == 0)
 			throw new IllegalStateException("Cannot be finalized, add n-grams first");
+		if (this.isPacked()) {
+			this.setFinalizedPacked();
+			return;
+		}
 
 		// sort all n-grams
-		List<NGram> nGramListSorted = new LinkedList<NGram>(this.nGramMap.values());
-		Collections.sort(nGramListSorted);
+		List<NGram> nGramListSorted = new ArrayList<NGram>(this.nGramMap.values());
+		Collections.sort(nGramListSorted, Profile.rankOrder);
 
 		// store the positions in the n-grams and remove all n-grams after the
 		// cut-off limit from the map
 		int pos = 0;
 		for (NGram ngram : nGramListSorted) {
-			if (pos < Profile.cutOffPos) {
+			if (pos < this.cutOff) {
 				ngram.setPos(pos);
 			} else {
 				this.nGramMap.remove(ngram.getGram());
@@ -136,8 +550,8 @@ public class Profile {
 		}
 
 		// in addition to the map, store the sorted list
-		if (nGramListSorted.size() > Profile.cutOffPos) {
-			this.nGramList = nGramListSorted.subList(0, Profile.cutOffPos);
+		if (nGramListSorted.size() > this.cutOff) {
+			this.nGramList = nGramListSorted.subList(0, this.cutOff);
 		} else {
 			this.nGramList = nGramListSorted;
 		}
@@ -145,6 +559,99 @@ public class Profile {
 		this.finalized = true;
 	}
 
+	/**
+	 * Finalizes a packed profile. Only the best n-grams are selected, without
+	 * sorting all of them, and the table is replaced by a small one that maps
+	 * the remaining keys to their positions.
+	 */
+	private void setFinalizedPacked() {
+
+		if (this.sketch != null) {
+			// rank the estimated counts of the monitored n-grams
+			this.nGramTable = this.sketch.toTable();
+		}
+		int size = Math.min(this.cutOff, this.nGramTable.size());
+		if (this.nGramKeys.length < size) {
+			// reused profiles allocate the buffers only once
+			int capacity = this.reused ? this.cutOff : size;
+			this.nGramKeys = new long[capacity];
+			this.nGramCounts = new int[capacity];
+			this.rankBuffer = new int[capacity];
+		}
+		this.nGramTable.rank(size, this.nGramKeys, this.rankBuffer);
+
+		NGramTable positions = this.spareTable;
+		if (positions != null)
+			positions.clear();
+		else
+			positions = new NGramTable(size);
+		for (int pos = 0; pos < size; pos++) {
+			this.nGramCounts[pos] = this.nGramTable.get(this.nGramKeys[pos]);
+			positions.put(this.nGramKeys[pos], pos);
+		}
+
+		// keep the counts only if they are needed again
+		this.spareTable = this.reused ? this.nGramTable : null;
+		this.nGramTable = positions;
+		this.finalized = true;
+	}
+
+	/**
+	 * Removes all n-grams and reopens the profile, so that it can be used for
+	 * another text. Packed profiles keep their storage, so that repeated use
+	 * does not create new objects.
+	 * @throws IllegalStateException
+	 *         if the profile was loaded from a compiled file
+	 */
+	public void reset() throws IllegalStateException {
+
+		if (this.isMapped())
+			throw new IllegalStateException("Profile is loaded from a compiled file");
+
+		if (this.isPacked()) {
+			if (this.finalized) {
+				// swap the tables for counts and positions
+				NGramTable counts = this.spareTable != null ? this.spareTable : new NGramTable();
+				this.spareTable = this.nGramTable;
+				this.nGramTable = counts;
+			}
+			this.nGramTable.clear();
+			if (this.sketch != null)
+				this.sketch.clear();
+		} else {
+			this.nGramMap.clear();
+			this.nGramList = new LinkedList<NGram>();
+		}
+		this.reused = true;
+		this.finalized = false;
+	}
+
+	/**
+	 * Returns a finalized profile for the n-grams added so far, while this
+	 * profile stays open for further n-grams. A finalized profile is returned
+	 * as it is.
+	 * @return Finalized profile
+	 * @throws IllegalStateException
+	 *         if no n-grams have been added yet
+	 */
+	public Profile snapshot() throws IllegalStateException {
+
+		if (this.finalized)
+			return this;
+		Profile copy = new Profile(this.name, this.isPacked());
+		copy.cutOff = this.cutOff;
+		if (this.sketch != null) {
+			copy.nGramTable = this.sketch.toTable();
+		} else if (this.isPacked()) {
+			// finalization only reads the table and replaces it afterwards
+			copy.nGramTable = this.nGramTable;
+		} else {
+			copy.addNGrams(this);
+		}
+		copy.setFinalized();
+		return copy;
+	}
+
 	/**
 	 * Returns the current state of the profile.
 	 * @return true, if already finalized, false otherwise
@@ -162,11 +669,73 @@ public class Profile {
 	 *         if one of the profiles is not yet finalized
 	 */
 	public int getOutOfPlaceMeasure(Profile oP) throws IllegalStateException {
+		return this.getOutOfPlaceMeasure(oP, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Calculates the out-of-place measure for this and another profile, but
+	 * stops as soon as the measure reaches the given bound. As the measure
+	 * only grows, the complete measure is then at least as large as the
+	 * returned value.
+	 * @param oP
+	 *        other profile
+	 * @param bound
+	 *        bound at which the calculation stops
+	 * @return out-of-place measure, if it is below the bound, otherwise, a
+	 *         partial measure that is at least the bound
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 */
+	public int getOutOfPlaceMeasure(Profile oP, int bound) throws IllegalStateException {
+		return this.getOutOfPlaceMeasure(oP, bound, Profile.maxOoP);
+	}
+
+	/**
+	 * Calculates the out-of-place measure for this and another profile with
+	 * the given measure of missing n-grams, but stops as soon as the measure
+	 * reaches the given bound (see {@link #getOutOfPlaceMeasure(Profile, int)}).
+	 * @param oP
+	 *        other profile
+	 * @param bound
+	 *        bound at which the calculation stops
+	 * @param maxOoP
+	 *        Out-of-place measure of n-grams missing in the other profile
+	 * @return out-of-place measure, if it is below the bound, otherwise, a
+	 *         partial measure that is at least the bound
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 */
+	public int getOutOfPlaceMeasure(Profile oP, int bound, int maxOoP) throws IllegalStateException {
 
 		if (!this.finalized || oP == null || !oP.finalized)
 			throw new IllegalStateException("Profile is not yet finalized");
 
 		int dist = 0;
+		if (this.isPacked() && oP.isPacked()) {
+			// look up this profile's keys in the other table
+			int size = this.nGramTable.size();
+			for (int pos = 0; pos < size && dist < bound; pos++) {
+				int oPos = oP.nGramTable.get(this.nGramKeys[pos]);
+				if (oPos >= 0)
+					dist += Math.abs(pos - oPos);
+				else
+					dist += maxOoP;
+			}
+			return dist;
+		}
+		if (this.nGramMap == null || oP.nGramMap == null) {
+			// compare keys, if the backends differ
+			int size = this.getNumberOfNGrams();
+			for (int pos = 0; pos < size && dist < bound; pos++) {
+				int oPos = oP.getPosition(this.getKey(pos));
+				if (oPos >= 0)
+					dist += Math.abs(pos - oPos);
+				else
+					dist += maxOoP;
+			}
+			return dist;
+		}
+
 		// iterate over this profile's n-grams
 		for (NGram ngram : this.nGramList) {
 			// get the corresponding n-gram of the other profile
@@ -176,18 +745,115 @@ public class Profile {
 				dist += Math.abs(ngram.getPos() - oNGram.getPos());
 			} else {
 				// n-gram not present in other profile -> return max
-				dist += Profile.maxOoP;
+				dist += maxOoP;
 			}
+			if (dist >= bound)
+				break;
 		}
 		return dist;
 	}
 
+	/**
+	 * Returns the key of the n-gram at the given position of the finalized
+	 * profile.
+	 * @param pos
+	 *        Position
+	 * @return n-gram key
+	 * @throws IllegalStateException
+	 *         if the profile is not yet finalized
+	 */
+	public long getKey(int pos) throws IllegalStateException {
+		if (!this.finalized)
+			throw new IllegalStateException("Profile is not yet finalized");
+		if (this.isMapped())
+			return this.buffer.getLong(this.bufferOffset + 8 * pos);
+		if (this.isPacked())
+			return this.nGramKeys[pos];
+		return NGramKey.of(this.nGramList.get(pos).getGram());
+	}
+
+	/**
+	 * Returns the number of occurrences of the n-gram at the given position of
+	 * the finalized profile.
+	 * @param pos
+	 *        Position
+	 * @return Number of occurrences
+	 * @throws IllegalStateException
+	 *         if the profile is not yet finalized
+	 */
+	public int getCount(int pos) throws IllegalStateException {
+		if (!this.finalized)
+			throw new IllegalStateException("Profile is not yet finalized");
+		if (this.isMapped())
+			return this.buffer.getInt(this.bufferOffset + 8 * this.bufferSize + 4 * pos);
+		if (this.isPacked())
+			return this.nGramCounts[pos];
+		return this.nGramList.get(pos).getCount();
+	}
+
+	/**
+	 * Returns the position of an n-gram in the finalized profile.
+	 * @param key
+	 *        n-gram key
+	 * @return Position, or -1 if the n-gram is not part of the profile
+	 * @throws IllegalStateException
+	 *         if the profile is not yet finalized
+	 */
+	public int getPosition(long key) throws IllegalStateException {
+		if (!this.finalized)
+			throw new IllegalStateException("Profile is not yet finalized");
+		if (this.isMapped())
+			return this.getMappedPosition(key);
+		if (this.isPacked())
+			return this.nGramTable.get(key);
+		if (NGramKey.isExact(key)) {
+			NGram ngram = this.nGramMap.get(NGramKey.toGram(key));
+			return ngram != null ? ngram.getPos() : -1;
+		}
+		for (NGram ngram : this.nGramList) {
+			if (NGramKey.of(ngram.getGram()) == key)
+				return ngram.getPos();
+		}
+		return -1;
+	}
+
+	/**
+	 * Looks up the position of a key in the table of the buffer.
+	 * @param key
+	 *        n-gram key
+	 * @return Position, or -1 if the n-gram is not part of the profile
+	 */
+	private int getMappedPosition(long key) {
+		int keys = this.bufferOffset + 12 * this.bufferSize;
+		int positions = keys + 8 * (this.bufferMask + 1);
+		int slot = NGramTable.slot(key, this.bufferMask);
+		long k;
+		while ((k = this.buffer.getLong(keys + 8 * slot)) != 0) {
+			if (k == key)
+				return this.buffer.getInt(positions + 4 * slot);
+			slot = (slot + 1) & this.bufferMask;
+		}
+		return -1;
+	}
+
 	/**
 	 * Returns a textual representation of the profile.
 	 * @return Text
 	 */
 	@Override
 	public String toString() {
+		if (this.nGramMap == null && this.finalized) {
+			StringBuilder text = new StringBuilder(this.getName()).append(": [");
+			for (int pos = 0; pos < this.getNumberOfNGrams(); pos++) {
+				if (pos > 0)
+					text.append(", ");
+				text.append(NGramKey.toString(this.getKey(pos)));
+				text.append(" (").append(this.getCount(pos)).append(",").append(pos).append(")");
+			}
+			return text.append("]").toString();
+		}
+		if (this.nGramMap == null)
+			return this.getName() + ": []";
 		return this.getName() + ": " + this.nGramList.toString();
 	}
 
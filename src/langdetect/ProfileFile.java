@@ -0,0 +1,436 @@
+package langdetect;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class writes finalized profiles to a binary file and loads them again
+ * by memory-mapping the file. Loaded profiles look up n-grams directly in the
+ * mapped buffer, so that starting a detector from a compiled file neither
+ * requires re-reading the training texts nor copying the profiles onto the
+ * heap.
+ * <p>
+ * The file starts with a header (magic number, format version, number of
+ * profiles), followed by one block per profile: the name (length and UTF-8
+ * bytes), the number of n-grams n, the number of table slots s, the n sorted
+ * n-gram keys, their n counts, and an open-addressing table of s keys and s
+ * positions, probed in the same way as {@link NGramTable}. All numbers are
+ * big-endian.
+ * <p>
+ * Since version 2, the profiles are followed by the shared index of a
+ * {@link ProfileIndex}: the number of n-grams d of all profiles (or -1 if the
+ * profiles are too large to be indexed), the number of table slots s and the
+ * number of postings p, the d sorted n-gram keys of the dictionary, an
+ * open-addressing table of s keys and s ids, the d + 1 starts of the postings
+ * of each id and the p postings. An index created for all profiles of a file,
+ * in their order, reads this section from the mapped buffer instead of
+ * building it on the heap. As a read-only mapping of a file is backed by the
+ * page cache, all processes on a machine that load the same file share one
+ * physical copy of the profiles and of the index. Files of versions 1 and 2
+ * can still be read, without settings, and the index of version 1 is built on
+ * the heap.
+ * <p>
+ * Since version 3, the header also stores the settings the profiles were
+ * trained with, the minimum and maximum length of n-grams and the cut-off, so
+ * that queries are profiled and scored in the same way. The stored cut-off is
+ * at least the number of n-grams of the largest profile.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class ProfileFile {
+
+	/**
+	 * Magic number at the start of a compiled profile file ("LDPF")
+	 */
+	public static final int magic = 0x4c445046;
+	/**
+	 * Current version of the file format
+	 */
+	public static final int version = 3;
+
+	// encoding of profile names
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
+	private ProfileFile() {
+	}
+
+	/**
+	 * Writes the given profiles to a file, with the default settings of a
+	 * {@link Tokenizer} and {@link Profile}.
+	 * @param profiles
+	 *        Finalized profiles
+	 * @param file
+	 *        Target file
+	 * @throws IOException
+	 *         if the file cannot be written
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 */
+	public static void write(Collection<Profile> profiles, File file) throws IOException, IllegalStateException {
+		write(profiles, file, new Settings(1, 5, Profile.cutOffPos));
+	}
+
+	/**
+	 * Writes the given profiles to a file, together with the settings they
+	 * were trained with. The profiles are written to a temporary file in the
+	 * same folder, which then replaces the target by an atomic rename, so
+	 * that processes and profiles still mapping the old file keep reading it
+	 * unchanged and watchers only see the complete new file.
+	 * @param profiles
+	 *        Finalized profiles
+	 * @param file
+	 *        Target file
+	 * @param settings
+	 *        n-gram lengths and cut-off of the profiles
+	 * @throws IOException
+	 *         if the file cannot be written
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 */
+	public static void write(Collection<Profile> profiles, File file, Settings settings) throws IOException,
+			IllegalStateException {
+
+		// positions of the profiles never reach the stored cut-off
+		int cutOff = settings.getCutOff();
+		for (Profile p : profiles) {
+			cutOff = Math.max(cutOff, p.getNumberOfNGrams());
+		}
+
+		// never truncate a file that other processes may have mapped
+		File dir = file.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+		boolean written = false;
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				out.writeInt(magic);
+				out.writeInt(version);
+				out.writeInt(profiles.size());
+				out.writeInt(settings.getMinLength());
+				out.writeInt(settings.getMaxLength());
+				out.writeInt(cutOff);
+				for (Profile p : profiles) {
+					writeProfile(p, out);
+				}
+				writeIndex(new ArrayList<Profile>(profiles), out);
+			} finally {
+				out.close();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			written = true;
+		} finally {
+			if (!written)
+				tmp.delete();
+		}
+	}
+
+	/**
+	 * Loads all profiles of a file. The file is memory-mapped and the profiles
+	 * read their n-grams from the mapped buffer.
+	 * @param file
+	 *        Compiled profile file
+	 * @return Finalized profiles
+	 * @throws IOException
+	 *         if the file cannot be read or has an unknown format
+	 */
+	public static List<Profile> read(File file) throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		ByteBuffer buffer;
+		try {
+			// the mapping stays valid after closing the channel
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+		return read(buffer);
+	}
+
+	/**
+	 * Loads all profiles from a buffer with the content of a compiled file.
+	 * @param buffer
+	 *        Buffer
+	 * @return Finalized profiles
+	 * @throws IOException
+	 *         if the buffer has an unknown format
+	 */
+	public static List<Profile> read(ByteBuffer buffer) throws IOException {
+
+		try {
+			if (buffer.getInt(0) != magic)
+				throw new IOException("Not a compiled profile file");
+			int fileVersion = buffer.getInt(4);
+			if (fileVersion < 1 || fileVersion > version)
+				throw new IOException("Unsupported profile file version " + fileVersion);
+			int count = buffer.getInt(8);
+			if (count < 0)
+				throw new IOException("Corrupt profile file");
+			if (fileVersion > 2) {
+				int minLen = buffer.getInt(12);
+				if (minLen < 1 || buffer.getInt(16) < minLen || buffer.getInt(20) < 1)
+					throw new IOException("Corrupt profile file");
+			}
+
+			List<Profile> profiles = new ArrayList<Profile>(count);
+			int offset = profilesOffset(buffer);
+			for (int i = 0; i < count; i++) {
+				// name
+				byte[] name = new byte[buffer.getShort(offset) & 0xffff];
+				for (int j = 0; j < name.length; j++) {
+					name[j] = buffer.get(offset + 2 + j);
+				}
+				offset += 2 + name.length;
+
+				// n-grams
+				int size = buffer.getInt(offset);
+				int slots = buffer.getInt(offset + 4);
+				offset += 8;
+				if (size < 0 || slots <= size || Integer.bitCount(slots) != 1)
+					throw new IOException("Corrupt profile file");
+				profiles.add(new Profile(new String(name, utf8), buffer, offset, size, slots));
+				offset += 12 * size + 12 * slots;
+			}
+			if (offset > buffer.limit() || (fileVersion > 1 && indexEnd(buffer, offset) > buffer.limit()))
+				throw new IOException("Corrupt profile file");
+			return profiles;
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Corrupt profile file");
+		}
+	}
+
+	/**
+	 * Returns the settings stored in the file the given profiles were loaded
+	 * from.
+	 * @param profiles
+	 *        Profiles loaded from a compiled file
+	 * @return Settings, or null if the profiles are not mapped or the file has
+	 *         no settings (before version 3)
+	 */
+	public static Settings getSettings(List<Profile> profiles) {
+
+		if (profiles.isEmpty() || !profiles.get(0).isMapped())
+			return null;
+		ByteBuffer buffer = profiles.get(0).getBuffer();
+		if (buffer.getInt(4) < 3)
+			return null;
+		return new Settings(buffer.getInt(12), buffer.getInt(16), buffer.getInt(20));
+	}
+
+	/**
+	 * Returns the offset of the index section in the buffer the given
+	 * profiles were loaded from, if they are exactly the profiles of the file
+	 * and in the same order.
+	 * @param profiles
+	 *        Finalized profiles
+	 * @return Offset of the index section, or -1 if the profiles are not
+	 *         mapped from the same file or the file has no index
+	 */
+	static int findIndex(List<Profile> profiles) {
+
+		if (profiles.isEmpty() || !profiles.get(0).isMapped())
+			return -1;
+		ByteBuffer buffer = profiles.get(0).getBuffer();
+		if (buffer.getInt(4) < 2 || buffer.getInt(8) != profiles.size())
+			return -1;
+
+		// the profiles have to start at the offsets of the file's blocks
+		int offset = profilesOffset(buffer);
+		for (Profile p : profiles) {
+			offset += 2 + (buffer.getShort(offset) & 0xffff);
+			if (p.getBuffer() != buffer || p.getBufferOffset() != offset + 8)
+				return -1;
+			offset += 8 + 12 * buffer.getInt(offset) + 12 * buffer.getInt(offset + 4);
+		}
+		return buffer.getInt(offset) >= 0 ? offset : -1;
+	}
+
+	/**
+	 * Returns the offset of the first profile's block, after the header.
+	 */
+	private static int profilesOffset(ByteBuffer buffer) {
+		return buffer.getInt(4) < 3 ? 12 : 24;
+	}
+
+	/**
+	 * Returns the end of the index section starting at the given offset.
+	 */
+	private static long indexEnd(ByteBuffer buffer, int offset) throws IOException {
+		int ids = buffer.getInt(offset);
+		if (ids < 0)
+			return offset + 4L;
+		int slots = buffer.getInt(offset + 4);
+		int total = buffer.getInt(offset + 8);
+		if (slots <= ids || Integer.bitCount(slots) != 1 || total < 0)
+			throw new IOException("Corrupt profile file");
+		return offset + 12L + 8L * ids + 12L * slots + 4L * (ids + 1) + 4L * total;
+	}
+
+	/**
+	 * Writes the index section of all profiles.
+	 */
+	private static void writeIndex(List<Profile> profiles, DataOutputStream out) throws IOException {
+
+		ProfileIndex index;
+		try {
+			index = new ProfileIndex(profiles, false);
+		} catch (IllegalArgumentException e) {
+			// too many profiles or n-grams per profile
+			out.writeInt(-1);
+			return;
+		}
+
+		NGramDictionary dictionary = index.getDictionary();
+		int ids = dictionary.size();
+		long[] keys = new long[ids];
+		for (int id = 0; id < ids; id++) {
+			keys[id] = dictionary.getKey(id);
+		}
+		int slots = slots(ids);
+		int[] postings = index.getPostings();
+		out.writeInt(ids);
+		out.writeInt(slots);
+		out.writeInt(postings.length);
+		for (int id = 0; id < ids; id++) {
+			out.writeLong(keys[id]);
+		}
+		writeTable(keys, slots, out);
+		for (int start : index.getStarts()) {
+			out.writeInt(start);
+		}
+		for (int posting : postings) {
+			out.writeInt(posting);
+		}
+	}
+
+	/**
+	 * Writes the block of a single profile.
+	 */
+	private static void writeProfile(Profile p, DataOutputStream out) throws IOException {
+
+		if (!p.isFinalized())
+			throw new IllegalStateException("Profile is not yet finalized");
+
+		byte[] name = p.getName().getBytes(utf8);
+		out.writeShort(name.length);
+		out.write(name);
+
+		// sorted keys and counts
+		int size = p.getNumberOfNGrams();
+		long[] keys = new long[size];
+		for (int pos = 0; pos < size; pos++) {
+			keys[pos] = p.getKey(pos);
+		}
+
+		int slots = slots(size);
+		out.writeInt(size);
+		out.writeInt(slots);
+		for (int pos = 0; pos < size; pos++) {
+			out.writeLong(keys[pos]);
+		}
+		for (int pos = 0; pos < size; pos++) {
+			out.writeInt(p.getCount(pos));
+		}
+		writeTable(keys, slots, out);
+	}
+
+	/**
+	 * Returns the number of table slots for the given number of keys, with at
+	 * most half of the slots used.
+	 */
+	private static int slots(int size) {
+		int slots = 8;
+		while (slots < 2 * size) {
+			slots <<= 1;
+		}
+		return slots;
+	}
+
+	/**
+	 * Writes an open-addressing table mapping each key to its index in the
+	 * given array: first the keys of all slots, then their values.
+	 */
+	private static void writeTable(long[] keys, int slots, DataOutputStream out) throws IOException {
+
+		long[] tableKeys = new long[slots];
+		int[] tableValues = new int[slots];
+		for (int i = 0; i < keys.length; i++) {
+			int slot = NGramTable.slot(keys[i], slots - 1);
+			while (tableKeys[slot] != 0) {
+				slot = (slot + 1) & (slots - 1);
+			}
+			tableKeys[slot] = keys[i];
+			tableValues[slot] = i;
+		}
+		for (int slot = 0; slot < slots; slot++) {
+			out.writeLong(tableKeys[slot]);
+		}
+		for (int slot = 0; slot < slots; slot++) {
+			out.writeInt(tableValues[slot]);
+		}
+	}
+
+	/**
+	 * Settings the profiles of a compiled file were trained with
+	 */
+	public static class Settings {
+
+		private int minLen;
+		private int maxLen;
+		private int cutOff;
+
+		/**
+		 * Creates settings with the given values.
+		 * @param minLen
+		 *        Minimum length of n-grams
+		 * @param maxLen
+		 *        Maximum length of n-grams
+		 * @param cutOff
+		 *        Number of n-grams kept per profile
+		 */
+		public Settings(int minLen, int maxLen, int cutOff) {
+			this.minLen = minLen;
+			this.maxLen = maxLen;
+			this.cutOff = cutOff;
+		}
+
+		/**
+		 * Returns the minimum length of n-grams.
+		 * @return Length
+		 */
+		public int getMinLength() {
+			return this.minLen;
+		}
+
+		/**
+		 * Returns the maximum length of n-grams.
+		 * @return Length
+		 */
+		public int getMaxLength() {
+			return this.maxLen;
+		}
+
+		/**
+		 * Returns the number of n-grams kept per profile, which is at least
+		 * the number of n-grams of the largest profile.
+		 * @return Cut-off
+		 */
+		public int getCutOff() {
+			return this.cutOff;
+		}
+	}
+
+}
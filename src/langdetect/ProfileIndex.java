@@ -0,0 +1,533 @@
+package langdetect;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class implements an inverted index over a set of finalized language
+ * profiles. For each n-gram, it stores the languages containing it together
+ * with the n-gram's position in the language profile. With the index, the
+ * out-of-place measures of a query profile to all languages are calculated in
+ * one pass over the query's n-grams, instead of looking each n-gram up once
+ * per language. All n-grams are numbered by a shared {@link NGramDictionary},
+ * so that a query is resolved to ids once and postings and positions are
+ * found by array indexing.
+ * <p>
+ * Alternatively, the index stores a dense position matrix with one row per
+ * n-gram and one column per language, holding the n-gram's position in the
+ * language profile or a large value for languages that do not contain it. A
+ * query n-gram then updates the measures of all languages with a branch-free
+ * loop over its row, which the JIT compiler can turn into SIMD instructions.
+ * As every row is processed completely, this only pays off if most n-grams
+ * occur in most languages, so it is used by default only for dense matrices.
+ * It requires all positions to be below the out-of-place measure of missing
+ * n-grams, which holds for finalized profiles if the measure is at least their
+ * cut-off.
+ * <p>
+ * If the profiles are exactly the profiles of a compiled file, in the order
+ * of the file (see {@link ProfileFile}), the index does not copy them onto the
+ * heap but reads the dictionary and the postings stored in the file from its
+ * mapped buffer. Processes loading the same file then share one copy of the
+ * index in the page cache. Such an index scores with postings only, unless a
+ * dense position matrix is requested explicitly.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class ProfileIndex {
+
+	// bits of a posting used for the position
+	private static final int posBits = 16;
+	private static final int posMask = (1 << posBits) - 1;
+	// position of n-grams missing in a language, far enough from all
+	// positions that the difference is always capped at maxOoP
+	private static final int absent = 1 << 20;
+	// maximum number of cells of the dense matrix (64 MB)
+	private static final int maxDenseCells = 1 << 24;
+
+	/**
+	 * Indexed profiles, the index in this list is the language id
+	 */
+	private List<Profile> profiles;
+	/**
+	 * Dictionary assigning ids to the n-grams of all profiles
+	 */
+	private NGramDictionary dictionary;
+	/**
+	 * Start of each n-gram id's postings, followed by the end of the last one
+	 */
+	private int[] starts;
+	/**
+	 * Postings of all n-gram ids: language id (upper bits) and position (lower
+	 * bits)
+	 */
+	private int[] postings;
+	/**
+	 * Buffer of a compiled profile file, null if the index is on the heap
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * Offset of the starts of the postings in the buffer (mapped index only)
+	 */
+	private int startsOffset;
+	/**
+	 * Offset of the postings in the buffer (mapped index only)
+	 */
+	private int postingsOffset;
+	/**
+	 * Dense position matrix, row by row, null if not used
+	 */
+	private int[] dense;
+	/**
+	 * Out-of-place measure of n-grams missing in a profile
+	 */
+	private int maxOoP;
+
+	/**
+	 * Creates an index for the given profiles, with a dense position matrix if
+	 * most of its cells are used.
+	 * @param profiles
+	 *        Finalized profiles
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 * @throws IllegalArgumentException
+	 *         if there are too many profiles or n-grams per profile
+	 */
+	public ProfileIndex(Collection<Profile> profiles) throws IllegalStateException, IllegalArgumentException {
+		this(profiles, null, Profile.maxOoP);
+	}
+
+	/**
+	 * Creates an index for the given profiles with the given out-of-place
+	 * measure of missing n-grams, with a dense position matrix if most of its
+	 * cells are used.
+	 * @param profiles
+	 *        Finalized profiles
+	 * @param maxOoP
+	 *        Out-of-place measure of n-grams missing in a profile, at most
+	 *        65536
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 * @throws IllegalArgumentException
+	 *         if there are too many profiles or n-grams per profile
+	 */
+	public ProfileIndex(Collection<Profile> profiles, int maxOoP) throws IllegalStateException,
+			IllegalArgumentException {
+		this(profiles, null, maxOoP);
+	}
+
+	/**
+	 * Creates an index for the given profiles.
+	 * @param profiles
+	 *        Finalized profiles
+	 * @param dense
+	 *        true, to score with a dense position matrix if it fits into
+	 *        memory, false, to score with postings only
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 * @throws IllegalArgumentException
+	 *         if there are too many profiles or n-grams per profile
+	 */
+	public ProfileIndex(Collection<Profile> profiles, boolean dense) throws IllegalStateException,
+			IllegalArgumentException {
+		this(profiles, Boolean.valueOf(dense), Profile.maxOoP);
+	}
+
+	/**
+	 * Creates an index for the given profiles with the given out-of-place
+	 * measure of missing n-grams.
+	 * @param profiles
+	 *        Finalized profiles
+	 * @param dense
+	 *        true, to score with a dense position matrix if it fits into
+	 *        memory, false, to score with postings only
+	 * @param maxOoP
+	 *        Out-of-place measure of n-grams missing in a profile, at most
+	 *        65536
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 * @throws IllegalArgumentException
+	 *         if there are too many profiles or n-grams per profile
+	 */
+	public ProfileIndex(Collection<Profile> profiles, boolean dense, int maxOoP) throws IllegalStateException,
+			IllegalArgumentException {
+		this(profiles, Boolean.valueOf(dense), maxOoP);
+	}
+
+	/**
+	 * Creates an index for the given profiles, with a dense matrix if
+	 * requested or, if not specified, if at least half of its cells are used.
+	 */
+	private ProfileIndex(Collection<Profile> profiles, Boolean dense, int maxOoP) throws IllegalStateException,
+			IllegalArgumentException {
+
+		if (maxOoP < 1 || maxOoP > (1 << posBits))
+			throw new IllegalArgumentException("Invalid out-of-place measure for missing n-grams");
+		this.maxOoP = maxOoP;
+		this.profiles = new ArrayList<Profile>(profiles);
+		if (this.profiles.size() > (1 << (Integer.SIZE - posBits)))
+			throw new IllegalArgumentException("Too many profiles");
+
+		// use the index stored with the profiles, if there is one
+		int offset = dense == null || !dense.booleanValue() ? ProfileFile.findIndex(this.profiles) : -1;
+		if (offset >= 0) {
+			this.initMapped(this.profiles.get(0).getBuffer(), offset);
+			return;
+		}
+
+		// each n-gram has an id, all data is stored in arrays indexed by it
+		this.dictionary = new NGramDictionary(this.profiles);
+		int ids = this.dictionary.size();
+
+		// reserve a range of postings for each n-gram
+		this.starts = new int[ids + 1];
+		int total = 0;
+		int maxSize = 0;
+		for (Profile p : this.profiles) {
+			if (p.getNumberOfNGrams() > (1 << posBits))
+				throw new IllegalArgumentException("Too many n-grams in profile " + p.getName());
+			maxSize = Math.max(maxSize, p.getNumberOfNGrams());
+			for (int pos = 0; pos < p.getNumberOfNGrams(); pos++) {
+				this.starts[this.dictionary.getId(p.getKey(pos)) + 1]++;
+				total++;
+			}
+		}
+		for (int id = 0; id < ids; id++) {
+			this.starts[id + 1] += this.starts[id];
+		}
+
+		// fill the postings in order of the language ids
+		this.postings = new int[total];
+		int[] fill = Arrays.copyOf(this.starts, ids);
+		for (int langId = 0; langId < this.profiles.size(); langId++) {
+			Profile p = this.profiles.get(langId);
+			for (int pos = 0; pos < p.getNumberOfNGrams(); pos++) {
+				int id = this.dictionary.getId(p.getKey(pos));
+				this.postings[fill[id]++] = (langId << posBits) | pos;
+			}
+		}
+
+		long cells = (long) ids * this.profiles.size();
+		boolean useDense = dense != null ? dense.booleanValue() : 2L * total >= cells;
+		if (useDense && maxSize <= this.maxOoP && cells <= maxDenseCells) {
+			this.initDense();
+		}
+	}
+
+	/**
+	 * Reads the dictionary and the postings from the index section of a
+	 * compiled profile file.
+	 */
+	private void initMapped(ByteBuffer buffer, int offset) {
+		int ids = buffer.getInt(offset);
+		int slots = buffer.getInt(offset + 4);
+		this.dictionary = new NGramDictionary(buffer, offset + 12, ids, slots);
+		this.buffer = buffer;
+		this.startsOffset = offset + 12 + 8 * ids + 12 * slots;
+		this.postingsOffset = this.startsOffset + 4 * (ids + 1);
+	}
+
+	/**
+	 * Fills the dense position matrix from the postings.
+	 */
+	private void initDense() {
+		int langs = this.profiles.size();
+		this.dense = new int[(this.starts.length - 1) * langs];
+		Arrays.fill(this.dense, absent);
+		for (int id = 0; id < this.starts.length - 1; id++) {
+			for (int i = this.starts[id]; i < this.starts[id + 1]; i++) {
+				int posting = this.postings[i];
+				this.dense[id * langs + (posting >>> posBits)] = posting & posMask;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the index scores with a dense position matrix.
+	 * @return true, if the dense matrix is used
+	 */
+	public boolean isDense() {
+		return this.dense != null;
+	}
+
+	/**
+	 * Returns whether the index reads its postings from a compiled file.
+	 * @return true, if the index is not stored on the heap
+	 */
+	public boolean isMapped() {
+		return this.buffer != null;
+	}
+
+	/**
+	 * Returns the number of indexed profiles.
+	 * @return Number of profiles
+	 */
+	public int size() {
+		return this.profiles.size();
+	}
+
+	/**
+	 * Returns the profile with the given language id.
+	 * @param langId
+	 *        Language id, which is the profile's index in the collection the
+	 *        index was created with
+	 * @return Profile
+	 */
+	public Profile getProfile(int langId) {
+		return this.profiles.get(langId);
+	}
+
+	/**
+	 * Calculates the out-of-place measures of the query profile to all indexed
+	 * profiles.
+	 * @param query
+	 *        Finalized query profile
+	 * @return out-of-place measure for each language id
+	 * @throws IllegalStateException
+	 *         if the query profile is not yet finalized
+	 */
+	public int[] getOutOfPlaceMeasures(Profile query) throws IllegalStateException {
+		int[] dist = new int[this.size()];
+		this.getOutOfPlaceMeasures(query, dist);
+		return dist;
+	}
+
+	/**
+	 * Returns the out-of-place measure of n-grams missing in a profile.
+	 * @return Measure of a missing n-gram
+	 */
+	public int getMaxOoP() {
+		return this.maxOoP;
+	}
+
+	/**
+	 * Returns the dictionary of the n-grams of all indexed profiles.
+	 * @return Dictionary
+	 */
+	public NGramDictionary getDictionary() {
+		return this.dictionary;
+	}
+
+	/**
+	 * Calculates the out-of-place measures of the query profile to all indexed
+	 * profiles and stores them in the given array.
+	 * @param query
+	 *        Finalized query profile
+	 * @param dist
+	 *        Array receiving the out-of-place measure for each language id
+	 * @throws IllegalStateException
+	 *         if the query profile is not yet finalized
+	 */
+	public void getOutOfPlaceMeasures(Profile query, int[] dist) throws IllegalStateException {
+
+		if (query == null || !query.isFinalized())
+			throw new IllegalStateException("Profile is not yet finalized");
+		int[] ids = new int[query.getNumberOfNGrams()];
+		this.getOutOfPlaceMeasures(ids, this.dictionary.resolve(query, ids), dist);
+	}
+
+	/**
+	 * Calculates the out-of-place measures of a query given by the ids of its
+	 * ranked n-grams (see {@link NGramDictionary#resolve(Profile, int[])}) to
+	 * all indexed profiles and stores them in the given array.
+	 * @param ids
+	 *        n-gram ids of the query in the order of its ranking, -1 for
+	 *        n-grams that are not in the dictionary
+	 * @param size
+	 *        Number of n-grams of the query
+	 * @param dist
+	 *        Array receiving the out-of-place measure for each language id
+	 */
+	public void getOutOfPlaceMeasures(int[] ids, int size, int[] dist) {
+
+		if (this.dense != null && size <= this.maxOoP) {
+			this.getOutOfPlaceMeasuresDense(ids, size, dist);
+			return;
+		}
+
+		// start with every n-gram missing in every language
+		Arrays.fill(dist, 0, this.size(), size * this.maxOoP);
+		if (this.isMapped()) {
+			this.getOutOfPlaceMeasuresMapped(ids, size, dist);
+			return;
+		}
+
+		// and correct the distance for the languages containing an n-gram
+		for (int pos = 0; pos < size; pos++) {
+			int id = ids[pos];
+			if (id < 0)
+				continue;
+			for (int i = this.starts[id]; i < this.starts[id + 1]; i++) {
+				int posting = this.postings[i];
+				dist[posting >>> posBits] += Math.abs(pos - (posting & posMask)) - this.maxOoP;
+			}
+		}
+	}
+
+	/**
+	 * Calculates the out-of-place measure of a query given by the ids of its
+	 * ranked n-grams to a single indexed profile, but stops as soon as the
+	 * measure reaches the given bound (see
+	 * {@link Profile#getOutOfPlaceMeasure(Profile, int)}).
+	 * @param ids
+	 *        n-gram ids of the query in the order of its ranking, -1 for
+	 *        n-grams that are not in the dictionary
+	 * @param size
+	 *        Number of n-grams of the query
+	 * @param langId
+	 *        Language id
+	 * @param bound
+	 *        bound at which the calculation stops
+	 * @return out-of-place measure, if it is below the bound, otherwise, a
+	 *         partial measure that is at least the bound
+	 */
+	public int getOutOfPlaceMeasure(int[] ids, int size, int langId, int bound) {
+		if (this.isMapped())
+			return this.getOutOfPlaceMeasureMapped(ids, size, langId, bound);
+		// the postings of an n-gram are sorted by language id
+		int dist = 0;
+		for (int pos = 0; pos < size && dist < bound; pos++) {
+			int id = ids[pos];
+			int oPos = -1;
+			if (id >= 0) {
+				int low = this.starts[id];
+				int high = this.starts[id + 1] - 1;
+				while (low <= high) {
+					int mid = (low + high) >>> 1;
+					int midLang = this.postings[mid] >>> posBits;
+					if (midLang < langId) {
+						low = mid + 1;
+					} else if (midLang > langId) {
+						high = mid - 1;
+					} else {
+						oPos = this.postings[mid] & posMask;
+						break;
+					}
+				}
+			}
+			if (oPos >= 0)
+				dist += Math.abs(pos - oPos);
+			else
+				dist += this.maxOoP;
+		}
+		return dist;
+	}
+
+	/**
+	 * Calculates the out-of-place measures with the dense position matrix.
+	 */
+	private void getOutOfPlaceMeasuresDense(int[] ids, int size, int[] dist) {
+
+		int langs = this.size();
+		Arrays.fill(dist, 0, langs, 0);
+
+		int missing = 0;
+		for (int pos = 0; pos < size; pos++) {
+			int id = ids[pos];
+			if (id < 0) {
+				// missing in all languages
+				missing++;
+				continue;
+			}
+			// branch-free, so that the loop is vectorized
+			int row = id * langs;
+			for (int langId = 0; langId < langs; langId++) {
+				dist[langId] += Math.min(Math.abs(pos - this.dense[row + langId]), this.maxOoP);
+			}
+		}
+		if (missing > 0) {
+			for (int langId = 0; langId < langs; langId++) {
+				dist[langId] += missing * this.maxOoP;
+			}
+		}
+	}
+
+	/**
+	 * Corrects the out-of-place measures for the languages containing the
+	 * query's n-grams, with the postings of the mapped buffer.
+	 */
+	private void getOutOfPlaceMeasuresMapped(int[] ids, int size, int[] dist) {
+		ByteBuffer buffer = this.buffer;
+		for (int pos = 0; pos < size; pos++) {
+			int id = ids[pos];
+			if (id < 0)
+				continue;
+			int start = this.postingsOffset + 4 * buffer.getInt(this.startsOffset + 4 * id);
+			int end = this.postingsOffset + 4 * buffer.getInt(this.startsOffset + 4 * (id + 1));
+			for (int i = start; i < end; i += 4) {
+				int posting = buffer.getInt(i);
+				dist[posting >>> posBits] += Math.abs(pos - (posting & posMask)) - this.maxOoP;
+			}
+		}
+	}
+
+	/**
+	 * Calculates the out-of-place measure to a single language with the
+	 * postings of the mapped buffer. The postings of an n-gram are sorted by
+	 * language id, so the language's position is found by binary search.
+	 */
+	private int getOutOfPlaceMeasureMapped(int[] ids, int size, int langId, int bound) {
+		ByteBuffer buffer = this.buffer;
+		int dist = 0;
+		for (int pos = 0; pos < size && dist < bound; pos++) {
+			int id = ids[pos];
+			int oPos = -1;
+			if (id >= 0) {
+				int low = buffer.getInt(this.startsOffset + 4 * id);
+				int high = buffer.getInt(this.startsOffset + 4 * (id + 1)) - 1;
+				while (low <= high) {
+					int mid = (low + high) >>> 1;
+					int posting = buffer.getInt(this.postingsOffset + 4 * mid);
+					int midLang = posting >>> posBits;
+					if (midLang < langId) {
+						low = mid + 1;
+					} else if (midLang > langId) {
+						high = mid - 1;
+					} else {
+						oPos = posting & posMask;
+						break;
+					}
+				}
+			}
+			if (oPos >= 0)
+				dist += Math.abs(pos - oPos);
+			else
+				dist += this.maxOoP;
+		}
+		return dist;
+	}
+
+	/**
+	 * Returns the start of each n-gram id's postings, followed by the end of
+	 * the last one, for writing the index to a compiled file.
+	 * @return Starts, not to be modified
+	 */
+	int[] getStarts() {
+		if (!this.isMapped())
+			return this.starts;
+		int[] starts = new int[this.dictionary.size() + 1];
+		for (int id = 0; id < starts.length; id++) {
+			starts[id] = this.buffer.getInt(this.startsOffset + 4 * id);
+		}
+		return starts;
+	}
+
+	/**
+	 * Returns the postings of all n-gram ids, for writing the index to a
+	 * compiled file.
+	 * @return Postings, not to be modified
+	 */
+	int[] getPostings() {
+		if (!this.isMapped())
+			return this.postings;
+		int[] postings = new int[this.buffer.getInt(this.startsOffset + 4 * this.dictionary.size())];
+		for (int i = 0; i < postings.length; i++) {
+			postings[i] = this.buffer.getInt(this.postingsOffset + 4 * i);
+		}
+		return postings;
+	}
+
+}
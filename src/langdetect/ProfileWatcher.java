@@ -0,0 +1,344 @@
+package langdetect;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class watches the training folder or the compiled profile file of a
+ * detector and rebuilds the profiles when files change. Changes are detected
+ * with a {@link WatchService} and processed on a background thread: after the
+ * first event, further events are collected until the folder is quiet for a
+ * moment, then only the affected profiles are computed again. The new list of
+ * profiles is never modified afterwards and passed to a listener, which
+ * typically creates a new {@link Detector} and replaces the old one. As
+ * detectors are immutable, detections running at that time finish with the
+ * old profiles, and the query path needs no locks.
+ * <p>
+ * In a training folder, every file is the text of the language named by the
+ * first two characters of the file name, as for the initial training. Hidden
+ * files and files ending with "~" or ".tmp" are ignored, so that editors and
+ * copy tools do not trigger incomplete profiles. A compiled file is reloaded
+ * completely. It should be replaced by renaming a new file over it, as
+ * {@link ProfileFile} does, because the old profiles may still read from the
+ * mapping of the old file.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class ProfileWatcher {
+
+	// time without events before the changes are processed
+	private static final long quietMillis = 200;
+
+	/**
+	 * Receives the profiles after every change.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called on the watcher's thread after profiles were rebuilt.
+		 * @param profiles
+		 *        Complete list of finalized profiles, not modifiable
+		 */
+		void profilesChanged(List<Profile> profiles);
+
+		/**
+		 * Called on the watcher's thread if a changed file cannot be read or
+		 * the profiles cannot be rebuilt or passed on. The previous profiles
+		 * stay in use and the watcher continues with the next change.
+		 * @param file
+		 *        Changed file
+		 * @param e
+		 *        Error
+		 */
+		void reloadFailed(File file, Exception e);
+	}
+
+	/**
+	 * Training folder or compiled profile file
+	 */
+	private File path;
+	/**
+	 * Whether the path is a compiled profile file
+	 */
+	private boolean compiled;
+	/**
+	 * Encoding of the training texts
+	 */
+	private Charset charset;
+	/**
+	 * Minimum length of the n-grams of the training texts
+	 */
+	private int minLen = 1;
+	/**
+	 * Maximum length of the n-grams of the training texts
+	 */
+	private int maxLen = 5;
+	/**
+	 * Number of n-grams kept per profile
+	 */
+	private int cutOff = Profile.cutOffPos;
+	/**
+	 * Receiver of the rebuilt profiles
+	 */
+	private Listener listener;
+	/**
+	 * Profiles currently in use
+	 */
+	private volatile List<Profile> profiles;
+	/**
+	 * Number of times the profiles were rebuilt
+	 */
+	private volatile int reloads;
+	/**
+	 * Service receiving the events of the folder, null if not watching
+	 */
+	private WatchService watchService;
+	/**
+	 * Background thread processing the events
+	 */
+	private Thread thread;
+
+	/**
+	 * Creates a watcher for a training folder or a compiled profile file.
+	 * @param path
+	 *        Training folder or compiled profile file
+	 * @param charset
+	 *        Encoding of the training texts
+	 * @param profiles
+	 *        Profiles currently computed from the path
+	 * @param listener
+	 *        Receiver of the rebuilt profiles
+	 */
+	public ProfileWatcher(File path, Charset charset, List<Profile> profiles, Listener listener) {
+		this.path = path;
+		this.compiled = path.isFile();
+		this.charset = charset;
+		this.profiles = Collections.unmodifiableList(new ArrayList<Profile>(profiles));
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets how the profiles of changed training files are computed. They
+	 * should be the same settings as for the initial training.
+	 * @param minLen
+	 *        Minimum length of n-grams
+	 * @param maxLen
+	 *        Maximum length of n-grams
+	 * @param cutOff
+	 *        Number of n-grams kept per profile
+	 */
+	public void setTraining(int minLen, int maxLen, int cutOff) {
+		if (minLen < 1 || maxLen < minLen || cutOff < 1)
+			throw new IllegalArgumentException("Invalid n-gram lengths or cut-off");
+		this.minLen = minLen;
+		this.maxLen = maxLen;
+		this.cutOff = cutOff;
+	}
+
+	/**
+	 * Starts watching on a background thread.
+	 * @throws IOException
+	 *         if the folder cannot be watched
+	 * @throws IllegalStateException
+	 *         if the watcher is already running
+	 */
+	public synchronized void start() throws IOException, IllegalStateException {
+
+		if (this.watchService != null)
+			throw new IllegalStateException("Watcher is already running");
+
+		File folder = this.compiled ? this.path.getAbsoluteFile().getParentFile() : this.path;
+		this.watchService = folder.toPath().getFileSystem().newWatchService();
+		folder.toPath().register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+		final WatchService service = this.watchService;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ProfileWatcher.this.watch(service);
+			}
+		}, "profile-watcher");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Stops watching and waits for the background thread to finish.
+	 */
+	public synchronized void stop() {
+		if (this.watchService != null) {
+			try {
+				this.watchService.close();
+				this.thread.join();
+			} catch (IOException e) {
+				// no more events will be processed anyway
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.watchService = null;
+			this.thread = null;
+		}
+	}
+
+	/**
+	 * Returns the profiles currently in use.
+	 * @return Finalized profiles, not modifiable
+	 */
+	public List<Profile> getProfiles() {
+		return this.profiles;
+	}
+
+	/**
+	 * Returns the number of times the profiles were rebuilt.
+	 * @return Number of reloads
+	 */
+	public int getReloads() {
+		return this.reloads;
+	}
+
+	/**
+	 * Processes events until the watch service is closed.
+	 */
+	private void watch(WatchService service) {
+		try {
+			while (true) {
+				Set<String> changed = new HashSet<String>();
+				collect(service.take(), changed);
+				// wait until the files are completely written
+				WatchKey key;
+				while ((key = service.poll(quietMillis, TimeUnit.MILLISECONDS)) != null) {
+					collect(key, changed);
+				}
+				try {
+					this.reload(changed);
+				} catch (RuntimeException e) {
+					// invalid profiles or a failing listener must not stop watching
+					this.listener.reloadFailed(this.path, e);
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// stopped
+		} catch (InterruptedException e) {
+			// stopped
+		}
+	}
+
+	/**
+	 * Adds the names of the changed files of a key, or null if events were
+	 * lost.
+	 */
+	private static void collect(WatchKey key, Set<String> changed) {
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+				changed.add(null);
+			else
+				changed.add(((Path) event.context()).getFileName().toString());
+		}
+		key.reset();
+	}
+
+	/**
+	 * Rebuilds the profiles affected by the changed files and passes them to
+	 * the listener.
+	 */
+	private void reload(Set<String> changed) {
+
+		List<Profile> updated;
+		if (this.compiled) {
+			// compiled file: reload completely if it changed
+			if (!changed.contains(null) && !changed.contains(this.path.getName()))
+				return;
+			try {
+				updated = ProfileFile.read(this.path);
+			} catch (IOException e) {
+				this.listener.reloadFailed(this.path, e);
+				return;
+			}
+		} else {
+			if (changed.contains(null)) {
+				// events were lost, so every file may have changed
+				changed.clear();
+				File[] files = this.path.listFiles();
+				for (int i = 0; files != null && i < files.length; i++) {
+					changed.add(files[i].getName());
+				}
+			}
+			updated = new ArrayList<Profile>(this.profiles);
+			boolean modified = false;
+			for (String fileName : changed) {
+				if (isIgnored(fileName))
+					continue;
+				modified |= this.update(updated, new File(this.path, fileName));
+			}
+			if (!modified)
+				return;
+		}
+
+		this.profiles = Collections.unmodifiableList(updated);
+		this.reloads++;
+		this.listener.profilesChanged(this.profiles);
+	}
+
+	/**
+	 * Computes the profile of a changed training file again and replaces,
+	 * adds or removes it in the list.
+	 * @return true, if the list was changed
+	 */
+	private boolean update(List<Profile> profiles, File file) {
+
+		String name = file.getName().substring(0, 2);
+		int index = -1;
+		for (int i = 0; i < profiles.size(); i++) {
+			if (profiles.get(i).getName().equals(name))
+				index = i;
+		}
+
+		if (!file.isFile()) {
+			if (index < 0)
+				return false;
+			profiles.remove(index);
+			return true;
+		}
+		Profile profile = new Profile(name, true);
+		profile.setCutOff(this.cutOff);
+		try {
+			new Tokenizer(this.minLen, this.maxLen).computeProfile(profile, file, this.charset);
+		} catch (IOException e) {
+			this.listener.reloadFailed(file, e);
+			return false;
+		} catch (IllegalStateException e) {
+			// no n-grams, probably not completely written yet
+			this.listener.reloadFailed(file, e);
+			return false;
+		}
+		if (index < 0)
+			profiles.add(profile);
+		else
+			profiles.set(index, profile);
+		return true;
+	}
+
+	/**
+	 * Checks whether a file in the training folder is ignored.
+	 */
+	private static boolean isIgnored(String fileName) {
+		return fileName.length() < 2 || fileName.startsWith(".") || fileName.endsWith("~")
+				|| fileName.endsWith(".tmp");
+	}
+
+}
@@ -0,0 +1,290 @@
+package langdetect;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class detects languages by scattering queries to a number of
+ * {@link PartitionWorker}s, each holding a partition of the language
+ * profiles, and gathering their results. The query profile is computed and
+ * serialized only once, as the list of its ranked n-gram keys, and the same
+ * bytes are sent to all workers before any answer is read, so the workers
+ * score their partitions at the same time. Every worker returns its k best
+ * languages, which are merged into the global ranking.
+ * <p>
+ * The languages of all workers are numbered in the order of the workers, so
+ * ties are broken as by a {@link Detector} for the concatenated partitions.
+ * Unlike a detector, the languages are not restricted to the script of the
+ * query. The results carry empty profiles that only have the languages'
+ * names, as the profiles are not loaded by the coordinator.
+ * <p>
+ * A coordinator keeps one connection per worker, so its queries are
+ * serialized; threads detecting in parallel should use a coordinator each. If
+ * a worker fails, the coordinator is closed.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class ScatterGatherDetector implements Closeable {
+
+	/**
+	 * Connections to the workers, null if closed
+	 */
+	private List<Connection> workers;
+	/**
+	 * Profiles with the names of the languages of all workers, the index in
+	 * this list is the global language id
+	 */
+	private List<Profile> profiles = new ArrayList<Profile>();
+	/**
+	 * Maximum number of n-grams of a query profile
+	 */
+	private int cutOff;
+	/**
+	 * Collector creating the n-grams of a query
+	 */
+	private NGramCollector collector;
+	/**
+	 * Profile of the current query
+	 */
+	private Profile query;
+	/**
+	 * Serialized request of the current query
+	 */
+	private ByteArrayOutputStream request = new ByteArrayOutputStream();
+	private DataOutputStream requestData = new DataOutputStream(this.request);
+	/**
+	 * Global language id and distance of the results of all workers
+	 */
+	private int[] langIds = new int[0];
+	private int[] distances = new int[0];
+	private int[] best = new int[3];
+
+	/**
+	 * Connects to the given workers.
+	 * @param workers
+	 *        Addresses of the workers
+	 * @param minLen
+	 *        Minimum length of n-grams
+	 * @param maxLen
+	 *        Maximum length of n-grams
+	 * @param cutOff
+	 *        Maximum number of n-grams of a query profile
+	 * @throws IOException
+	 *         if a worker cannot be reached
+	 * @throws IllegalArgumentException
+	 *         if no workers are given or one of the settings is invalid
+	 */
+	public ScatterGatherDetector(List<InetSocketAddress> workers, int minLen, int maxLen, int cutOff)
+			throws IOException, IllegalArgumentException {
+
+		if (workers.isEmpty())
+			throw new IllegalArgumentException("No workers specified");
+		if (minLen < 1 || maxLen < minLen || cutOff < 1 || cutOff > PartitionWorker.maxQuerySize)
+			throw new IllegalArgumentException("Invalid n-gram lengths or cut-off");
+		this.cutOff = cutOff;
+		this.collector = new NGramCollector(minLen, maxLen);
+		this.query = new Profile("", true);
+		this.query.setCutOff(cutOff);
+
+		this.workers = new ArrayList<Connection>(workers.size());
+		try {
+			for (InetSocketAddress address : workers) {
+				Connection worker = new Connection(address, this.profiles.size());
+				this.workers.add(worker);
+				for (String name : worker.names) {
+					this.profiles.add(new Profile(name, true));
+				}
+			}
+		} catch (IOException e) {
+			this.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of languages of all workers.
+	 * @return Number of languages
+	 */
+	public int getNumberOfLanguages() {
+		return this.profiles.size();
+	}
+
+	/**
+	 * Returns the maximum number of n-grams of a query profile.
+	 * @return Number of n-grams
+	 */
+	public int getCutOff() {
+		return this.cutOff;
+	}
+
+	/**
+	 * Detects the language of a text.
+	 * @param text
+	 *        Text
+	 * @return Closest language
+	 * @throws IOException
+	 *         if a worker fails or the coordinator is closed
+	 * @throws IllegalStateException
+	 *         if the text does not contain any n-grams
+	 */
+	public DetectionResult detect(CharSequence text) throws IOException, IllegalStateException {
+		return this.detectTopK(text, 1).get(0);
+	}
+
+	/**
+	 * Detects the k closest languages of a text.
+	 * @param text
+	 *        Text
+	 * @param k
+	 *        Number of languages
+	 * @return Closest languages, ordered by out-of-place measure, at most k
+	 * @throws IOException
+	 *         if a worker fails or the coordinator is closed
+	 * @throws IllegalStateException
+	 *         if the text does not contain any n-grams
+	 */
+	public synchronized List<DetectionResult> detectTopK(CharSequence text, int k) throws IOException,
+			IllegalStateException {
+
+		if (k < 1)
+			throw new IllegalArgumentException("k must be positive");
+		if (this.workers == null)
+			throw new IOException("Coordinator is closed");
+		// no worker returns more than all of its languages
+		k = Math.min(k, this.getNumberOfLanguages());
+
+		// compute and serialize the query profile once
+		this.query.reset();
+		this.collector.reset(this.query);
+		this.collector.add(text, 0, text.length());
+		this.collector.flush();
+		this.query.setFinalized();
+		int size = this.query.getNumberOfNGrams();
+		this.request.reset();
+		DataOutputStream out = this.requestData;
+		out.writeInt(k);
+		out.writeInt(size);
+		for (int pos = 0; pos < size; pos++) {
+			out.writeLong(this.query.getKey(pos));
+		}
+
+		// send it to all workers before reading any answer
+		int capacity = k * this.workers.size();
+		if (this.langIds.length < capacity) {
+			this.langIds = new int[capacity];
+			this.distances = new int[capacity];
+		}
+		int found = 0;
+		try {
+			for (Connection worker : this.workers) {
+				this.request.writeTo(worker.out);
+				worker.out.flush();
+			}
+			for (Connection worker : this.workers) {
+				found = worker.readResults(k, this.langIds, this.distances, found);
+			}
+		} catch (IOException e) {
+			this.close();
+			throw e;
+		}
+
+		// merge the local rankings, which are in the order of the global ids
+		k = Math.min(k, found);
+		if (this.best.length < k) {
+			this.best = new int[k];
+		}
+		k = Detector.selectBest(this.distances, found, this.best, k);
+		List<DetectionResult> results = new ArrayList<DetectionResult>(k);
+		for (int i = 0; i < k; i++) {
+			int result = this.best[i];
+			results.add(new DetectionResult(this.profiles.get(this.langIds[result]), this.distances[result]));
+		}
+		return results;
+	}
+
+	/**
+	 * Closes the connections to all workers.
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.workers != null) {
+			for (Connection worker : this.workers) {
+				try {
+					worker.socket.close();
+				} catch (IOException e) {
+					// nothing left to release
+				}
+			}
+			this.workers = null;
+		}
+	}
+
+	/**
+	 * Connection to a worker
+	 */
+	private static class Connection {
+
+		private Socket socket;
+		private DataInputStream in;
+		private DataOutputStream out;
+		private List<String> names;
+		/**
+		 * Global language id of the worker's first language
+		 */
+		private int offset;
+
+		/**
+		 * Connects to a worker and reads the names of its languages.
+		 */
+		public Connection(InetSocketAddress address, int offset) throws IOException {
+			this.socket = new Socket();
+			try {
+				this.socket.connect(address);
+				this.socket.setTcpNoDelay(true);
+				this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+				this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+				if (this.in.readInt() != PartitionWorker.magic)
+					throw new IOException("Not a partition worker: " + address);
+				int languages = this.in.readInt();
+				this.names = new ArrayList<String>(languages);
+				for (int i = 0; i < languages; i++) {
+					this.names.add(this.in.readUTF());
+				}
+			} catch (IOException e) {
+				this.socket.close();
+				throw e;
+			}
+			this.offset = offset;
+		}
+
+		/**
+		 * Reads the answer to a query and appends the results with global
+		 * language ids.
+		 * @return New number of results
+		 */
+		public int readResults(int k, int[] langIds, int[] distances, int found) throws IOException {
+			int results = this.in.readInt();
+			if (results < 0 || results > k)
+				throw new IOException("Invalid answer of partition worker");
+			for (int i = 0; i < results; i++) {
+				int langId = this.in.readInt();
+				if (langId < 0 || langId >= this.names.size())
+					throw new IOException("Invalid answer of partition worker");
+				langIds[found] = this.offset + langId;
+				distances[found++] = this.in.readInt();
+			}
+			return found;
+		}
+	}
+
+}
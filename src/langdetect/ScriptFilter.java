@@ -0,0 +1,128 @@
+package langdetect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class restricts the languages a query is scored against to those
+ * written in the script of the query. For every language, the scripts of the
+ * letters of its ranked n-grams form its signature. A query is compatible
+ * with a language if the signature contains the script with most letters in
+ * the query (see {@link ScriptHistogram}), so a Cyrillic text is only
+ * compared to the languages with Cyrillic n-grams. If no language matches,
+ * all of them are candidates, as the profiles do not tell anything about the
+ * query.
+ * <p>
+ * n-grams with characters from U+1000 on are hashed by {@link NGramKey}, so
+ * their letters are unknown. Languages with hashed n-grams are therefore
+ * candidates for every script that only has such characters (e.g. Han,
+ * Hiragana or Hangul), but never excluded for them. A filter is immutable.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class ScriptFilter {
+
+	// all scripts, indexed by ordinal
+	private static final Character.UnicodeScript[] scripts = Character.UnicodeScript.values();
+	// scripts with letters that are encoded exactly by the n-gram keys
+	private static final boolean[] exact = new boolean[scripts.length];
+
+	static {
+		for (int c = 0; c < 0x1000; c++) {
+			if (Character.isLetter(c))
+				exact[Character.UnicodeScript.of(c).ordinal()] = true;
+		}
+	}
+
+	/**
+	 * Scripts of the letters of each language's n-grams
+	 */
+	private List<Set<Character.UnicodeScript>> signatures;
+	/**
+	 * Compatible language ids per script ordinal, null if all languages are
+	 * candidates
+	 */
+	private int[][] candidates;
+
+	/**
+	 * Creates a filter for the languages of the index.
+	 * @param index
+	 *        Index of language profiles
+	 */
+	public ScriptFilter(ProfileIndex index) {
+
+		int languages = index.size();
+		this.signatures = new ArrayList<Set<Character.UnicodeScript>>(languages);
+		boolean[] hashed = new boolean[languages];
+		for (int langId = 0; langId < languages; langId++) {
+			Profile profile = index.getProfile(langId);
+			Set<Character.UnicodeScript> signature = EnumSet.noneOf(Character.UnicodeScript.class);
+			for (int pos = 0; pos < profile.getNumberOfNGrams(); pos++) {
+				long key = profile.getKey(pos);
+				if (!NGramKey.isExact(key)) {
+					hashed[langId] = true;
+					continue;
+				}
+				String gram = NGramKey.toGram(key);
+				for (int i = 0; i < gram.length(); i++) {
+					if (Character.isLetter(gram.charAt(i)))
+						signature.add(Character.UnicodeScript.of(gram.charAt(i)));
+				}
+			}
+			this.signatures.add(signature);
+		}
+
+		// candidates of each script, only stored if some languages are excluded
+		this.candidates = new int[scripts.length][];
+		int[] ids = new int[languages];
+		for (int script = 0; script < scripts.length; script++) {
+			int n = 0;
+			for (int langId = 0; langId < languages; langId++) {
+				if (this.signatures.get(langId).contains(scripts[script]) || (hashed[langId] && !exact[script]))
+					ids[n++] = langId;
+			}
+			if (n > 0 && n < languages) {
+				this.candidates[script] = new int[n];
+				System.arraycopy(ids, 0, this.candidates[script], 0, n);
+			}
+		}
+	}
+
+	/**
+	 * Returns the scripts of the letters of a language's n-grams.
+	 * @param langId
+	 *        Language id of the index
+	 * @return Scripts, not modifiable
+	 */
+	public Set<Character.UnicodeScript> getSignature(int langId) {
+		return Collections.unmodifiableSet(this.signatures.get(langId));
+	}
+
+	/**
+	 * Returns the languages compatible with a text.
+	 * @param histogram
+	 *        Script histogram of the text
+	 * @return Language ids in ascending order, or null if all languages are
+	 *         candidates
+	 */
+	public int[] getCandidates(ScriptHistogram histogram) {
+		Character.UnicodeScript script = histogram.getDominant();
+		return script == null ? null : this.candidates[script.ordinal()];
+	}
+
+	/**
+	 * Returns the languages compatible with a script.
+	 * @param script
+	 *        Script
+	 * @return Language ids in ascending order, or null if all languages are
+	 *         candidates
+	 */
+	public int[] getCandidates(Character.UnicodeScript script) {
+		return this.candidates[script.ordinal()];
+	}
+
+}
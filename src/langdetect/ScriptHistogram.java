@@ -0,0 +1,108 @@
+package langdetect;
+
+/**
+ * This class counts the letters of a text per Unicode script. It is filled by
+ * an {@link NGramCollector} while the text is tokenized, so the text is not
+ * read a second time. Letters of the scripts COMMON, INHERITED and UNKNOWN are
+ * not counted, as they do not belong to a particular writing system. Only the
+ * scripts that occurred are reset, so a histogram can be reused for many
+ * short texts cheaply. A histogram is not thread-safe.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class ScriptHistogram {
+
+	// all scripts, indexed by ordinal
+	private static final Character.UnicodeScript[] scripts = Character.UnicodeScript.values();
+	// script of all ASCII letters
+	private static final int latin = Character.UnicodeScript.LATIN.ordinal();
+
+	/**
+	 * Number of letters per script ordinal
+	 */
+	private int[] counts = new int[scripts.length];
+	/**
+	 * Ordinals of the scripts that occurred, in order of occurrence
+	 */
+	private int[] seen = new int[4];
+	/**
+	 * Number of scripts that occurred
+	 */
+	private int numSeen;
+	/**
+	 * Number of counted letters
+	 */
+	private int total;
+
+	/**
+	 * Removes all counts.
+	 */
+	public void reset() {
+		for (int i = 0; i < this.numSeen; i++) {
+			this.counts[this.seen[i]] = 0;
+		}
+		this.numSeen = 0;
+		this.total = 0;
+	}
+
+	/**
+	 * Counts a letter.
+	 * @param codePoint
+	 *        Code point of a letter
+	 */
+	public void add(int codePoint) {
+		int script;
+		if (codePoint < 0x80) {
+			script = latin;
+		} else {
+			Character.UnicodeScript s = Character.UnicodeScript.of(codePoint);
+			if (s == Character.UnicodeScript.COMMON || s == Character.UnicodeScript.INHERITED
+					|| s == Character.UnicodeScript.UNKNOWN)
+				return;
+			script = s.ordinal();
+		}
+		if (this.counts[script]++ == 0) {
+			if (this.numSeen == this.seen.length) {
+				int[] grown = new int[this.seen.length * 2];
+				System.arraycopy(this.seen, 0, grown, 0, this.numSeen);
+				this.seen = grown;
+			}
+			this.seen[this.numSeen++] = script;
+		}
+		this.total++;
+	}
+
+	/**
+	 * Returns the number of counted letters.
+	 * @return Number of letters
+	 */
+	public int getTotal() {
+		return this.total;
+	}
+
+	/**
+	 * Returns the number of letters of a script.
+	 * @param script
+	 *        Script
+	 * @return Number of letters
+	 */
+	public int getCount(Character.UnicodeScript script) {
+		return this.counts[script.ordinal()];
+	}
+
+	/**
+	 * Returns the script with the most letters. Ties are broken in favor of
+	 * the script that occurred first.
+	 * @return Script, or null if no letters were counted
+	 */
+	public Character.UnicodeScript getDominant() {
+		int best = -1;
+		for (int i = 0; i < this.numSeen; i++) {
+			if (best < 0 || this.counts[this.seen[i]] > this.counts[best])
+				best = this.seen[i];
+		}
+		return best < 0 ? null : scripts[best];
+	}
+
+}
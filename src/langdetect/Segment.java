@@ -0,0 +1,98 @@
+package langdetect;
+
+/**
+ * This class represents a span of a text in a single language, as found by
+ * a {@link Segmenter}: the character range from the start of its first token
+ * to the end of its last token, the number of tokens and the language
+ * profile. Segments are immutable.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class Segment {
+
+	/**
+	 * Position of the first character
+	 */
+	private final int start;
+	/**
+	 * Position after the last character
+	 */
+	private final int end;
+	/**
+	 * Number of tokens
+	 */
+	private final int tokens;
+	/**
+	 * Language profile
+	 */
+	private final Profile profile;
+
+	/**
+	 * Creates a segment.
+	 * @param start
+	 *        Position of the first character
+	 * @param end
+	 *        Position after the last character
+	 * @param tokens
+	 *        Number of tokens
+	 * @param profile
+	 *        Language profile
+	 */
+	public Segment(int start, int end, int tokens, Profile profile) {
+		this.start = start;
+		this.end = end;
+		this.tokens = tokens;
+		this.profile = profile;
+	}
+
+	/**
+	 * Returns the position of the first character in the text.
+	 * @return Start
+	 */
+	public int getStart() {
+		return this.start;
+	}
+
+	/**
+	 * Returns the position after the last character in the text.
+	 * @return End (exclusive)
+	 */
+	public int getEnd() {
+		return this.end;
+	}
+
+	/**
+	 * Returns the number of tokens of the segment.
+	 * @return Number of tokens
+	 */
+	public int getTokens() {
+		return this.tokens;
+	}
+
+	/**
+	 * Returns the language profile.
+	 * @return Profile
+	 */
+	public Profile getProfile() {
+		return this.profile;
+	}
+
+	/**
+	 * Returns the name of the language.
+	 * @return Name
+	 */
+	public String getName() {
+		return this.profile.getName();
+	}
+
+	/**
+	 * Returns a textual representation of the segment.
+	 * @return Text
+	 */
+	@Override
+	public String toString() {
+		return this.getName() + " [" + this.start + ", " + this.end + ")";
+	}
+
+}
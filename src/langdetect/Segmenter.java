@@ -0,0 +1,216 @@
+package langdetect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class splits a text that switches between languages into segments of
+ * a single language. The tokens of the text are divided into blocks of a few
+ * tokens (the step), and every block is labeled with the language detected
+ * for a window of tokens around it. Adjacent blocks with the same language are
+ * merged into one segment.
+ * <p>
+ * The window moves from block to block, and its n-gram counts are updated
+ * incrementally: the n-grams of tokens entering the window are added, the ones
+ * of tokens leaving it are removed. Each token is therefore counted twice at
+ * most, and the cost of a text is linear in its length. At the beginning and
+ * the end of the text, the window is shifted so that it stays inside the
+ * text. A segmenter is not thread-safe.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class Segmenter {
+
+	/**
+	 * Index of the language profiles
+	 */
+	private ProfileIndex index;
+	/**
+	 * Number of tokens of the window
+	 */
+	private int windowSize = 30;
+	/**
+	 * Number of tokens of a block
+	 */
+	private int step = 5;
+	/**
+	 * Collector adding the n-grams of entering tokens
+	 */
+	private NGramCollector adder;
+	/**
+	 * Collector removing the n-grams of leaving tokens
+	 */
+	private NGramCollector remover;
+	/**
+	 * Running n-gram counts of the window
+	 */
+	private Profile counts;
+	/**
+	 * Start of each token of the current text
+	 */
+	private int[] starts = new int[256];
+	/**
+	 * End of each token of the current text
+	 */
+	private int[] ends = new int[256];
+	/**
+	 * n-gram ids of the current window
+	 */
+	private int[] ids = new int[Profile.cutOffPos];
+	/**
+	 * Out-of-place measures of the current window
+	 */
+	private int[] distances;
+	/**
+	 * Best language id of the current window
+	 */
+	private int[] best = new int[1];
+
+	/**
+	 * Creates a segmenter for the languages of the index.
+	 * @param index
+	 *        Index of language profiles
+	 */
+	public Segmenter(ProfileIndex index) {
+		this(index, 1, 5, Profile.cutOffPos);
+	}
+
+	/**
+	 * Creates a segmenter for the languages of the index with the given
+	 * settings.
+	 * @param index
+	 *        Index of language profiles
+	 * @param minLen
+	 *        Minimum length of n-grams
+	 * @param maxLen
+	 *        Maximum length of n-grams
+	 * @param cutOff
+	 *        Maximum number of n-grams of the profile of a window
+	 */
+	public Segmenter(ProfileIndex index, int minLen, int maxLen, int cutOff) {
+		this.index = index;
+		this.adder = new NGramCollector(minLen, maxLen);
+		this.remover = new NGramCollector(minLen, maxLen);
+		this.counts = new Profile("", true);
+		this.counts.setCutOff(cutOff);
+		this.distances = new int[index.size()];
+	}
+
+	/**
+	 * Sets the number of tokens of the window and of the blocks it labels.
+	 * @param windowSize
+	 *        Number of tokens of the window used to detect the language
+	 * @param step
+	 *        Number of tokens of a block, at most the window size
+	 */
+	public void setWindow(int windowSize, int step) {
+		if (step < 1 || windowSize < step)
+			throw new IllegalArgumentException("Step must be positive and at most the window size");
+		this.windowSize = windowSize;
+		this.step = step;
+	}
+
+	/**
+	 * Splits a text into segments of a single language.
+	 * @param text
+	 *        Text
+	 * @return Segments in the order of the text, empty if the text does not
+	 *         contain any tokens
+	 */
+	public List<Segment> segment(CharSequence text) {
+
+		List<Segment> segments = new ArrayList<Segment>();
+		int n = this.findTokens(text);
+		if (n == 0)
+			return segments;
+
+		this.counts.reset();
+		this.adder.reset(this.counts);
+		this.remover.reset(this.counts, true);
+		int lo = 0;
+		int hi = 0;
+
+		int segmentStart = 0;
+		int segmentLang = -1;
+		for (int block = 0; block < n; block += this.step) {
+
+			// move the window to the tokens around the block
+			int from = Math.max(0, Math.min(n - this.windowSize, block + this.step / 2 - this.windowSize / 2));
+			int to = Math.min(n, from + this.windowSize);
+			for (; hi < to; hi++) {
+				this.adder.add(text, this.starts[hi], this.ends[hi]);
+				this.adder.flush();
+			}
+			for (; lo < from; lo++) {
+				this.remover.add(text, this.starts[lo], this.ends[lo]);
+				this.remover.flush();
+			}
+
+			// label the block and merge it with the previous one
+			int langId = this.score();
+			if (langId != segmentLang) {
+				if (segmentLang >= 0)
+					segments.add(this.createSegment(segmentStart, block, segmentLang));
+				segmentStart = block;
+				segmentLang = langId;
+			}
+		}
+		segments.add(this.createSegment(segmentStart, n, segmentLang));
+		return segments;
+	}
+
+	/**
+	 * Finds the tokens of the text, which are the maximal runs of letters as
+	 * in {@link NGramCollector}.
+	 * @return Number of tokens
+	 */
+	private int findTokens(CharSequence text) {
+		int n = 0;
+		int start = -1;
+		int i = 0;
+		while (i <= text.length()) {
+			int cp = i < text.length() ? Character.codePointAt(text, i) : ' ';
+			if (Character.isLetter(cp)) {
+				if (start < 0)
+					start = i;
+			} else if (start >= 0) {
+				if (n == this.starts.length) {
+					this.starts = Arrays.copyOf(this.starts, 2 * n);
+					this.ends = Arrays.copyOf(this.ends, 2 * n);
+				}
+				this.starts[n] = start;
+				this.ends[n++] = i;
+				start = -1;
+			}
+			i += Character.charCount(cp);
+		}
+		return n;
+	}
+
+	/**
+	 * Determines the best language for the current counts of the window.
+	 * @return Language id
+	 */
+	private int score() {
+		Profile query = this.counts.snapshot();
+		int size = query.getNumberOfNGrams();
+		if (this.ids.length < size) {
+			this.ids = new int[size];
+		}
+		this.index.getDictionary().resolve(query, this.ids);
+		this.index.getOutOfPlaceMeasures(this.ids, size, this.distances);
+		Detector.selectBest(this.distances, this.index.size(), this.best, 1);
+		return this.best[0];
+	}
+
+	/**
+	 * Creates a segment for a range of tokens.
+	 */
+	private Segment createSegment(int fromToken, int toToken, int langId) {
+		return new Segment(this.starts[fromToken], this.ends[toToken - 1], toToken - fromToken,
+				this.index.getProfile(langId));
+	}
+
+}
@@ -2,6 +2,8 @@ package langdetect;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.Scanner;
 
 /**
@@ -9,6 +11,12 @@ import java.util.Scanner;
  * n-grams are stored in a profile that has to be passed to the tokenizer. After
  * adding all n-grams, the profile is finalized and represents the text's
  * frequency profile.
+ * <p>
+ * In streaming mode, the tokenizer does not use a scanner but walks over the
+ * characters with an {@link NGramCollector}, which avoids regular expressions
+ * and, together with a packed profile, the creation of strings. Both modes
+ * compute the same profiles. Files are then read through a
+ * {@link ChannelDecoder} with an explicit charset.
  * 
  * @author Tobias Falke
  * 
@@ -28,6 +36,18 @@ public class Tokenizer {
 	 * Maximum length of created n-grams
 	 */
 	private int maxLen = 5;
+	/**
+	 * Whether the scanner is replaced by the collector
+	 */
+	private boolean streaming = false;
+	/**
+	 * Collector of n-grams without scanner, created on demand
+	 */
+	private NGramCollector collector;
+	/**
+	 * Decoder for reading files in streaming mode, created on demand
+	 */
+	private ChannelDecoder decoder;
 
 	/**
 	 * Creates a tokenizer with default settings.
@@ -47,6 +67,29 @@ public class Tokenizer {
 		this.maxLen = max;
 	}
 
+	/**
+	 * Creates a tokenizer with the given setting.
+	 * @param min
+	 *        Minimum length of n-grams
+	 * @param max
+	 *        Maximum length of n-grams
+	 * @param streaming
+	 *        true, to walk over the characters directly instead of using a
+	 *        scanner
+	 */
+	public Tokenizer(int min, int max, boolean streaming) {
+		this(min, max);
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Returns whether the tokenizer runs in streaming mode.
+	 * @return true, if no scanner is used
+	 */
+	public boolean isStreaming() {
+		return this.streaming;
+	}
+
 	/**
 	 * Computes the frequency profile for the given text.
 	 * @param profile
@@ -55,22 +98,112 @@ public class Tokenizer {
 	 *        Text
 	 */
 	public void computeProfile(Profile profile, String text) {
+		if (this.isStreaming()) {
+			this.computeProfile(profile, (CharSequence) text);
+			return;
+		}
 		Scanner scanner = new Scanner(text);
 		this.computeProfile(profile, scanner);
 	}
 
 	/**
-	 * Computes the frequency profile for a text stored in a file.
+	 * Computes the frequency profile for the given text without using a
+	 * scanner, regardless of the mode.
+	 * @param profile
+	 *        Empty profile
+	 * @param text
+	 *        Text
+	 */
+	public void computeProfile(Profile profile, CharSequence text) {
+		NGramCollector collector = this.getCollector();
+		collector.reset(profile);
+		collector.add(text, 0, text.length());
+		collector.flush();
+		profile.setFinalized();
+	}
+
+	/**
+	 * Computes the frequency profile for a text given as a range of a character
+	 * array without using a scanner, regardless of the mode.
+	 * @param profile
+	 *        Empty profile
+	 * @param text
+	 *        Characters
+	 * @param off
+	 *        Start of the text
+	 * @param len
+	 *        Length of the text
+	 */
+	public void computeProfile(Profile profile, char[] text, int off, int len) {
+		NGramCollector collector = this.getCollector();
+		collector.reset(profile);
+		collector.add(text, off, len);
+		collector.flush();
+		profile.setFinalized();
+	}
+
+	/**
+	 * Computes the frequency profile for a text stored in a file, which is
+	 * read with the platform's default charset.
 	 * @param profile
 	 *        Empty profile
 	 * @param file
 	 *        File with text
 	 */
 	public void computeProfile(Profile profile, File file) throws FileNotFoundException {
+		if (this.isStreaming()) {
+			if (!file.isFile())
+				throw new FileNotFoundException(file.getPath());
+			try {
+				this.computeProfile(profile, file, Charset.defaultCharset());
+			} catch (IOException e) {
+				// like the scanner, treat the text as ending here
+				this.getCollector().flush();
+				profile.setFinalized();
+			}
+			return;
+		}
 		Scanner scanner = new Scanner(file);
 		this.computeProfile(profile, scanner);
 	}
 
+	/**
+	 * Computes the frequency profile for a text stored in a file without using
+	 * a scanner, regardless of the mode. The file is read through a channel
+	 * and decoded with the given charset.
+	 * @param profile
+	 *        Empty profile
+	 * @param file
+	 *        File with text
+	 * @param charset
+	 *        Encoding of the file
+	 * @return Number of bytes read
+	 * @throws IOException
+	 *         if the file cannot be read
+	 */
+	public long computeProfile(Profile profile, File file, Charset charset) throws IOException {
+		if (this.decoder == null || !this.decoder.getCharset().equals(charset)) {
+			this.decoder = new ChannelDecoder(charset);
+		}
+		NGramCollector collector = this.getCollector();
+		collector.reset(profile);
+		long bytes = this.decoder.decode(file, collector);
+		collector.flush();
+		profile.setFinalized();
+		return bytes;
+	}
+
+	/**
+	 * Returns the collector of the streaming mode, which is created on demand.
+	 * @return Collector
+	 */
+	private NGramCollector getCollector() {
+		if (this.collector == null) {
+			this.collector = new NGramCollector(this.minLen, this.maxLen);
+		}
+		return this.collector;
+	}
+
 	/**
 	 * Computes the frequency profile for a text given as a scanner.
 	 * @param profile
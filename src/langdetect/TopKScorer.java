@@ -0,0 +1,154 @@
+package langdetect;
+
+import java.util.Collection;
+
+/**
+ * This class finds the k language profiles closest to a query profile. The
+ * best candidates found so far are kept in a bounded list sorted by distance.
+ * Once it is full, the calculation of a candidate's out-of-place measure stops
+ * as soon as it reaches the distance of the k-th best candidate, because such
+ * a candidate cannot enter the list anymore. Candidates with equal distance
+ * keep the order of the profile collection, so the ranking is the same as the
+ * one obtained by sorting all distances.
+ * <p>
+ * The query is resolved to the ids of a {@link NGramDictionary} once, so each
+ * candidate's measure only indexes arrays instead of hashing every n-gram per
+ * language. A scorer is not thread-safe.
+ *
+ * @author Tobias Falke
+ *
+ */
+public class TopKScorer {
+
+	/**
+	 * Index of the language profiles
+	 */
+	private ProfileIndex index;
+	/**
+	 * n-gram ids of the current query
+	 */
+	private int[] ids = new int[Profile.cutOffPos];
+	/**
+	 * Number of best profiles to find
+	 */
+	private int k;
+	/**
+	 * Number of calculated out-of-place measures
+	 */
+	private long comparisons;
+	/**
+	 * Number of out-of-place measures that were stopped early
+	 */
+	private long pruned;
+
+	/**
+	 * Creates a scorer for the given language profiles.
+	 * @param profiles
+	 *        Finalized language profiles
+	 * @param k
+	 *        Number of best profiles to find
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 * @throws IllegalArgumentException
+	 *         if k is not positive
+	 */
+	public TopKScorer(Collection<Profile> profiles, int k) throws IllegalStateException, IllegalArgumentException {
+		this(profiles, k, Profile.maxOoP);
+	}
+
+	/**
+	 * Creates a scorer for the given language profiles and out-of-place
+	 * measure of missing n-grams.
+	 * @param profiles
+	 *        Finalized language profiles
+	 * @param k
+	 *        Number of best profiles to find
+	 * @param maxOoP
+	 *        Out-of-place measure of n-grams missing in a language profile
+	 * @throws IllegalStateException
+	 *         if one of the profiles is not yet finalized
+	 * @throws IllegalArgumentException
+	 *         if k is not positive or maxOoP is invalid
+	 */
+	public TopKScorer(Collection<Profile> profiles, int k, int maxOoP) throws IllegalStateException,
+			IllegalArgumentException {
+		if (k < 1)
+			throw new IllegalArgumentException("k must be positive");
+		this.index = new ProfileIndex(profiles, false, maxOoP);
+		this.k = k;
+	}
+
+	/**
+	 * Returns the number of best profiles to find.
+	 * @return k
+	 */
+	public int getK() {
+		return this.k;
+	}
+
+	/**
+	 * Finds the closest language profiles to the query profile.
+	 * @param query
+	 *        Finalized query profile
+	 * @param best
+	 *        Array of at least length k receiving the closest profiles
+	 * @param distances
+	 *        Array of at least length k receiving their out-of-place measures
+	 * @return Number of profiles found, which is k, unless there are less
+	 *         language profiles
+	 * @throws IllegalStateException
+	 *         if the query profile is not yet finalized
+	 */
+	public int score(Profile query, Profile[] best, int[] distances) throws IllegalStateException {
+
+		if (query == null || !query.isFinalized())
+			throw new IllegalStateException("Profile is not yet finalized");
+		int size = query.getNumberOfNGrams();
+		if (this.ids.length < size) {
+			this.ids = new int[size];
+		}
+		this.index.getDictionary().resolve(query, this.ids);
+
+		int found = 0;
+		for (int langId = 0; langId < this.index.size(); langId++) {
+
+			// stop at the k-th best distance once enough candidates are found
+			int bound = found < this.k ? Integer.MAX_VALUE : distances[this.k - 1];
+			int dist = this.index.getOutOfPlaceMeasure(this.ids, size, langId, bound);
+			this.comparisons++;
+			if (dist >= bound) {
+				this.pruned++;
+				continue;
+			}
+
+			// insert behind all candidates with smaller or equal distance
+			int i = found < this.k ? found++ : this.k - 1;
+			while (i > 0 && distances[i - 1] > dist) {
+				best[i] = best[i - 1];
+				distances[i] = distances[i - 1];
+				i--;
+			}
+			best[i] = this.index.getProfile(langId);
+			distances[i] = dist;
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the number of out-of-place measures calculated so far.
+	 * @return Number of comparisons
+	 */
+	public long getComparisons() {
+		return this.comparisons;
+	}
+
+	/**
+	 * Returns the number of out-of-place measures that were stopped early
+	 * because the candidate could not be among the best k.
+	 * @return Number of pruned comparisons
+	 */
+	public long getPrunedComparisons() {
+		return this.pruned;
+	}
+
+}
@@ -0,0 +1,66 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit-Test for batch detection
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class BatchDetectorTest {
+
+	@Test
+	public void shouldKeepInputOrder() throws IOException {
+
+		Tokenizer tok = new Tokenizer();
+		List<Profile> profiles = new ArrayList<Profile>();
+		String[] texts = { "the house is on the hill", "das Haus ist auf dem Hügel", "la casa está en la colina" };
+		for (String text : texts) {
+			Profile p = new Profile(text.substring(0, 3).trim());
+			tok.computeProfile(p, text);
+			profiles.add(p);
+		}
+		Detector detector = new Detector(profiles);
+		ProfileIndex index = detector.getIndex();
+
+		// many small batches on several threads
+		StringBuilder input = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		String[] queries = { "the hill", "Haus", "la casa", "123" };
+		for (int i = 0; i < 500; i++) {
+			String query = queries[i % queries.length];
+			input.append(query).append('\n');
+			Profile queryProfile = new Profile("");
+			try {
+				tok.computeProfile(queryProfile, query);
+			} catch (IllegalStateException e) {
+				expected.append("-\n");
+				continue;
+			}
+			int[] distances = index.getOutOfPlaceMeasures(queryProfile);
+			int[] best = new int[2];
+			Detector.selectBest(distances, index.size(), best, 2);
+			expected.append(index.getProfile(best[0]).getName()).append('\t').append(distances[best[0]]);
+			expected.append('\t').append(index.getProfile(best[1]).getName()).append('\t').append(distances[best[1]]);
+			expected.append('\n');
+		}
+
+		BatchDetector batch = new BatchDetector(detector, 4, 2);
+		batch.setBatchSize(7);
+		StringWriter output = new StringWriter();
+		long records = batch.run(new BufferedReader(new StringReader(input.toString())), output);
+
+		assertEquals(records, 500);
+		assertEquals(output.toString(), expected.toString());
+	}
+}
@@ -0,0 +1,93 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for decoding files through channels
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class ChannelDecoderTest {
+
+	private static final String text = "Das Haus ist auf dem Hügel. Ça coûte 5 €, señor! Καλημέρα κόσμε";
+
+	private File file;
+	private Charset utf8 = Charset.forName("UTF-8");
+
+	@Before
+	public void setUp() throws IOException {
+		this.file = File.createTempFile("decoder", ".txt");
+		Files.write(this.file.toPath(), text.getBytes(this.utf8));
+	}
+
+	@After
+	public void tearDown() {
+		this.file.delete();
+	}
+
+	@Test
+	public void shouldMatchTextAcrossBufferBoundaries() throws IOException {
+
+		Profile expected = new Profile("", true);
+		new Tokenizer(1, 5, true).computeProfile(expected, (CharSequence) text);
+
+		// multi-byte characters are split between reads with small buffers
+		for (int bufferSize : new int[] { 16, 17, 19, 1 << 20 }) {
+			ChannelDecoder decoder = new ChannelDecoder(this.utf8, bufferSize);
+			NGramCollector collector = new NGramCollector(1, 5);
+			Profile profile = new Profile("", true);
+			collector.reset(profile);
+			assertEquals(decoder.decode(this.file, collector), this.file.length());
+			collector.flush();
+			profile.setFinalized();
+			assertEquals(profile.getOutOfPlaceMeasure(expected), 0);
+			assertEquals(profile.getNumberOfNGrams(), expected.getNumberOfNGrams());
+		}
+	}
+
+	@Test
+	public void shouldDecodeRange() throws IOException {
+
+		int start = "Das ".length();
+		int end = "Das Haus ist".length();
+		Profile expected = new Profile("", true);
+		new Tokenizer().computeProfile(expected, text.substring(start, end));
+
+		FileInputStream in = new FileInputStream(this.file);
+		try {
+			NGramCollector collector = new NGramCollector(1, 5);
+			Profile profile = new Profile("", true);
+			collector.reset(profile);
+			new ChannelDecoder(this.utf8, 16).decode(in.getChannel(), start, end, collector);
+			collector.flush();
+			profile.setFinalized();
+			assertEquals(profile.getOutOfPlaceMeasure(expected), 0);
+			assertEquals(in.getChannel().position(), 0);
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void tokenizerShouldMatchScanner() throws IOException {
+
+		Profile scanned = new Profile("");
+		new Tokenizer().computeProfile(scanned, text);
+		Profile read = new Profile("");
+		assertEquals(new Tokenizer().computeProfile(read, this.file, this.utf8), this.file.length());
+		assertEquals(read.getOutOfPlaceMeasure(scanned), 0);
+		assertEquals(read.getNumberOfNGrams(), scanned.getNumberOfNGrams());
+	}
+
+}
@@ -0,0 +1,114 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for scoring with a tree of language clusters
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class ClusterScorerTest {
+
+	private static final String[] queries = { "the house is on the hill", "das Haus ist auf dem Hügel",
+			"la casa está en la colina", "la maison est sur la colline", "talo on mäellä", "huset ligger på bakken",
+			"a casa fica na colina", "het huis staat op de heuvel", "la casa è sulla collina" };
+
+	private List<Profile> profiles;
+
+	@Before
+	public void setUp() throws IOException {
+		Charset utf8 = Charset.forName("UTF-8");
+		File[] files = new File("data/training").listFiles();
+		Arrays.sort(files);
+		this.profiles = new ArrayList<Profile>();
+		for (File file : files) {
+			Profile p = new Profile(file.getName().substring(0, 2), true);
+			new Tokenizer().computeProfile(p, new String(Files.readAllBytes(file.toPath()), utf8));
+			this.profiles.add(p);
+		}
+	}
+
+	@Test
+	public void shouldGroupLanguageFamilies() {
+		ClusterScorer scorer = new ClusterScorer(this.profiles, 3, 4, Profile.maxOoP);
+		assertEquals(scorer.toString(), "fi, (es, fr, it, pt), (da, de, nl), en");
+	}
+
+	@Test
+	public void shouldMatchExhaustiveSearchWithFullBeam() {
+
+		ClusterScorer scorer = new ClusterScorer(this.profiles, 3, 2, Profile.maxOoP);
+		scorer.setBeamWidth(this.profiles.size());
+		scorer.setVerify(true);
+		TopKScorer exhaustive = new TopKScorer(this.profiles, 3);
+		for (String text : queries) {
+			Profile query = new Profile("");
+			new Tokenizer().computeProfile(query, text);
+			Profile[] best = new Profile[3];
+			int[] distances = new int[3];
+			Profile[] expected = new Profile[3];
+			int[] expectedDistances = new int[3];
+			assertEquals(scorer.score(query, best, distances), 3);
+			exhaustive.score(query, expected, expectedDistances);
+			for (int i = 0; i < 3; i++) {
+				assertTrue(best[i] == expected[i]);
+				assertEquals(distances[i], expectedDistances[i]);
+			}
+		}
+		assertEquals(scorer.getQueries(), queries.length);
+		assertEquals(scorer.getRecall(), 1.0, 0.0);
+	}
+
+	@Test
+	public void shouldScoreWithConfiguredMaxOoP() {
+
+		ClusterScorer scorer = new ClusterScorer(this.profiles, 1, 2, 20);
+		scorer.setBeamWidth(this.profiles.size());
+		scorer.setVerify(true);
+		for (String text : queries) {
+			Profile query = new Profile("");
+			new Tokenizer().computeProfile(query, text);
+			Profile[] best = new Profile[1];
+			int[] distances = new int[1];
+			scorer.score(query, best, distances);
+			assertEquals(distances[0], query.getOutOfPlaceMeasure(best[0], Integer.MAX_VALUE, 20));
+		}
+		assertEquals(scorer.getRecall(), 1.0, 0.0);
+	}
+
+	@Test
+	public void narrowBeamShouldScoreLess() {
+
+		ClusterScorer full = new ClusterScorer(this.profiles, 1, 2, Profile.maxOoP);
+		full.setBeamWidth(this.profiles.size());
+		ClusterScorer narrow = new ClusterScorer(this.profiles, 1, 2, Profile.maxOoP);
+		narrow.setBeamWidth(1);
+		narrow.setVerify(true);
+		for (String text : queries) {
+			Profile query = new Profile("");
+			new Tokenizer().computeProfile(query, text);
+			full.score(query, new Profile[1], new int[1]);
+			narrow.score(query, new Profile[1], new int[1]);
+		}
+		assertTrue(narrow.getComparisons() < full.getComparisons());
+		assertTrue(narrow.getRecall() > 0.5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectSmallBranching() {
+		new ClusterScorer(this.profiles, 1, 1, Profile.maxOoP);
+	}
+}
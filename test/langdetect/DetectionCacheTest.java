@@ -0,0 +1,133 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for the result cache
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class DetectionCacheTest {
+
+	private Detector detector;
+
+	@Before
+	public void setUp() {
+		Tokenizer tok = new Tokenizer();
+		List<Profile> profiles = new ArrayList<Profile>();
+		String[] texts = { "the house is on the hill", "das Haus ist auf dem Hügel", "la casa está en la colina" };
+		String[] names = { "en", "de", "es" };
+		for (int i = 0; i < texts.length; i++) {
+			Profile p = new Profile(names[i]);
+			tok.computeProfile(p, texts[i]);
+			profiles.add(p);
+		}
+		this.detector = new Detector(profiles);
+	}
+
+	@Test
+	public void shouldReturnCachedResults() {
+
+		DetectionCache cache = new DetectionCache(this.detector, 2, 100, 1 << 20);
+		List<DetectionResult> first = cache.detectTopK("the hill", 2);
+		List<DetectionResult> second = cache.detectTopK("  the \t hill\n", 2);
+
+		assertTrue(first == second);
+		assertEquals(first.toString(), this.detector.detectTopK("the hill", 2).toString());
+		assertEquals(cache.detect("the hill").toString(), first.get(0).toString());
+		assertEquals(cache.getHits(), 2);
+		assertEquals(cache.getMisses(), 1);
+		assertEquals(cache.size(), 1);
+
+		// more results than cached are detected directly
+		assertEquals(cache.detectTopK("the hill", 3).size(), 3);
+		assertEquals(cache.getHits() + cache.getMisses(), 3);
+	}
+
+	@Test
+	public void shouldNormalizeWhitespace() {
+		assertEquals(DetectionCache.normalize(" a  b\t\nc "), "a b c");
+		assertEquals(DetectionCache.normalize("   "), "");
+	}
+
+	@Test
+	public void shouldEvictLeastRecentlyUsed() {
+
+		DetectionCache cache = new DetectionCache(this.detector, 1, 2, 1 << 20);
+		cache.detect("Haus");
+		cache.detect("casa");
+		cache.detect("Haus");
+		cache.detect("hill");
+		assertEquals(cache.size(), 2);
+		assertEquals(cache.getEvictions(), 1);
+
+		// "casa" was used least recently and has been evicted
+		cache.detect("Haus");
+		cache.detect("hill");
+		assertEquals(cache.getHits(), 3);
+		cache.detect("casa");
+		assertEquals(cache.getMisses(), 4);
+	}
+
+	@Test
+	public void shouldEvictByWeight() {
+
+		DetectionCache cache = new DetectionCache(this.detector, 1, 100, 300);
+		String[] queries = { "the house", "the hill", "das Haus", "la casa", "la colina" };
+		for (String query : queries) {
+			cache.detect(query);
+		}
+		assertTrue(cache.getWeight() <= 300);
+		assertTrue(cache.size() < queries.length);
+		assertEquals(cache.getEvictions(), queries.length - cache.size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldRejectTextWithoutNGrams() {
+		new DetectionCache(this.detector, 1, 10, 1000).detect("123");
+	}
+
+	@Test
+	public void shouldCacheConcurrently() throws Exception {
+
+		final DetectionCache cache = new DetectionCache(this.detector, 2, 1000, 1 << 20);
+		final String[] queries = { "the hill", "Haus", "la casa", "auf dem", "the house" };
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(pool.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						for (int i = 0; i < 1000; i++) {
+							String query = queries[i % queries.length];
+							String expected = DetectionCacheTest.this.detector.detectTopK(query, 2).toString();
+							if (!cache.detectTopK(query, 2).toString().equals(expected))
+								return false;
+						}
+						return true;
+					}
+				}));
+			}
+			for (Future<Boolean> future : futures) {
+				assertEquals(future.get(), true);
+			}
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(cache.getHits() + cache.getMisses(), 8000);
+		assertEquals(cache.size(), queries.length);
+	}
+}
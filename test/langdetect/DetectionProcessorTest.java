@@ -0,0 +1,185 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for the reactive detection pipeline
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class DetectionProcessorTest {
+
+	private Detector detector;
+
+	@Before
+	public void setUp() {
+		Tokenizer tok = new Tokenizer();
+		List<Profile> profiles = new ArrayList<Profile>();
+		String[] texts = { "the house is on the hill", "das Haus ist auf dem Hügel", "la casa está en la colina" };
+		for (String text : texts) {
+			Profile p = new Profile(text.substring(0, 3).trim());
+			tok.computeProfile(p, text);
+			profiles.add(p);
+		}
+		this.detector = new Detector(profiles);
+	}
+
+	@Test
+	public void shouldKeepInputOrder() throws InterruptedException {
+
+		DetectionProcessor processor = new DetectionProcessor(this.detector, 4, 2);
+		processor.setBufferSize(32);
+		processor.setBatchSize(5);
+		Collector collector = new Collector(3);
+		processor.subscribe(collector);
+
+		SubmissionPublisher<String> publisher = new SubmissionPublisher<String>();
+		publisher.subscribe(processor);
+		String[] queries = { "the hill", "Haus", "la casa", "123" };
+		for (int i = 0; i < 500; i++) {
+			publisher.submit(queries[i % queries.length]);
+		}
+		publisher.close();
+
+		assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+		assertTrue(collector.error == null);
+		assertEquals(collector.results.size(), 500);
+		for (int i = 0; i < 500; i++) {
+			String query = queries[i % queries.length];
+			List<DetectionResult> result = collector.results.get(i);
+			if (query.equals("123")) {
+				assertTrue(result.isEmpty());
+			} else {
+				assertEquals(result.toString(), this.detector.detectTopK(query, 2).toString());
+			}
+		}
+	}
+
+	@Test
+	public void shouldRequestOnlyWhatIsDelivered() throws InterruptedException {
+
+		DetectionProcessor processor = new DetectionProcessor(this.detector, 2, 1);
+		processor.setBufferSize(8);
+		Collector collector = new Collector(0);
+		processor.subscribe(collector);
+		final AtomicLong requested = new AtomicLong();
+		processor.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+				requested.addAndGet(n);
+			}
+
+			@Override
+			public void cancel() {
+			}
+		});
+		assertEquals(requested.get(), 8);
+
+		// without demand, the buffer fills up and nothing more is requested
+		for (int i = 0; i < 8; i++) {
+			processor.onNext("the house");
+		}
+		Thread.sleep(200);
+		assertEquals(processor.getPending(), 8);
+		assertEquals(requested.get(), 8);
+		assertTrue(collector.results.isEmpty());
+
+		// every delivered result frees one record
+		collector.subscription.request(3);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (requested.get() < 11 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(collector.results.size(), 3);
+		assertEquals(requested.get(), 11);
+		assertEquals(processor.getPending(), 5);
+
+		collector.subscription.request(Long.MAX_VALUE);
+		processor.onComplete();
+		assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+		assertEquals(collector.results.size(), 8);
+	}
+
+	@Test
+	public void shouldFailOnOverflow() throws InterruptedException {
+
+		DetectionProcessor processor = new DetectionProcessor(this.detector, 1, 1);
+		processor.setBufferSize(2);
+		Collector collector = new Collector(0);
+		processor.subscribe(collector);
+		final AtomicLong cancelled = new AtomicLong();
+		processor.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+			}
+
+			@Override
+			public void cancel() {
+				cancelled.incrementAndGet();
+			}
+		});
+		for (int i = 0; i < 3; i++) {
+			processor.onNext("the house");
+		}
+		assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+		assertTrue(collector.error instanceof IllegalStateException);
+		assertEquals(cancelled.get(), 1);
+	}
+
+	/**
+	 * Subscriber collecting the results
+	 */
+	private static class Collector implements Flow.Subscriber<List<DetectionResult>> {
+
+		private long initialRequest;
+		private Flow.Subscription subscription;
+		private List<List<DetectionResult>> results = Collections
+				.synchronizedList(new ArrayList<List<DetectionResult>>());
+		private volatile Throwable error;
+		private CountDownLatch done = new CountDownLatch(1);
+
+		public Collector(long initialRequest) {
+			this.initialRequest = initialRequest;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (this.initialRequest > 0)
+				subscription.request(this.initialRequest);
+		}
+
+		@Override
+		public void onNext(List<DetectionResult> item) {
+			this.results.add(item);
+			// keep a small, steady demand
+			if (this.initialRequest > 0)
+				this.subscription.request(1);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			this.error = throwable;
+			this.done.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			this.done.countDown();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for the HTTP server
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class DetectionServerTest {
+
+	private final Charset utf8 = Charset.forName("UTF-8");
+	private List<Profile> profiles;
+	private DetectionServer server;
+
+	@Before
+	public void setUp() throws IOException {
+		Tokenizer tok = new Tokenizer();
+		List<Profile> profiles = new ArrayList<Profile>();
+		this.profiles = profiles;
+		String[] texts = { "the house is on the hill", "das Haus ist auf dem Hügel" };
+		String[] names = { "en", "de" };
+		for (int i = 0; i < texts.length; i++) {
+			Profile p = new Profile(names[i]);
+			tok.computeProfile(p, texts[i]);
+			profiles.add(p);
+		}
+		this.server = new DetectionServer(new Detector(profiles), 0);
+		this.server.setMaxRequestSize(100);
+		this.server.start();
+	}
+
+	@After
+	public void tearDown() {
+		this.server.stop(0);
+	}
+
+	@Test
+	public void shouldDetectSingleText() throws IOException {
+		String[] response = this.post("/detect?k=1", "the hill");
+		assertEquals(response[0], "200");
+		assertEquals(response[1], "{\"results\":[{\"language\":\"en\",\"distance\":326}]}");
+	}
+
+	@Test
+	public void shouldDetectBatch() throws IOException {
+		String[] response = this.post("/batch?k=1", "the hill\n123\ndas Haus\n");
+		assertEquals(response[0], "200");
+		assertEquals(response[1], "[{\"results\":[{\"language\":\"en\",\"distance\":326}]},null,"
+				+ "{\"results\":[{\"language\":\"de\",\"distance\":481}]}]");
+	}
+
+	@Test
+	public void replacedDetectorsShouldBeCollected() throws IOException, InterruptedException {
+
+		// every detector keeps the scratch states of its requests
+		List<WeakReference<Detector>> replaced = new ArrayList<WeakReference<Detector>>();
+		for (int i = 0; i < 5; i++) {
+			Detector detector = new Detector(this.profiles);
+			this.server.setDetector(detector, new DetectionCache(detector, 3, 100, 1 << 20));
+			assertEquals(this.post("/detect?k=1", "the hill")[0], "200");
+			assertEquals(this.post("/detect?k=1", "das Haus")[0], "200");
+			replaced.add(new WeakReference<Detector>(detector));
+		}
+		this.server.setDetector(new Detector(this.profiles), null);
+		for (WeakReference<Detector> ref : replaced) {
+			assertTrue(DetectorTest.isCollected(ref));
+		}
+	}
+
+	@Test
+	public void shouldRejectInvalidRequests() throws IOException {
+		assertEquals(this.post("/detect", "123")[0], "422");
+		assertEquals(this.post("/detect?k=0", "the hill")[0], "400");
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			large.append("the hill ");
+		}
+		assertEquals(this.post("/detect", large.toString())[0], "413");
+
+		HttpURLConnection get = (HttpURLConnection) this.url("/detect").openConnection();
+		assertEquals(get.getResponseCode(), 405);
+	}
+
+	@Test
+	public void shouldSwapDetector() throws IOException {
+		Profile fr = new Profile("fr");
+		new Tokenizer().computeProfile(fr, "la maison est sur la colline");
+		List<Profile> profiles = new ArrayList<Profile>();
+		profiles.add(fr);
+		this.server.setDetector(new Detector(profiles), null);
+		String[] response = this.post("/detect?k=3", "the hill");
+		assertEquals(response[0], "200");
+		assertEquals(response[1].startsWith("{\"results\":[{\"language\":\"fr\""), true);
+		assertEquals(response[1].indexOf("\"en\""), -1);
+	}
+
+	private URL url(String path) throws IOException {
+		return new URL("http://localhost:" + this.server.getPort() + path);
+	}
+
+	/**
+	 * Posts a text and returns status and body of the response.
+	 */
+	private String[] post(String path, String text) throws IOException {
+
+		HttpURLConnection con = (HttpURLConnection) this.url(path).openConnection();
+		con.setRequestMethod("POST");
+		con.setDoOutput(true);
+		OutputStream out = con.getOutputStream();
+		out.write(text.getBytes(this.utf8));
+		out.close();
+
+		int status = con.getResponseCode();
+		InputStream in = status < 400 ? con.getInputStream() : con.getErrorStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buf = new byte[1024];
+		int read;
+		while ((read = in.read(buf)) > 0) {
+			body.write(buf, 0, read);
+		}
+		in.close();
+		return new String[] { String.valueOf(status), new String(body.toByteArray(), this.utf8) };
+	}
+}
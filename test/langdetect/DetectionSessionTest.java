@@ -0,0 +1,73 @@
+package langdetect;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for streaming detection sessions
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class DetectionSessionTest {
+
+	private ProfileIndex index;
+	private String text;
+
+	@Before
+	public void setUp() throws IOException {
+		Charset utf8 = Charset.forName("UTF-8");
+		List<Profile> profiles = new ArrayList<Profile>();
+		for (File file : new File("data/training").listFiles()) {
+			Profile p = new Profile(file.getName().substring(0, 2), true);
+			new Tokenizer().computeProfile(p, new String(Files.readAllBytes(file.toPath()), utf8));
+			profiles.add(p);
+		}
+		this.index = new ProfileIndex(profiles);
+		this.text = new String(Files.readAllBytes(new File("data/training/de.txt").toPath()), utf8);
+	}
+
+	@Test
+	public void shouldStopEarly() {
+
+		DetectionSession session = new DetectionSession(this.index);
+		session.setInterval(500);
+		boolean more = true;
+		for (int pos = 0; pos < this.text.length() && more; pos += 100) {
+			more = session.add(this.text.subSequence(pos, Math.min(pos + 100, this.text.length())));
+		}
+
+		assertTrue(session.isDecided());
+		assertTrue(session.getConsumed() < this.text.length() / 2);
+		assertEquals(session.finish().getName(), "de");
+	}
+
+	@Test
+	public void shouldMatchFullDetection() {
+
+		// never stop early
+		DetectionSession session = new DetectionSession(this.index);
+		session.setThreshold(1);
+		char[] chars = this.text.toCharArray();
+		for (int pos = 0; pos < chars.length; pos += 333) {
+			session.add(chars, pos, Math.min(333, chars.length - pos));
+		}
+		session.finish();
+
+		Profile query = new Profile("", true);
+		new Tokenizer().computeProfile(query, this.text);
+		assertEquals(session.getConsumed(), chars.length);
+		assertArrayEquals(session.getOutOfPlaceMeasures(), this.index.getOutOfPlaceMeasures(query));
+	}
+}
@@ -0,0 +1,104 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Unit-Test for detection metrics
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class DetectorMetricsTest {
+
+	@Test
+	public void shouldBucketDurations() {
+
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(1000);
+		}
+		histogram.record(1000000);
+
+		assertEquals(histogram.getCount(), 100);
+		assertEquals(histogram.getTotal(), 99 * 1000 + 1000000);
+		// 1000 is in the bucket up to 1024, 1000000 in the one up to 2^20
+		assertEquals(histogram.getBuckets()[10], 99);
+		assertEquals(histogram.getPercentile(50), 1024);
+		assertEquals(histogram.getPercentile(99), 1024);
+		assertEquals(histogram.getPercentile(100), 1 << 20);
+
+		histogram.reset();
+		assertEquals(histogram.getCount(), 0);
+		assertEquals(histogram.getPercentile(50), 0);
+	}
+
+	@Test
+	public void shouldCountQueries() throws Exception {
+
+		List<Profile> profiles = new ArrayList<Profile>();
+		Profile en = new Profile("en");
+		new Tokenizer().computeProfile(en, "the house is on the hill");
+		profiles.add(en);
+		DetectorMetrics metrics = new DetectorMetrics();
+		Detector detector = new Detector(profiles, metrics);
+
+		detector.detect("the hill");
+		detector.detect("hill");
+		try {
+			detector.detect("123");
+		} catch (IllegalStateException e) {
+			// invalid query
+		}
+
+		assertEquals(metrics.getQueries(), 3);
+		assertEquals(metrics.getInvalidQueries(), 1);
+		// " the " with 13 and " hill " with 18 n-grams of length 1 to 5
+		assertEquals(metrics.getNGrams(), 13 + 18 + 18);
+		assertEquals(metrics.getComparisons(), 2);
+		assertEquals(metrics.getDetectHistogram().getCount(), 2);
+		assertTrue(metrics.getDetectMeanMicros() >= metrics.getScoreMeanMicros());
+
+		// readable through JMX
+		String name = "langdetect:type=Detector,name=test";
+		metrics.register(name);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			assertEquals(server.getAttribute(new ObjectName(name), "Queries"), 3L);
+			server.invoke(new ObjectName(name), "reset", null, null);
+			assertEquals(metrics.getQueries(), 0);
+		} finally {
+			server.unregisterMBean(new ObjectName(name));
+		}
+	}
+
+	@Test
+	public void shouldCountCacheHits() {
+
+		List<Profile> profiles = new ArrayList<Profile>();
+		Profile en = new Profile("en");
+		new Tokenizer().computeProfile(en, "the house is on the hill");
+		profiles.add(en);
+		DetectorMetrics metrics = new DetectorMetrics();
+		DetectionCache cache = new DetectionCache(new Detector(profiles, metrics), 3, 100, 1 << 20);
+
+		cache.detect("the hill");
+		cache.detect("the  hill");
+		cache.detect("the hill");
+		assertEquals(metrics.getQueries(), 3);
+		assertEquals(metrics.getCachedQueries(), 2);
+		assertEquals(metrics.getDetectHistogram().getCount(), 3);
+		// only the miss was tokenized and scored
+		assertEquals(metrics.getScoreHistogram().getCount(), 1);
+		assertEquals(metrics.getNGrams(), 13 + 18);
+	}
+}
@@ -0,0 +1,200 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for the thread-safe detector
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class DetectorTest {
+
+	private List<Profile> profiles;
+	private Detector detector;
+
+	@Before
+	public void setUp() {
+		Tokenizer tok = new Tokenizer();
+		this.profiles = new ArrayList<Profile>();
+		String[] texts = { "the house is on the hill", "das Haus ist auf dem Hügel", "la casa está en la colina" };
+		String[] names = { "en", "de", "es" };
+		for (int i = 0; i < texts.length; i++) {
+			Profile p = new Profile(names[i]);
+			tok.computeProfile(p, texts[i]);
+			this.profiles.add(p);
+		}
+		this.detector = new Detector(this.profiles);
+	}
+
+	@Test
+	public void shouldDetectLikeIndex() {
+
+		String query = "the hill is high";
+		Profile queryProfile = new Profile("");
+		new Tokenizer().computeProfile(queryProfile, query);
+		int[] distances = this.detector.getIndex().getOutOfPlaceMeasures(queryProfile);
+
+		List<DetectionResult> results = this.detector.detectTopK(query, 3);
+		assertEquals(results.size(), 3);
+		assertEquals(results.get(0).getName(), "en");
+		for (DetectionResult result : results) {
+			int langId = this.profiles.indexOf(result.getProfile());
+			assertEquals(result.getOutOfPlaceMeasure(), distances[langId]);
+		}
+		assertEquals(this.detector.detect(query).toString(), results.get(0).toString());
+	}
+
+	@Test
+	public void shouldReuseScratchState() {
+
+		// results must not depend on previous queries of the same thread
+		DetectionResult first = this.detector.detect("la casa");
+		this.detector.detectTopK("das Haus ist auf dem Hügel und der Hügel ist hoch", 2);
+		DetectionResult again = this.detector.detect("la casa");
+		assertEquals(again.getName(), "es");
+		assertEquals(again.getOutOfPlaceMeasure(), first.getOutOfPlaceMeasure());
+		assertEquals(this.detector.detectTopK("la casa", 5).size(), 3);
+	}
+
+	@Test
+	public void shouldReuseScratchStateOnNewThreads() throws InterruptedException {
+
+		// every query runs on a new thread, as with virtual threads
+		for (int i = 0; i < 5; i++) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					DetectorTest.this.detector.detect("la casa");
+				}
+			});
+			thread.start();
+			thread.join();
+		}
+		assertEquals(this.detector.getIdleScratchStates(), 1);
+
+		this.detector.setPoolSize(1);
+		assertEquals(this.detector.getIdleScratchStates(), 0);
+		this.detector.detect("la casa");
+		assertEquals(this.detector.getIdleScratchStates(), 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectEmptyPool() {
+		this.detector.setPoolSize(0);
+	}
+
+	@Test
+	public void shouldUseConfiguredSettings() {
+
+		String query = "the hill is high";
+		Detector detector = new Detector(this.profiles, 1, 3, 10, 20, null);
+		assertEquals(detector.getMinLength(), 1);
+		assertEquals(detector.getMaxLength(), 3);
+		assertEquals(detector.getCutOff(), 10);
+		assertEquals(detector.getIndex().getMaxOoP(), 20);
+
+		Profile queryProfile = new Profile("", true);
+		queryProfile.setCutOff(10);
+		new Tokenizer(1, 3).computeProfile(queryProfile, query);
+		assertEquals(queryProfile.getNumberOfNGrams(), 10);
+		int[] distances = new ProfileIndex(this.profiles, 20).getOutOfPlaceMeasures(queryProfile);
+		for (DetectionResult result : detector.detectTopK(query, 3)) {
+			int langId = this.profiles.indexOf(result.getProfile());
+			assertEquals(result.getOutOfPlaceMeasure(), distances[langId]);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectInvalidSettings() {
+		new Detector(this.profiles, 3, 2, 300, 300, null);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldRejectTextWithoutNGrams() {
+		this.detector.detect("123");
+	}
+
+	@Test
+	public void shouldDetectConcurrently() throws Exception {
+
+		final String[] queries = { "the hill", "Haus", "la casa", "auf dem", "the house" };
+		final String[] expected = new String[queries.length];
+		for (int i = 0; i < queries.length; i++) {
+			expected[i] = this.detector.detectTopK(queries[i], 2).toString();
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(pool.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						for (int i = 0; i < 1000; i++) {
+							int q = i % queries.length;
+							if (!DetectorTest.this.detector.detectTopK(queries[q], 2).toString().equals(expected[q]))
+								return false;
+						}
+						return true;
+					}
+				}));
+			}
+			for (Future<Boolean> future : futures) {
+				assertEquals(future.get(), true);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void shouldSelectBest() {
+
+		int[] distances = { 5, 3, 9, 3, 1 };
+		int[] best = new int[3];
+		assertEquals(Detector.selectBest(distances, distances.length, best, 3), 3);
+		assertEquals(best[0], 4);
+		assertEquals(best[1], 1);
+		assertEquals(best[2], 3);
+	}
+
+	@Test
+	public void discardedDetectorShouldBeCollected() throws InterruptedException {
+
+		// each detector keeps the scratch state of its query
+		List<WeakReference<Detector>> discarded = new ArrayList<WeakReference<Detector>>();
+		for (int i = 0; i < 5; i++) {
+			Detector detector = new Detector(this.profiles);
+			assertEquals(detector.detect("the hill is high").getName(), "en");
+			discarded.add(new WeakReference<Detector>(detector));
+		}
+		for (WeakReference<Detector> ref : discarded) {
+			assertTrue(isCollected(ref));
+		}
+	}
+
+	/**
+	 * Runs the garbage collector until the referent is collected, at most for
+	 * a few seconds.
+	 */
+	static boolean isCollected(WeakReference<?> ref) throws InterruptedException {
+		for (int i = 0; i < 50 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		return ref.get() == null;
+	}
+}
@@ -0,0 +1,94 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for bounded-memory counting
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class HeavyHitterSketchTest {
+
+	private String text;
+
+	@Before
+	public void setUp() throws IOException {
+		byte[] bytes = Files.readAllBytes(new File("data/training/en.txt").toPath());
+		this.text = new String(bytes, Charset.forName("UTF-8"));
+	}
+
+	@Test
+	public void shouldCountExactlyWithFreeCounters() {
+
+		Profile sketched = new Profile("en", new HeavyHitterSketch(1 << 16));
+		Profile exact = new Profile("en", true);
+		Tokenizer tok = new Tokenizer(1, 5, true);
+		tok.computeProfile(sketched, this.text);
+		tok.computeProfile(exact, this.text);
+
+		assertEquals(sketched.getSketch().getMinCount(), 0);
+		assertEquals(sketched.toString(), exact.toString());
+	}
+
+	@Test
+	public void shouldBoundErrors() {
+
+		HeavyHitterSketch small = new HeavyHitterSketch(500);
+		HeavyHitterSketch exact = new HeavyHitterSketch(1 << 16);
+		NGramCollector collector = new NGramCollector(1, 5);
+		collector.reset(new Profile("", small));
+		collector.add(this.text, 0, this.text.length());
+		collector.flush();
+		collector.reset(new Profile("", exact));
+		collector.add(this.text, 0, this.text.length());
+		collector.flush();
+		assertEquals(small.getTotal(), exact.getTotal());
+		assertEquals(small.size(), 500);
+
+		// estimates are never too small and too large by at most the error
+		for (int counter = 0; counter < exact.size(); counter++) {
+			long key = exact.keyAt(counter);
+			int count = exact.countAt(counter);
+			int estimate = small.getCount(key);
+			if (estimate > 0) {
+				assertTrue(estimate >= count);
+				assertTrue(estimate - small.getError(key) <= count);
+			} else {
+				assertTrue(count <= small.getMinCount());
+			}
+		}
+	}
+
+	@Test
+	public void shouldKeepTopOfSkewedStream() {
+
+		// Zipf-like counts with a long tail of rare keys
+		HeavyHitterSketch sketch = new HeavyHitterSketch(1000);
+		for (int round = 0; round < 20; round++) {
+			for (int i = 1; i <= 10000; i++) {
+				for (int j = 0; j < 100 / i; j++) {
+					sketch.add(i);
+				}
+				if (round % (i % 20 + 1) == 0)
+					sketch.add(100000 + round * 10000 + i);
+			}
+		}
+
+		long[] ranked = sketch.toTable().rank(50);
+		for (int i = 0; i < ranked.length; i++) {
+			assertEquals(ranked[i], i + 1);
+		}
+		assertEquals(sketch.getGuaranteed(10), 10);
+		assertTrue(sketch.getMaxError(50) <= sketch.getMinCount());
+	}
+}
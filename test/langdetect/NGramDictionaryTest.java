@@ -0,0 +1,92 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for n-gram dictionary
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class NGramDictionaryTest {
+
+	private List<Profile> profiles;
+	private Tokenizer tok;
+
+	@Before
+	public void setUp() {
+		this.tok = new Tokenizer();
+		this.profiles = new ArrayList<Profile>();
+		String[] texts = { "the house is on the hill", "das Haus ist auf dem Hügel" };
+		for (String text : texts) {
+			Profile p = new Profile(text.substring(0, 3), true);
+			this.tok.computeProfile(p, text);
+			this.profiles.add(p);
+		}
+	}
+
+	@Test
+	public void idsShouldBeDenseAndSorted() {
+
+		NGramDictionary dictionary = new NGramDictionary(this.profiles);
+		assertTrue(dictionary.size() > this.profiles.get(0).getNumberOfNGrams());
+		for (int id = 0; id < dictionary.size(); id++) {
+			assertEquals(dictionary.getId(dictionary.getKey(id)), id);
+			if (id > 0)
+				assertTrue(dictionary.getKey(id - 1) < dictionary.getKey(id));
+		}
+		for (Profile p : this.profiles) {
+			for (int pos = 0; pos < p.getNumberOfNGrams(); pos++) {
+				assertTrue(dictionary.getId(p.getKey(pos)) >= 0);
+			}
+		}
+	}
+
+	@Test
+	public void shouldResolveQuery() {
+
+		NGramDictionary dictionary = new NGramDictionary(this.profiles);
+		Profile query = new Profile("", true);
+		this.tok.computeProfile(query, "the xyz");
+
+		int[] ids = new int[query.getNumberOfNGrams()];
+		assertEquals(dictionary.resolve(query, ids), query.getNumberOfNGrams());
+		for (int pos = 0; pos < query.getNumberOfNGrams(); pos++) {
+			long key = query.getKey(pos);
+			if (ids[pos] >= 0)
+				assertEquals(dictionary.getKey(ids[pos]), key);
+			else
+				for (Profile p : this.profiles) {
+					assertEquals(p.getPosition(key), -1);
+				}
+		}
+		assertEquals(dictionary.getId(NGramKey.of("xyz")), -1);
+	}
+
+	@Test
+	public void positionsShouldMatchProfile() {
+
+		NGramDictionary dictionary = new NGramDictionary(this.profiles);
+		for (Profile p : this.profiles) {
+			short[] positions = dictionary.getPositions(p);
+			assertEquals(positions.length, dictionary.size());
+			for (int id = 0; id < dictionary.size(); id++) {
+				assertEquals(positions[id], p.getPosition(dictionary.getKey(id)));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownProfileShouldFail() {
+		NGramDictionary dictionary = new NGramDictionary(this.profiles.subList(0, 1));
+		dictionary.getPositions(this.profiles.get(1));
+	}
+
+}
@@ -0,0 +1,51 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit-Test for n-gram key encoding
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class NGramKeyTest {
+
+	@Test
+	public void shouldRestoreExactKeys() {
+		for (String gram : new String[] { "a", " a", "ä ", " über", "ωλ", "пр" }) {
+			long key = NGramKey.of(gram);
+			assertTrue(NGramKey.isExact(key));
+			assertEquals(NGramKey.toGram(key), gram);
+		}
+	}
+
+	@Test
+	public void shouldHashOtherKeys() {
+		// too long or outside of the exact range
+		long key1 = NGramKey.of("abcdef");
+		long key2 = NGramKey.of("中文");
+		assertFalse(NGramKey.isExact(key1));
+		assertFalse(NGramKey.isExact(key2));
+		assertTrue(key1 != key2);
+	}
+
+	@Test
+	public void shouldMatchArrayKeys() {
+		char[] buf = " hallo 中文 ".toCharArray();
+		assertEquals(NGramKey.of(buf, 1, 4), NGramKey.of("hall"));
+		assertEquals(NGramKey.of(buf, 0, 7), NGramKey.of(" hallo "));
+		assertEquals(NGramKey.of(buf, 7, 2), NGramKey.of("中文"));
+	}
+
+	@Test
+	public void shouldKeepAlphabeticalOrder() {
+		String[] grams = { " a", "a", "a ", "ab", "abc", "b", "ä" };
+		for (int i = 1; i < grams.length; i++) {
+			assertTrue(NGramKey.of(grams[i - 1]) < NGramKey.of(grams[i]));
+		}
+	}
+}
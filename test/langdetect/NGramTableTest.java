@@ -0,0 +1,61 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit-Test for the n-gram key table
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class NGramTableTest {
+
+	@Test
+	public void shouldRemoveKeys() {
+
+		NGramTable table = new NGramTable();
+		long[] keys = new long[5000];
+		Random random = new Random(42);
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = random.nextLong() | 1;
+			table.put(keys[i], i);
+		}
+
+		// remove every other key, the others must still be found
+		for (int i = 0; i < keys.length; i += 2) {
+			assertEquals(table.remove(keys[i]), i);
+		}
+		assertEquals(table.size(), keys.length / 2);
+		for (int i = 0; i < keys.length; i++) {
+			assertEquals(table.get(keys[i]), i % 2 == 0 ? -1 : i);
+		}
+		assertEquals(table.remove(keys[0]), -1);
+
+		// removed keys can be added again
+		for (int i = 0; i < keys.length; i += 2) {
+			table.put(keys[i], i);
+		}
+		for (int i = 0; i < keys.length; i++) {
+			assertEquals(table.get(keys[i]), i);
+		}
+	}
+
+	@Test
+	public void shouldRankByValue() {
+
+		NGramTable table = new NGramTable();
+		table.add(3, 5);
+		table.add(2, 7);
+		table.add(1, 5);
+		table.increment(4);
+		long[] ranked = table.rank(3);
+		assertEquals(ranked.length, 3);
+		assertEquals(ranked[0], 2);
+		assertEquals(ranked[1], 1);
+		assertEquals(ranked[2], 3);
+	}
+}
@@ -0,0 +1,75 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit-Test for parallel training
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class ParallelTrainerTest {
+
+	private final Charset utf8 = Charset.forName("UTF-8");
+
+	@Test
+	public void shouldMatchSequentialProfiles() throws IOException {
+
+		List<File> files = new ArrayList<File>();
+		List<String> names = new ArrayList<String>();
+		for (File file : new File("data/training").listFiles()) {
+			files.add(file);
+			names.add(file.getName());
+		}
+
+		// small chunks to force splitting
+		ParallelTrainer trainer = new ParallelTrainer(1, 5, this.utf8);
+		trainer.setChunkSize(1000);
+		trainer.setParallelism(4);
+		List<Profile> profiles = trainer.computeProfiles(files, names);
+
+		trainer.setPacked(false);
+		List<Profile> objectProfiles = trainer.computeProfiles(files, names);
+
+		for (int i = 0; i < files.size(); i++) {
+			String text = new String(Files.readAllBytes(files.get(i).toPath()), this.utf8);
+			Profile expected = new Profile(names.get(i));
+			new Tokenizer().computeProfile(expected, text);
+			assertEquals(profiles.get(i).toString(), expected.toString());
+			assertEquals(objectProfiles.get(i).toString(), expected.toString());
+		}
+	}
+
+	@Test
+	public void shouldNotSplitWithinCharacters() throws IOException {
+
+		File file = File.createTempFile("training", ".txt");
+		try {
+			String text = "Größe Übung ÄÖÜ äöü ß€ Лорем ипсум\n";
+			StringBuilder large = new StringBuilder();
+			for (int i = 0; i < 100; i++) {
+				large.append(text);
+			}
+			Files.write(file.toPath(), large.toString().getBytes(this.utf8));
+
+			ParallelTrainer trainer = new ParallelTrainer(1, 5, this.utf8);
+			trainer.setChunkSize(7);
+			Profile profile = trainer.computeProfile(file, "test");
+
+			Profile expected = new Profile("test");
+			new Tokenizer().computeProfile(expected, large.toString());
+			assertEquals(profile.toString(), expected.toString());
+		} finally {
+			file.delete();
+		}
+	}
+}
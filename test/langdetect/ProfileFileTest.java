@@ -0,0 +1,180 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for compiled profile files
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class ProfileFileTest {
+
+	private List<Profile> profiles;
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		Tokenizer tok = new Tokenizer();
+		this.profiles = new ArrayList<Profile>();
+		String[] texts = { "the house is on the hill", "das Haus ist auf dem Hügel" };
+		for (int i = 0; i < texts.length; i++) {
+			Profile p = new Profile("p" + i, i == 0);
+			tok.computeProfile(p, texts[i]);
+			this.profiles.add(p);
+		}
+		this.file = File.createTempFile("profiles", ".ldp");
+	}
+
+	@After
+	public void tearDown() {
+		this.file.delete();
+	}
+
+	@Test
+	public void shouldReadWrittenProfiles() throws IOException {
+
+		ProfileFile.write(this.profiles, this.file);
+		List<Profile> loaded = ProfileFile.read(this.file);
+
+		assertEquals(loaded.size(), this.profiles.size());
+		Profile query = new Profile("", true);
+		new Tokenizer().computeProfile(query, "the Haus");
+		for (int i = 0; i < loaded.size(); i++) {
+			Profile p = loaded.get(i);
+			assertTrue(p.isMapped());
+			assertTrue(p.isFinalized());
+			assertEquals(p.toString(), this.profiles.get(i).toString());
+			assertEquals(query.getOutOfPlaceMeasure(p), query.getOutOfPlaceMeasure(this.profiles.get(i)));
+			assertEquals(p.getOutOfPlaceMeasure(query), this.profiles.get(i).getOutOfPlaceMeasure(query));
+		}
+	}
+
+	@Test
+	public void shouldShareIndexOfFile() throws IOException {
+
+		ProfileFile.write(this.profiles, this.file);
+		List<Profile> loaded = ProfileFile.read(this.file);
+		ProfileIndex mapped = new ProfileIndex(loaded);
+		ProfileIndex heap = new ProfileIndex(this.profiles, false);
+		assertTrue(mapped.isMapped());
+		assertTrue(mapped.getDictionary().isMapped());
+		assertTrue(!heap.isMapped());
+		assertEquals(mapped.getDictionary().size(), heap.getDictionary().size());
+
+		Profile query = new Profile("", true);
+		new Tokenizer().computeProfile(query, "the Haus on dem hill");
+		assertTrue(Arrays.equals(mapped.getOutOfPlaceMeasures(query), heap.getOutOfPlaceMeasures(query)));
+		int[] ids = new int[query.getNumberOfNGrams()];
+		int size = mapped.getDictionary().resolve(query, ids);
+		for (int langId = 0; langId < loaded.size(); langId++) {
+			assertEquals(mapped.getOutOfPlaceMeasure(ids, size, langId, Integer.MAX_VALUE),
+					heap.getOutOfPlaceMeasure(ids, size, langId, Integer.MAX_VALUE));
+		}
+
+		// other selections of the profiles are indexed on the heap
+		assertTrue(!new ProfileIndex(loaded.subList(1, 2)).isMapped());
+		List<Profile> reversed = new ArrayList<Profile>(loaded);
+		Collections.reverse(reversed);
+		assertTrue(!new ProfileIndex(reversed).isMapped());
+		assertTrue(!new ProfileIndex(loaded, true).isMapped());
+	}
+
+	@Test
+	public void shouldRewriteMappedProfiles() throws IOException {
+
+		ProfileFile.write(this.profiles, this.file);
+		File copy = File.createTempFile("profiles", ".ldp");
+		try {
+			ProfileFile.write(ProfileFile.read(this.file), copy);
+			assertTrue(Arrays.equals(Files.readAllBytes(copy.toPath()), Files.readAllBytes(this.file.toPath())));
+		} finally {
+			copy.delete();
+		}
+	}
+
+	@Test
+	public void shouldKeepMappedProfilesWhenReplaced() throws IOException {
+
+		ProfileFile.write(this.profiles, this.file);
+		List<Profile> old = ProfileFile.read(this.file);
+		ProfileFile.write(this.profiles.subList(1, 2), this.file);
+		List<Profile> replaced = ProfileFile.read(this.file);
+
+		assertEquals(replaced.size(), 1);
+		assertEquals(replaced.get(0).toString(), this.profiles.get(1).toString());
+		for (int i = 0; i < old.size(); i++) {
+			assertEquals(old.get(i).toString(), this.profiles.get(i).toString());
+		}
+		// no temporary file is left behind
+		for (String name : this.file.getAbsoluteFile().getParentFile().list()) {
+			assertTrue(!(name.startsWith(this.file.getName()) && name.endsWith(".tmp")));
+		}
+	}
+
+	@Test
+	public void shouldRejectOtherFiles() {
+
+		try {
+			ProfileFile.read(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 }));
+			fail();
+		} catch (IOException e) {
+			// ok
+		}
+	}
+
+	@Test
+	public void shouldStoreSettings() throws IOException {
+
+		ProfileFile.write(this.profiles, this.file, new ProfileFile.Settings(2, 4, 3));
+		List<Profile> loaded = ProfileFile.read(this.file);
+		ProfileFile.Settings settings = ProfileFile.getSettings(loaded);
+		assertEquals(settings.getMinLength(), 2);
+		assertEquals(settings.getMaxLength(), 4);
+		// raised to the size of the largest profile
+		int maxSize = Math.max(this.profiles.get(0).getNumberOfNGrams(), this.profiles.get(1).getNumberOfNGrams());
+		assertEquals(settings.getCutOff(), maxSize);
+		assertTrue(ProfileFile.getSettings(this.profiles) == null);
+	}
+
+	@Test
+	public void shouldAdoptSettingsOfCompiledFile() throws IOException {
+
+		PrintStream log = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		});
+		Charset utf8 = Charset.forName("UTF-8");
+		new LangDetect("data/training", false, 0, utf8, 1, 5, 300, log).compileProfiles(this.file);
+		File copy = File.createTempFile("profiles", ".ldp");
+		try {
+			LangDetect loaded = new LangDetect(this.file.getPath(), false, 0, utf8, 1, 3, 100, log);
+			loaded.compileProfiles(copy);
+			ProfileFile.Settings settings = ProfileFile.getSettings(ProfileFile.read(copy));
+			assertEquals(settings.getMinLength(), 1);
+			assertEquals(settings.getMaxLength(), 5);
+			assertEquals(settings.getCutOff(), 300);
+		} finally {
+			copy.delete();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package langdetect;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for inverted profile index
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class ProfileIndexTest {
+
+	private List<Profile> profiles;
+	private Tokenizer tok;
+
+	@Before
+	public void setUp() {
+		this.tok = new Tokenizer();
+		this.profiles = new ArrayList<Profile>();
+		String[] texts = { "the house is on the hill", "das Haus ist auf dem Hügel", "la casa está en la colina" };
+		for (String text : texts) {
+			Profile p = new Profile(text.substring(0, 3));
+			this.tok.computeProfile(p, text);
+			this.profiles.add(p);
+		}
+	}
+
+	@Test
+	public void shouldMatchOutOfPlaceMeasure() {
+
+		ProfileIndex index = new ProfileIndex(this.profiles);
+		assertEquals(index.size(), 3);
+
+		String[] queries = { "the hill", "Haus", "en la casa", "xyz" };
+		for (String query : queries) {
+			Profile queryProfile = new Profile("", true);
+			this.tok.computeProfile(queryProfile, query);
+			int[] dist = index.getOutOfPlaceMeasures(queryProfile);
+			for (int langId = 0; langId < index.size(); langId++) {
+				assertEquals(dist[langId], queryProfile.getOutOfPlaceMeasure(index.getProfile(langId)));
+			}
+		}
+	}
+
+	@Test
+	public void shouldMatchOutOfPlaceMeasureWithConfiguredMaxOoP() {
+
+		ProfileIndex index = new ProfileIndex(this.profiles, false, 20);
+		String[] queries = { "the hill", "Haus", "en la casa", "xyz" };
+		for (String query : queries) {
+			// both backends of the query, compared to object profiles
+			for (boolean packed : new boolean[] { false, true }) {
+				Profile queryProfile = new Profile("", packed);
+				this.tok.computeProfile(queryProfile, query);
+				int[] dist = index.getOutOfPlaceMeasures(queryProfile);
+				for (int langId = 0; langId < index.size(); langId++) {
+					Profile p = index.getProfile(langId);
+					assertEquals(dist[langId], queryProfile.getOutOfPlaceMeasure(p, Integer.MAX_VALUE, 20));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void shouldMatchOutOfPlaceMeasureOfSingleLanguage() {
+
+		ProfileIndex index = new ProfileIndex(this.profiles, false, 20);
+		String[] queries = { "the hill", "Haus", "en la casa", "xyz" };
+		for (String query : queries) {
+			Profile queryProfile = new Profile("", true);
+			this.tok.computeProfile(queryProfile, query);
+			int[] ids = new int[queryProfile.getNumberOfNGrams()];
+			int size = index.getDictionary().resolve(queryProfile, ids);
+			int[] dist = index.getOutOfPlaceMeasures(queryProfile);
+			for (int langId = 0; langId < index.size(); langId++) {
+				assertEquals(index.getOutOfPlaceMeasure(ids, size, langId, Integer.MAX_VALUE), dist[langId]);
+				assertTrue(index.getOutOfPlaceMeasure(ids, size, langId, 1) >= Math.min(1, dist[langId]));
+			}
+		}
+	}
+
+	@Test
+	public void denseShouldMatchPostings() throws IOException {
+
+		List<Profile> training = new ArrayList<Profile>();
+		List<String> texts = new ArrayList<String>();
+		for (File file : new File("data/training").listFiles()) {
+			String text = new String(Files.readAllBytes(file.toPath()), Charset.forName("UTF-8"));
+			Profile p = new Profile(file.getName(), true);
+			this.tok.computeProfile(p, text);
+			training.add(p);
+			texts.add(text.substring(0, 2000));
+		}
+		ProfileIndex dense = new ProfileIndex(training, true);
+		ProfileIndex postings = new ProfileIndex(training, false);
+		assertTrue(dense.isDense());
+		assertTrue(!postings.isDense());
+
+		texts.add("the hill");
+		for (String text : texts) {
+			Profile query = new Profile("", true);
+			this.tok.computeProfile(query, text);
+			int[] dist = dense.getOutOfPlaceMeasures(query);
+			assertArrayEquals(dist, postings.getOutOfPlaceMeasures(query));
+			for (int langId = 0; langId < dense.size(); langId++) {
+				assertEquals(dist[langId], query.getOutOfPlaceMeasure(training.get(langId)));
+			}
+		}
+	}
+
+	@Test
+	public void shouldNeedFinalizedProfiles() {
+
+		this.profiles.add(new Profile("new"));
+		try {
+			new ProfileIndex(this.profiles);
+			fail();
+		} catch (IllegalStateException e) {
+			// ok
+		}
+	}
+}
@@ -134,4 +134,147 @@ public class ProfileTest {
 		// and both b and c are 1 out of place
 		assertEquals(this.profile.getOutOfPlaceMeasure(newProfile), 4);
 	}
+
+	@Test
+	public void packedShouldBeCertainOOP() {
+
+		// same profiles as above, but packed
+		Profile first = new Profile("Test", true);
+		for (String gram : new String[] { "a", "a", "a", "b", "b", "c" }) {
+			first.addNGram(gram);
+		}
+		first.setFinalized();
+		Profile second = new Profile("Test", true);
+		for (String gram : new String[] { "a", "b", "b", "b", "c", "c" }) {
+			second.addNGram(gram);
+		}
+		second.setFinalized();
+
+		assertTrue(first.isPacked());
+		assertEquals(first.getOutOfPlaceMeasure(second), 4);
+		// also against the object backend: a (1), b (1)
+		this.profile.addNGram("b");
+		this.profile.setFinalized();
+		assertEquals(first.getOutOfPlaceMeasure(this.profile), Profile.maxOoP);
+	}
+
+	@Test
+	public void tiesShouldBeAlphabetical() {
+
+		Profile packed = new Profile("Test", true);
+		packed.addNGram("a");
+		for (String gram : new String[] { "c", "b", "ab", "a", "b" }) {
+			this.profile.addNGram(gram);
+			packed.addNGram(gram);
+		}
+		this.profile.setFinalized();
+		packed.setFinalized();
+
+		// -> a (2), b (2), ab (1), c (1)
+		assertEquals(this.profile.toString(), "Test: [a (2,0), b (2,1), ab (1,2), c (1,3)]");
+		assertEquals(packed.toString(), this.profile.toString());
+	}
+
+	@Test
+	public void packedShouldApplyCutOff() {
+
+		Profile packed = new Profile("Test", true);
+		for (int i = 0; i < 2 * Profile.cutOffPos; i++) {
+			for (int j = 0; j <= i % 7; j++) {
+				packed.addNGram("n" + i);
+				this.profile.addNGram("n" + i);
+			}
+		}
+		packed.setFinalized();
+		this.profile.setFinalized();
+
+		assertEquals(packed.getNumberOfNGrams(), Profile.cutOffPos);
+		assertEquals(packed.toString(), this.profile.toString());
+		assertEquals(packed.getOutOfPlaceMeasure(this.profile), 0);
+	}
+
+	@Test
+	public void resetShouldStartOver() {
+
+		Profile packed = new Profile("Test", true);
+		for (String gram : new String[] { "x", "y", "y", "z" }) {
+			packed.addNGram(gram);
+		}
+		packed.setFinalized();
+
+		// reused tables must not keep any n-grams of the previous text
+		packed.reset();
+		packed.addNGram("a");
+		for (String gram : new String[] { "c", "b", "ab", "a", "b", "a" }) {
+			packed.addNGram(gram);
+			this.profile.addNGram(gram);
+		}
+		packed.setFinalized();
+		this.profile.setFinalized();
+
+		assertEquals(packed.toString(), this.profile.toString());
+		assertEquals(packed.getOutOfPlaceMeasure(this.profile), 0);
+	}
+
+	@Test
+	public void removeShouldUndoAdd() {
+
+		for (boolean packed : new boolean[] { false, true }) {
+			Profile window = new Profile("Test", packed);
+			NGramCollector collector = new NGramCollector(1, 5);
+			collector.reset(window);
+			collector.add("the house, das Haus", 0, 19);
+			collector.flush();
+
+			// remove the first two tokens again
+			NGramCollector remover = new NGramCollector(1, 5);
+			remover.reset(window, true);
+			remover.add("the house", 0, 9);
+			remover.flush();
+			assertEquals(window.removeNGram(NGramKey.of("das")), 0);
+			window.setFinalized();
+
+			Profile expected = new Profile("Test", packed);
+			new Tokenizer().computeProfile(expected, "das Haus");
+			assertEquals(window.getNumberOfNGrams(), expected.getNumberOfNGrams() - 1);
+			for (int pos = 0; pos < window.getNumberOfNGrams(); pos++) {
+				int expectedPos = expected.getPosition(window.getKey(pos));
+				assertEquals(window.getCount(pos), expected.getCount(expectedPos));
+			}
+			assertEquals(window.getPosition(NGramKey.of("das")), -1);
+		}
+	}
+
+	@Test
+	public void cutOffShouldLimitNGrams() {
+
+		String text = "das Haus ist auf dem Hügel";
+		Profile full = new Profile("Test", true);
+		new Tokenizer().computeProfile(full, text);
+		for (boolean packed : new boolean[] { false, true }) {
+			Profile profile = new Profile("Test", packed);
+			profile.setCutOff(5);
+			new Tokenizer().computeProfile(profile, text);
+			assertEquals(profile.getCutOff(), 5);
+			assertEquals(profile.getNumberOfNGrams(), 5);
+			for (int pos = 0; pos < 5; pos++) {
+				assertEquals(profile.getPosition(full.getKey(pos)), pos);
+			}
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void setCutOffShouldFailWhenFinalized() {
+		Profile profile = new Profile("Test");
+		profile.addNGram("a");
+		profile.setFinalized();
+		profile.setCutOff(5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void removeMissingShouldFail() {
+		Profile packed = new Profile("Test", true);
+		packed.addNGram("a");
+		packed.removeNGram(NGramKey.of("b"));
+	}
 }
@@ -0,0 +1,170 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for reloading changed profiles
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class ProfileWatcherTest {
+
+	private Charset utf8 = Charset.forName("UTF-8");
+	private File folder;
+	private List<Profile> profiles;
+	private BlockingQueue<List<Profile>> changes;
+	private ProfileWatcher watcher;
+
+	@Before
+	public void setUp() throws IOException {
+		this.folder = Files.createTempDirectory("watch").toFile();
+		this.profiles = new ArrayList<Profile>();
+		for (String lang : new String[] { "en", "de" }) {
+			File file = new File(this.folder, lang + ".txt");
+			Files.copy(new File("data/training/" + lang + ".txt").toPath(), file.toPath());
+			Profile p = new Profile(lang, true);
+			new Tokenizer().computeProfile(p, file, this.utf8);
+			this.profiles.add(p);
+		}
+		this.changes = new LinkedBlockingQueue<List<Profile>>();
+	}
+
+	@After
+	public void tearDown() {
+		if (this.watcher != null)
+			this.watcher.stop();
+		for (File file : this.folder.listFiles()) {
+			file.delete();
+		}
+		this.folder.delete();
+	}
+
+	@Test
+	public void shouldReloadChangedFiles() throws Exception {
+
+		this.watcher = new ProfileWatcher(this.folder, this.utf8, this.profiles, new Listener());
+		this.watcher.start();
+		Detector before = new Detector(this.watcher.getProfiles());
+
+		// add a language
+		File fr = new File(this.folder, "fr.txt");
+		Files.copy(new File("data/training/fr.txt").toPath(), fr.toPath());
+		List<Profile> added = this.changes.poll(10, TimeUnit.SECONDS);
+		assertNotNull(added);
+		assertEquals(names(added), "en,de,fr");
+		assertEquals(new Detector(added).detect("la famille humaine").getName(), "fr");
+
+		// the old detector still uses the old profiles
+		assertEquals(before.getNumberOfLanguages(), 2);
+
+		// replace a language and remove another one
+		File tmp = new File(this.folder, "en.tmp");
+		Files.copy(new File("data/training/it.txt").toPath(), tmp.toPath());
+		Files.move(tmp.toPath(), new File(this.folder, "en.txt").toPath(), StandardCopyOption.REPLACE_EXISTING);
+		new File(this.folder, "de.txt").delete();
+		List<Profile> changed = this.changes.poll(10, TimeUnit.SECONDS);
+		assertNotNull(changed);
+		// both may be processed together or one after the other
+		while (!names(changed).equals("en,fr")) {
+			changed = this.changes.poll(10, TimeUnit.SECONDS);
+			assertNotNull(changed);
+		}
+		assertTrue(changed.get(0) != this.profiles.get(0));
+		assertEquals(changed.get(1), added.get(2));
+		assertEquals(this.watcher.getProfiles(), changed);
+	}
+
+	@Test
+	public void shouldReloadCompiledFile() throws Exception {
+
+		File compiled = new File(this.folder, "profiles.bin");
+		ProfileFile.write(this.profiles, compiled);
+		this.watcher = new ProfileWatcher(compiled, this.utf8, ProfileFile.read(compiled), new Listener());
+		this.watcher.start();
+
+		File tmp = new File(this.folder, "profiles.new");
+		ProfileFile.write(this.profiles.subList(0, 1), tmp);
+		Files.move(tmp.toPath(), compiled.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		List<Profile> reloaded = this.changes.poll(10, TimeUnit.SECONDS);
+		assertNotNull(reloaded);
+		assertEquals(names(reloaded), "en");
+		assertTrue(reloaded.get(0).isMapped());
+	}
+
+	@Test
+	public void shouldContinueAfterFailedReload() throws Exception {
+
+		final BlockingQueue<Exception> failures = new LinkedBlockingQueue<Exception>();
+		final AtomicInteger calls = new AtomicInteger();
+		this.watcher = new ProfileWatcher(this.folder, this.utf8, this.profiles, new ProfileWatcher.Listener() {
+			@Override
+			public void profilesChanged(List<Profile> profiles) {
+				// the first change cannot be indexed
+				if (calls.getAndIncrement() == 0)
+					throw new IllegalArgumentException("Too many profiles");
+				ProfileWatcherTest.this.changes.add(profiles);
+			}
+
+			@Override
+			public void reloadFailed(File file, Exception e) {
+				failures.add(e);
+			}
+		});
+		this.watcher.start();
+
+		Files.copy(new File("data/training/fr.txt").toPath(), new File(this.folder, "fr.txt").toPath());
+		Exception failure = failures.poll(10, TimeUnit.SECONDS);
+		assertNotNull(failure);
+		assertTrue(failure instanceof IllegalArgumentException);
+
+		Files.copy(new File("data/training/it.txt").toPath(), new File(this.folder, "it.txt").toPath());
+		List<Profile> reloaded = this.changes.poll(10, TimeUnit.SECONDS);
+		assertNotNull(reloaded);
+		// the new language may follow a second event of the first one
+		while (!names(reloaded).equals("en,de,fr,it")) {
+			reloaded = this.changes.poll(10, TimeUnit.SECONDS);
+			assertNotNull(reloaded);
+		}
+	}
+
+	private static String names(List<Profile> profiles) {
+		StringBuilder names = new StringBuilder();
+		for (Profile p : profiles) {
+			names.append(names.length() > 0 ? "," : "").append(p.getName());
+		}
+		return names.toString();
+	}
+
+	private class Listener implements ProfileWatcher.Listener {
+
+		@Override
+		public void profilesChanged(List<Profile> profiles) {
+			ProfileWatcherTest.this.changes.add(profiles);
+		}
+
+		@Override
+		public void reloadFailed(File file, Exception e) {
+			throw new AssertionError("Reloading " + file + " failed");
+		}
+	}
+
+}
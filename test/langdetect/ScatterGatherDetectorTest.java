@@ -0,0 +1,155 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for scatter-gather detection with partition workers on localhost
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class ScatterGatherDetectorTest {
+
+	private List<Profile> profiles;
+	private List<PartitionWorker> workers;
+	private ScatterGatherDetector coordinator;
+
+	@Before
+	public void setUp() throws IOException {
+		Tokenizer tok = new Tokenizer();
+		this.profiles = new ArrayList<Profile>();
+		String[] texts = { "the house is on the hill", "das Haus ist auf dem Hügel",
+				"la casa está en la colina", "la maison est sur la colline", "het huis staat op de heuvel" };
+		String[] names = { "en", "de", "es", "fr", "nl" };
+		for (int i = 0; i < texts.length; i++) {
+			Profile p = new Profile(names[i], true);
+			tok.computeProfile(p, texts[i]);
+			this.profiles.add(p);
+		}
+
+		// two partitions, each served by its own worker
+		this.workers = new ArrayList<PartitionWorker>();
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		List<List<Profile>> partitions = new ArrayList<List<Profile>>();
+		partitions.add(this.profiles.subList(0, 2));
+		partitions.add(this.profiles.subList(2, 5));
+		for (List<Profile> partition : partitions) {
+			PartitionWorker worker = new PartitionWorker(partition, Profile.maxOoP, 0);
+			worker.start();
+			this.workers.add(worker);
+			addresses.add(new InetSocketAddress("localhost", worker.getPort()));
+		}
+		this.coordinator = new ScatterGatherDetector(addresses, 1, 5, Profile.cutOffPos);
+	}
+
+	@After
+	public void tearDown() {
+		this.coordinator.close();
+		for (PartitionWorker worker : this.workers) {
+			worker.stop();
+		}
+	}
+
+	@Test
+	public void shouldDetectLikeSingleDetector() throws IOException {
+
+		Detector detector = new Detector(this.profiles);
+		assertEquals(this.coordinator.getNumberOfLanguages(), 5);
+		String[] queries = { "the hill is high", "das Haus", "la colline", "de heuvel", "la casa" };
+		for (String query : queries) {
+			List<DetectionResult> expected = detector.detectTopK(query, 4);
+			List<DetectionResult> results = this.coordinator.detectTopK(query, 4);
+			assertEquals(results.size(), expected.size());
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(results.get(i).toString(), expected.get(i).toString());
+			}
+			assertEquals(this.coordinator.detect(query).getName(), expected.get(0).getName());
+		}
+		assertEquals(this.workers.get(0).getQueries(), 2L * queries.length);
+		assertEquals(this.workers.get(1).getQueries(), 2L * queries.length);
+	}
+
+	@Test
+	public void shouldReturnAtMostAllLanguages() throws IOException {
+		assertEquals(this.coordinator.detectTopK("the house", 10).size(), 5);
+		assertEquals(this.coordinator.detectTopK("the house", Integer.MAX_VALUE).size(), 5);
+	}
+
+	@Test
+	public void shouldRejectQueriesWithoutNGrams() throws IOException {
+
+		try {
+			this.coordinator.detect("   ");
+			fail();
+		} catch (IllegalStateException e) {
+			// ok
+		}
+		// the coordinator is still usable
+		assertEquals(this.coordinator.detect("the house").getName(), "en");
+	}
+
+	@Test
+	public void shouldCloseWhenWorkerFails() {
+
+		this.workers.get(1).stop();
+		try {
+			this.coordinator.detect("the house");
+			fail();
+		} catch (IOException e) {
+			// ok
+		}
+		try {
+			this.coordinator.detect("the house");
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("closed"));
+		}
+	}
+
+	@Test
+	public void shouldAssignEveryLanguageToOnePartition() {
+
+		PrintStream log = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		});
+		// the partitions are assigned in the order of the file names
+		String[] files = new File("data/training").list();
+		Arrays.sort(files);
+		for (boolean parallel : new boolean[] { false, true }) {
+			Set<String> languages = new HashSet<String>();
+			int total = 0;
+			for (int part = 0; part < 4; part++) {
+				LangDetect worker = new LangDetect("data/training", parallel, 0, Charset.forName("UTF-8"), log);
+				List<Profile> partition = worker.selectPartition(part, 4);
+				for (int i = 0; i < partition.size(); i++) {
+					assertEquals(partition.get(i).getName(), files[part + 4 * i].substring(0, 2));
+					languages.add(partition.get(i).getName());
+					total++;
+				}
+			}
+			assertEquals(languages.size(), files.length);
+			assertEquals(total, files.length);
+		}
+	}
+
+}
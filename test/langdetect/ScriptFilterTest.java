@@ -0,0 +1,101 @@
+package langdetect;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for the script histogram and the script filter
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class ScriptFilterTest {
+
+	private List<Profile> profiles;
+	private Detector detector;
+
+	@Before
+	public void setUp() {
+		Tokenizer tok = new Tokenizer();
+		this.profiles = new ArrayList<Profile>();
+		String[] texts = { "the house is on the hill", "das Haus ist auf dem Hügel", "дом стоит на холме",
+				"το σπίτι είναι στο λόφο", "房子在山上" };
+		String[] names = { "en", "de", "ru", "el", "zh" };
+		for (int i = 0; i < texts.length; i++) {
+			Profile p = new Profile(names[i], true);
+			tok.computeProfile(p, texts[i]);
+			this.profiles.add(p);
+		}
+		this.detector = new Detector(this.profiles);
+	}
+
+	@Test
+	public void histogramShouldCountLetters() {
+
+		ScriptHistogram histogram = new ScriptHistogram();
+		NGramCollector collector = new NGramCollector(1, 5);
+		collector.setScriptHistogram(histogram);
+		collector.reset(new Profile("", true));
+		collector.add("Москва is Москва, 1 city", 0, 24);
+		collector.flush();
+		assertEquals(histogram.getTotal(), 18);
+		assertEquals(histogram.getCount(Character.UnicodeScript.CYRILLIC), 12);
+		assertEquals(histogram.getCount(Character.UnicodeScript.LATIN), 6);
+		assertEquals(histogram.getDominant(), Character.UnicodeScript.CYRILLIC);
+
+		collector.reset(new Profile("", true));
+		assertEquals(histogram.getTotal(), 0);
+		assertEquals(histogram.getCount(Character.UnicodeScript.CYRILLIC), 0);
+		assertNull(histogram.getDominant());
+	}
+
+	@Test
+	public void shouldComputeSignatures() {
+
+		ScriptFilter filter = this.detector.getScriptFilter();
+		assertTrue(filter.getSignature(0).contains(Character.UnicodeScript.LATIN));
+		assertEquals(filter.getSignature(2).size(), 1);
+		assertTrue(filter.getSignature(2).contains(Character.UnicodeScript.CYRILLIC));
+		assertTrue(filter.getSignature(3).contains(Character.UnicodeScript.GREEK));
+		// hashed n-grams, the letters are unknown
+		assertTrue(filter.getSignature(4).isEmpty());
+	}
+
+	@Test
+	public void shouldSelectCandidates() {
+
+		ScriptFilter filter = this.detector.getScriptFilter();
+		assertArrayEquals(filter.getCandidates(Character.UnicodeScript.LATIN), new int[] { 0, 1 });
+		assertArrayEquals(filter.getCandidates(Character.UnicodeScript.CYRILLIC), new int[] { 2 });
+		assertArrayEquals(filter.getCandidates(Character.UnicodeScript.HAN), new int[] { 4 });
+		// no language of this script, so all are candidates
+		assertNull(filter.getCandidates(Character.UnicodeScript.ARABIC));
+	}
+
+	@Test
+	public void shouldScoreOnlyCandidates() {
+
+		String query = "на холме";
+		Profile queryProfile = new Profile("");
+		new Tokenizer().computeProfile(queryProfile, query);
+		int[] distances = this.detector.getIndex().getOutOfPlaceMeasures(queryProfile);
+
+		List<DetectionResult> results = this.detector.detectTopK(query, 3);
+		assertEquals(results.size(), 1);
+		assertEquals(results.get(0).getName(), "ru");
+		assertEquals(results.get(0).getOutOfPlaceMeasure(), distances[2]);
+
+		results = this.detector.detectTopK("the house", 3);
+		assertEquals(results.size(), 2);
+		assertEquals(results.get(0).getName(), "en");
+		assertEquals(this.detector.detect("山上").getName(), "zh");
+	}
+}
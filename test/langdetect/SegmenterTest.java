@@ -0,0 +1,97 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit-Test for sliding-window segmentation
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class SegmenterTest {
+
+	private ProfileIndex index;
+	private String english;
+	private String german;
+
+	@Before
+	public void setUp() throws IOException {
+		Charset utf8 = Charset.forName("UTF-8");
+		List<Profile> profiles = new ArrayList<Profile>();
+		for (File file : new File("data/training").listFiles()) {
+			Profile p = new Profile(file.getName().substring(0, 2), true);
+			new Tokenizer().computeProfile(p, new String(Files.readAllBytes(file.toPath()), utf8));
+			profiles.add(p);
+		}
+		this.index = new ProfileIndex(profiles);
+		this.english = prefix(new String(Files.readAllBytes(new File("data/training/en.txt").toPath()), utf8), 600);
+		this.german = prefix(new String(Files.readAllBytes(new File("data/training/de.txt").toPath()), utf8), 600);
+	}
+
+	@Test
+	public void shouldFindLanguageSwitches() {
+
+		String text = this.english + "\n" + this.german + "\n" + this.english;
+		List<Segment> segments = new Segmenter(this.index).segment(text);
+
+		assertEquals(segments.size(), 3);
+		assertEquals(segments.get(0).getName(), "en");
+		assertEquals(segments.get(1).getName(), "de");
+		assertEquals(segments.get(2).getName(), "en");
+		assertTrue(segments.get(2).getEnd() <= text.length());
+
+		// the switches are found up to a few tokens
+		int first = this.english.length();
+		int second = first + 1 + this.german.length();
+		assertTrue(Math.abs(segments.get(1).getStart() - first) < 60);
+		assertTrue(Math.abs(segments.get(2).getStart() - second) < 60);
+		for (int i = 1; i < segments.size(); i++) {
+			assertTrue(segments.get(i - 1).getEnd() < segments.get(i).getStart());
+		}
+	}
+
+	@Test
+	public void shouldMatchDetectionOfSingleWindow() {
+
+		Segmenter segmenter = new Segmenter(this.index);
+		segmenter.setWindow(10000, 10000);
+		List<Segment> segments = segmenter.segment(this.german + " " + this.english);
+		assertEquals(segments.size(), 1);
+
+		Profile query = new Profile("", true);
+		new Tokenizer().computeProfile(query, this.german + " " + this.english);
+		int[] dist = this.index.getOutOfPlaceMeasures(query);
+		int best = 0;
+		for (int langId = 1; langId < dist.length; langId++) {
+			if (dist[langId] < dist[best])
+				best = langId;
+		}
+		assertEquals(segments.get(0).getProfile(), this.index.getProfile(best));
+	}
+
+	@Test
+	public void emptyTextShouldHaveNoSegments() {
+		assertTrue(new Segmenter(this.index).segment(" 123 ").isEmpty());
+	}
+
+	/**
+	 * Returns the text up to the first line break after the given length,
+	 * without the line break.
+	 */
+	private static String prefix(String text, int length) {
+		int end = text.indexOf('\n', length);
+		return end < 0 ? text : text.substring(0, end).trim();
+	}
+
+}
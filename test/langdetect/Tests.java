@@ -11,7 +11,13 @@ import org.junit.runners.Suite.SuiteClasses;
  * 
  */
 @RunWith(Suite.class)
-@SuiteClasses({ NGramTest.class, ProfileTest.class, TokenizerTest.class })
+@SuiteClasses({ BatchDetectorTest.class, ChannelDecoderTest.class, ClusterScorerTest.class,
+		DetectionCacheTest.class, DetectionProcessorTest.class, DetectionServerTest.class,
+		DetectionSessionTest.class, DetectorMetricsTest.class, DetectorTest.class, HeavyHitterSketchTest.class,
+		NGramTest.class, NGramDictionaryTest.class, NGramKeyTest.class, NGramTableTest.class,
+		ParallelTrainerTest.class, ProfileTest.class, ProfileFileTest.class, ProfileIndexTest.class,
+		ProfileWatcherTest.class, ScatterGatherDetectorTest.class, ScriptFilterTest.class, SegmenterTest.class,
+		TokenizerTest.class, TopKScorerTest.class })
 public class Tests {
 
 }
@@ -3,6 +3,11 @@ package langdetect;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -83,4 +88,59 @@ public class TokenizerTest {
 		assertEquals(this.profile.getNumberOfNGrams(), 4);
 
 	}
+
+	@Test
+	public void streamingShouldFind21NGrams() {
+
+		this.tok = new Tokenizer(1, 5, true);
+		this.tok.computeProfile(this.profile, "Hi you");
+		assertEquals(this.profile.getNumberOfNGrams(), 21);
+
+		// also from a character array
+		Profile arrayProfile = new Profile("", true);
+		char[] text = "--Hi you--".toCharArray();
+		this.tok.computeProfile(arrayProfile, text, 2, 6);
+		assertEquals(arrayProfile.toString(), this.profile.toString());
+	}
+
+	@Test
+	public void streamingShouldMatchScanner() {
+
+		String[] texts = { "a )! 2190 $%", "Hi you, HI YOU", "ΟΔΟΣ Σ İstanbul" };
+		for (String text : texts) {
+			this.assertSameProfiles(text);
+		}
+
+		// surrogates: packed keys are hashed, so only compare the object backend
+		String text = "\uD801\uDC00\uD801\uDC28 x\uD83D\uDE00y \uD801 a\uDC00";
+		Profile expected = new Profile("");
+		new Tokenizer().computeProfile(expected, text);
+		Profile streamed = new Profile("");
+		new Tokenizer(1, 5, true).computeProfile(streamed, text);
+		assertEquals(streamed.toString(), expected.toString());
+	}
+
+	@Test
+	public void streamingShouldMatchScannerOnTrainingData() throws IOException {
+
+		for (File file : new File("data/training").listFiles()) {
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			this.assertSameProfiles(new String(bytes, Charset.forName("UTF-8")));
+		}
+	}
+
+	private void assertSameProfiles(String text) {
+
+		Profile expected = new Profile("");
+		new Tokenizer().computeProfile(expected, text);
+
+		Profile streamed = new Profile("");
+		Profile packed = new Profile("", true);
+		Tokenizer streaming = new Tokenizer(1, 5, true);
+		streaming.computeProfile(streamed, text);
+		streaming.computeProfile(packed, text);
+
+		assertEquals(streamed.toString(), expected.toString());
+		assertEquals(packed.toString(), expected.toString());
+	}
 }
@@ -0,0 +1,79 @@
+package langdetect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit-Test for top-k scoring
+ * 
+ * @author Tobias Falke
+ * 
+ */
+public class TopKScorerTest {
+
+	@Test
+	public void shouldMatchFullRanking() {
+
+		// profiles with some equal distances to the query
+		Tokenizer tok = new Tokenizer();
+		String[] texts = { "abc", "abd", "xyz", "abc", "cab", "zzz", "abcd" };
+		List<Profile> profiles = new ArrayList<Profile>();
+		for (String text : texts) {
+			Profile p = new Profile(text);
+			tok.computeProfile(p, text);
+			profiles.add(p);
+		}
+		Profile query = new Profile("");
+		tok.computeProfile(query, "abcab");
+
+		// full ranking by stable sorting
+		List<Profile> expected = new ArrayList<Profile>(profiles);
+		final Profile q = query;
+		Collections.sort(expected, new Comparator<Profile>() {
+			@Override
+			public int compare(Profile a, Profile b) {
+				return q.getOutOfPlaceMeasure(a) - q.getOutOfPlaceMeasure(b);
+			}
+		});
+
+		for (int k = 1; k <= texts.length + 1; k++) {
+			TopKScorer scorer = new TopKScorer(profiles, k);
+			Profile[] best = new Profile[k];
+			int[] distances = new int[k];
+			int found = scorer.score(query, best, distances);
+			assertEquals(found, Math.min(k, texts.length));
+			for (int i = 0; i < found; i++) {
+				assertTrue(best[i] == expected.get(i));
+				assertEquals(distances[i], query.getOutOfPlaceMeasure(expected.get(i)));
+			}
+			assertEquals(scorer.getComparisons(), texts.length);
+		}
+	}
+
+	@Test
+	public void shouldPrune() {
+
+		Tokenizer tok = new Tokenizer();
+		List<Profile> profiles = new ArrayList<Profile>();
+		for (String text : new String[] { "hello world", "qqq", "vvv", "hello" }) {
+			Profile p = new Profile(text);
+			tok.computeProfile(p, text);
+			profiles.add(p);
+		}
+		Profile query = new Profile("");
+		tok.computeProfile(query, "hello world");
+
+		TopKScorer scorer = new TopKScorer(profiles, 1);
+		Profile[] best = new Profile[1];
+		scorer.score(query, best, new int[1]);
+		assertTrue(best[0] == profiles.get(0));
+		assertEquals(scorer.getPrunedComparisons(), 3);
+	}
+}